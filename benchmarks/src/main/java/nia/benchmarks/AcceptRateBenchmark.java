@@ -0,0 +1,165 @@
+package nia.benchmarks;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import nia.chapter12.ChatServerInitializer;
+import nia.util.ConstantMessages;
+import nia.util.Transport;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Accept rate of the chat server's pipeline (Listing 12.3) set up by
+ * {@link ChatServerInitializer} and by its {@link nia.util.PipelineTemplate}.
+ * A greeter in front of both pipelines writes "Hi!\r\n" and closes, so
+ * every connection is a full accept, initialization and teardown. Reported
+ * per round: connections per second in a storm of {@code --storm=N}
+ * connections started at once and with {@code --concurrency=N} in progress
+ * for {@code --duration=SECONDS}, and the bytes the server's event loops
+ * allocated per connection.
+ * <pre>
+ *   AcceptRateBenchmark [--storm=N] [--concurrency=N] [--duration=SECONDS]
+ *                       [--port=N] [--rounds=N]
+ * </pre>
+ */
+public final class AcceptRateBenchmark {
+    private static final ChannelHandler GREETER = new Greeter();
+    // "Hi!\r\n"
+    private static final int GREETER_BYTES = 5;
+
+    private AcceptRateBenchmark() {
+    }
+
+    private enum Setup {
+        INITIALIZER, TEMPLATE
+    }
+
+    public static void main(String[] args) throws Exception {
+        int storm = 2000;
+        int concurrency = 64;
+        long duration = 5;
+        int port = 9192;
+        int rounds = 3;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--storm=")) {
+                storm = Integer.parseInt(value);
+            } else if (arg.startsWith("--concurrency=")) {
+                concurrency = Integer.parseInt(value);
+            } else if (arg.startsWith("--duration=")) {
+                duration = Long.parseLong(value);
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(value);
+            } else if (arg.startsWith("--rounds=")) {
+                rounds = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        Transport transport = Transport.auto();
+        EventLoopGroup group = transport.newEventLoopGroup();
+        ChannelGroup channels = new DefaultChannelGroup(ImmediateEventExecutor.INSTANCE);
+        long[] loopThreads = threadIds(group);
+        ConnectionLoad load = new ConnectionLoad(port, GREETER_BYTES);
+        try {
+            System.out.println("chat pipeline over " + transport);
+            System.out.printf("%-8s%-14s%12s%10s%10s%12s%n",
+                    "round", "setup", "storm c/s", "failed", "sust. c/s", "alloc B/c");
+            for (int round = 1; round <= rounds; round++) {
+                for (Setup setup : Setup.values()) {
+                    Channel server = new ServerBootstrap()
+                            .group(group)
+                            .channel(transport.serverChannel())
+                            .childHandler(childHandler(setup, channels))
+                            .bind("127.0.0.1", port).sync().channel();
+                    try {
+                        if (round == 1) {
+                            // warm up the server's code paths before measuring
+                            load.sustained(concurrency, 1);
+                        }
+                        ConnectionLoad.Result burst = load.storm(storm);
+                        long allocated = allocatedBytes(loopThreads);
+                        ConnectionLoad.Result sustained = load.sustained(concurrency, duration);
+                        allocated = allocatedBytes(loopThreads) - allocated;
+                        System.out.printf("%-8d%-14s%,12.0f%10d%,10.0f%,12.0f%n", round, setup,
+                                burst.rate(), burst.failures + sustained.failures, sustained.rate(),
+                                (double) allocated / sustained.latency.getTotalCount());
+                    } finally {
+                        server.close().sync();
+                    }
+                }
+            }
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    private static ChannelHandler childHandler(Setup setup, ChannelGroup channels) {
+        if (setup == Setup.TEMPLATE) {
+            return ChatServerInitializer.template(channels).addFirst("greeter", GREETER);
+        }
+        return new ChatServerInitializer(channels) {
+            @Override
+            protected void initChannel(Channel ch) throws Exception {
+                super.initChannel(ch);
+                // 放在最前面，问候消息不经过HTTP编码器
+                ch.pipeline().addFirst(GREETER);
+            }
+        };
+    }
+
+    @Sharable
+    private static final class Greeter extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            ctx.writeAndFlush(ConstantMessages.get("Hi!\r\n", CharsetUtil.UTF_8))
+                    .addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * The ids of the threads of {@code group}, asking each event loop for its
+     * own; this also starts the threads.
+     */
+    private static long[] threadIds(EventLoopGroup group) throws Exception {
+        List<Long> ids = new ArrayList<Long>();
+        for (EventExecutor loop : group) {
+            ids.add(loop.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return Thread.currentThread().getId();
+                }
+            }).get());
+        }
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    private static long allocatedBytes(long[] threadIds) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sum = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threadIds)) {
+            sum += allocated;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,119 @@
+package nia.benchmarks;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import nia.chapter2.echoclient.EchoLoadGenerator;
+import nia.chapter2.echoclient.LoadResult;
+import nia.chapter2.echoclient.MessageSizeDistribution;
+import nia.chapter2.echoserver.EchoServer;
+import nia.util.CpuSet;
+import nia.util.Transport;
+import org.HdrHistogram.Histogram;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Latency variance of the persistent {@link EchoServer} with floating and
+ * with pinned event loops, measured by an {@link EchoLoadGenerator} in the
+ * same JVM:
+ * <ul>
+ *   <li>{@code floating}: as many server and client loops as pinned ones,
+ *       placed by the scheduler,</li>
+ *   <li>{@code pinned}: one server loop per CPU of {@code --server-cpus} and
+ *       one client loop per CPU of {@code --client-cpus}; like
+ *       {@code floating} one listener hands the connections to the loops,
+ *       so the two rows differ only in pinning,</li>
+ *   <li>{@code pinned-reuseport}: {@code pinned} with one
+ *       {@code SO_REUSEPORT} listener per loop (epoll), each connection
+ *       stays on the CPU that accepted it.</li>
+ * </ul>
+ * The CPU sets default to the two halves of NUMA node 0; on a two-socket
+ * machine try the server on one node and the client on the other, too.
+ * Compare the standard deviation and the tail, the medians hardly move.
+ * <pre>
+ *   AffinityLatencyBenchmark [--server-cpus=LIST] [--client-cpus=LIST] [--connections=N]
+ *       [--rate=REQ_PER_SEC] [--size=SPEC] [--warmup=SECONDS] [--duration=SECONDS]
+ * </pre>
+ */
+public final class AffinityLatencyBenchmark {
+    private AffinityLatencyBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CpuSet node = CpuSet.numaNode(0);
+        CpuSet serverCpus = node.size() > 1 ? node.take(node.size() / 2) : node;
+        CpuSet clientCpus = node.size() > 1 ? node.drop(node.size() / 2) : node;
+        int connections = 16;
+        long rate = 20000;
+        MessageSizeDistribution sizes = MessageSizeDistribution.fixed(64);
+        long warmup = 2;
+        long duration = 10;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--server-cpus=")) {
+                serverCpus = CpuSet.parse(value);
+            } else if (arg.startsWith("--client-cpus=")) {
+                clientCpus = CpuSet.parse(value);
+            } else if (arg.startsWith("--connections=")) {
+                connections = Integer.parseInt(value);
+            } else if (arg.startsWith("--rate=")) {
+                rate = Long.parseLong(value);
+            } else if (arg.startsWith("--size=")) {
+                sizes = MessageSizeDistribution.parse(value);
+            } else if (arg.startsWith("--warmup=")) {
+                warmup = Long.parseLong(value);
+            } else if (arg.startsWith("--duration=")) {
+                duration = Long.parseLong(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (serverCpus.equals(clientCpus)) {
+            System.out.println("Only CPUs " + serverCpus + ", server and client share them");
+        }
+
+        Transport transport = Transport.auto();
+        String[] names = { "floating", "pinned", "pinned-reuseport" };
+        LoadResult[] results = new LoadResult[names.length];
+        for (int i = 0; i < names.length; i++) {
+            boolean pinned = i >= 1;
+            System.out.println("== " + names[i]);
+            EchoServer server = new EchoServer(0)
+                    .transport(transport)
+                    .persistent(true)
+                    .listenerPerLoop(i == 2);
+            EventLoopGroup group = pinned ? transport.newEventLoopGroup("echo-server", serverCpus)
+                    : transport.newEventLoopGroup(serverCpus.size());
+            try {
+                List<Channel> channels = server.bind(group);
+                int port = ((InetSocketAddress) channels.get(0).localAddress()).getPort();
+                EchoLoadGenerator generator = new EchoLoadGenerator("127.0.0.1", port)
+                        .transport(transport)
+                        .connections(connections)
+                        .rate(rate)
+                        .sizes(sizes)
+                        .warmup(warmup)
+                        .duration(duration);
+                // 不绑核时客户端也用同样数量的线程
+                results[i] = pinned ? generator.pin(clientCpus).run() : generator.threads(clientCpus.size()).run();
+                results[i].print(System.out);
+                for (Channel ch : channels) {
+                    ch.close().sync();
+                }
+            } finally {
+                group.shutdownGracefully().sync();
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-18s%12s%10s%10s%10s%10s%10s%n", "Loops", "req/s", "p50 us", "p99 us", "p99.9 us",
+                "max us", "stddev");
+        for (int i = 0; i < names.length; i++) {
+            Histogram h = results[i].corrected();
+            System.out.printf("%-18s%12.0f%10.1f%10.1f%10.1f%10.1f%10.1f%n", names[i], results[i].throughput(),
+                    h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(99) / 1000.0,
+                    h.getValueAtPercentile(99.9) / 1000.0, h.getMaxValue() / 1000.0, h.getStdDeviation() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package nia.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import nia.chapter6.BatchingWriteHandler;
+import nia.chapter6.WriteHandler;
+import nia.util.Transport;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small-message request/response protocol: the client pipelines
+ * newline-terminated requests, the server answers every request with a line
+ * through {@link WriteHandler#send(String)} (Listing 6.9), which flushes
+ * every response, or through {@link BatchingWriteHandler#send(Object)},
+ * which flushes once per event loop iteration. Reports responses per second
+ * and the server's flushes, one {@code write} syscall each, per response.
+ * <pre>
+ *   BatchingWriteBenchmark [--requests=N] [--size=BYTES] [--window=N] [--rounds=N]
+ * </pre>
+ * {@code --window} requests are in flight at most.
+ */
+public final class BatchingWriteBenchmark {
+    private BatchingWriteBenchmark() {
+    }
+
+    private enum Mode {
+        FLUSH_EVERY_MESSAGE, BATCHING
+    }
+
+    public static void main(String[] args) throws Exception {
+        int requests = 2000000;
+        int size = 16;
+        int window = 1024;
+        int rounds = 5;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--requests=")) {
+                requests = Integer.parseInt(value);
+            } else if (arg.startsWith("--size=")) {
+                size = Integer.parseInt(value);
+            } else if (arg.startsWith("--window=")) {
+                window = Integer.parseInt(value);
+            } else if (arg.startsWith("--rounds=")) {
+                rounds = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (size < 2) {
+            throw new IllegalArgumentException("size: " + size + " (expected: >= 2)");
+        }
+
+        Transport transport = Transport.auto();
+        EventLoopGroup serverGroup = transport.newEventLoopGroup(1);
+        EventLoopGroup clientGroup = transport.newEventLoopGroup(1);
+        char[] chars = new char[size - 1];
+        Arrays.fill(chars, 'x');
+        final String response = new String(chars) + '\n';
+        final FlushCounter flushes = new FlushCounter();
+        try {
+            System.out.println(requests + " requests of " + size + " bytes, " + window +
+                    " in flight, over " + transport);
+            for (int round = 1; round <= rounds; round++) {
+                StringBuilder line = new StringBuilder("round " + round + ':');
+                for (Mode mode : Mode.values()) {
+                    long before = flushes.value();
+                    double rate = run(transport, serverGroup, clientGroup, mode, response, flushes,
+                            requests, window);
+                    line.append(String.format("   %s %,12.0f msg/s %5.3f flushes/msg", mode, rate,
+                            (double) (flushes.value() - before) / requests));
+                }
+                System.out.println(line);
+            }
+        } finally {
+            clientGroup.shutdownGracefully().sync();
+            serverGroup.shutdownGracefully().sync();
+        }
+    }
+
+    private static double run(Transport transport, EventLoopGroup serverGroup, EventLoopGroup clientGroup,
+        final Mode mode, final String response, final FlushCounter flushes, int requests, int window)
+        throws InterruptedException {
+        Channel server = transport.serverBootstrap(serverGroup)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        final WriteHandler perMessage = new WriteHandler();
+                        final BatchingWriteHandler batching = new BatchingWriteHandler();
+                        ch.pipeline().addLast(flushes, new StringEncoder(CharsetUtil.US_ASCII),
+                                new LineBasedFrameDecoder(1024), new StringDecoder(CharsetUtil.US_ASCII),
+                                mode == Mode.BATCHING ? batching : perMessage,
+                                new SimpleChannelInboundHandler<String>() {
+                                    @Override
+                                    protected void channelRead0(ChannelHandlerContext ctx, String request) {
+                                        if (mode == Mode.BATCHING) {
+                                            batching.send(response);
+                                        } else {
+                                            perMessage.send(response);
+                                        }
+                                    }
+                                });
+                    }
+                })
+                .bind("127.0.0.1", 0).sync().channel();
+        Client client = new Client(response.length(), requests, window);
+        Channel channel = transport.bootstrap(clientGroup)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(client)
+                .connect(server.localAddress()).sync().channel();
+        try {
+            long begin = System.nanoTime();
+            client.start(channel);
+            while (client.received() < (long) requests * response.length()) {
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+            long elapsed = System.nanoTime() - begin;
+            return (double) requests * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        } finally {
+            channel.close().sync();
+            server.close().sync();
+        }
+    }
+
+    /**
+     * Counts the flushes reaching the transport; each one writes to the
+     * socket.
+     */
+    @Sharable
+    private static final class FlushCounter extends ChannelOutboundHandlerAdapter {
+        private final AtomicLong flushes = new AtomicLong();
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+            flushes.incrementAndGet();
+            ctx.flush();
+        }
+
+        long value() {
+            return flushes.get();
+        }
+    }
+
+    /**
+     * Keeps {@code window} requests in flight, sending a batch of requests
+     * whenever half of the window has been answered.
+     */
+    private static final class Client extends ChannelInboundHandlerAdapter {
+        private final int responseSize;
+        private final int requests;
+        private final int window;
+        private final AtomicLong received = new AtomicLong();
+        private int sent;
+        private long answered;
+        private ByteBuf batch;
+
+        Client(int responseSize, int requests, int window) {
+            this.responseSize = responseSize;
+            this.requests = requests;
+            this.window = window;
+        }
+
+        void start(final Channel channel) {
+            channel.eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    batch = ByteBufUtil.writeAscii(channel.alloc(), repeat("GET\n", Math.max(1, window / 2)));
+                    send(channel, window);
+                }
+            });
+        }
+
+        long received() {
+            return received.get();
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            int bytes = ((ByteBuf) msg).readableBytes();
+            ReferenceCountUtil.release(msg);
+            received.addAndGet(bytes);
+            answered += bytes;
+            long inFlight = sent - answered / responseSize;
+            if (inFlight <= window / 2) {
+                send(ctx.channel(), window - (int) inFlight);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            if (batch != null) {
+                batch.release();
+                batch = null;
+            }
+        }
+
+        private void send(Channel channel, int count) {
+            int perBatch = batch.readableBytes() / 4;
+            while (sent < requests && count > 0) {
+                int n = Math.min(Math.min(count, perBatch), requests - sent);
+                channel.write(batch.retainedSlice(0, n * 4), channel.voidPromise());
+                sent += n;
+                count -= n;
+            }
+            channel.flush();
+        }
+
+        private static String repeat(String s, int times) {
+            StringBuilder sb = new StringBuilder(s.length() * times);
+            for (int i = 0; i < times; i++) {
+                sb.append(s);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package nia.benchmarks;
+
+import nia.chapter2.echoclient.EchoLoadGenerator;
+import nia.chapter2.echoclient.LoadResult;
+import nia.chapter2.echoclient.MessageSizeDistribution;
+import nia.util.ConnectionExecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code BlockingIoExample} with one virtual thread per connection against
+ * the same line protocol on Netty NIO ({@link NettyLineServer}), at many
+ * concurrent connections.
+ *
+ * Every connection sends a request line at a fixed rate (open loop, total
+ * {@code --rate} requests per second), so latency reflects how quickly the
+ * server gets to each of {@code --connections} mostly idle clients. The
+ * blocking server needs virtual threads (JDK 21+): the platform thread
+ * fallback serves at most {@code --fallback-threads} connections and closes
+ * the rest, so the benchmark refuses to run it unless
+ * {@code --allow-fallback} is given, e.g. with as many fallback threads as
+ * connections. The fallback is reported as {@code blocking-bounded}.
+ *
+ * 10k-100k connections need a matching open file limit ({@code ulimit -n})
+ * for both processes, and more than ~28k need several client addresses or
+ * a widened {@code net.ipv4.ip_local_port_range}.
+ * <pre>
+ *   BlockingServerBenchmark [--connections=N] [--rate=REQ_PER_SEC]
+ *                           [--fallback-threads=N] [--warmup=SECONDS]
+ *                           [--duration=SECONDS] [--port=N] [--servers=a,b]
+ *                           [--allow-fallback]
+ * </pre>
+ */
+public final class BlockingServerBenchmark {
+    private BlockingServerBenchmark() {
+    }
+
+    /**
+     * Starts the server's measurement interval roughly when the generator's
+     * does; the time to set up the connections is not accounted for.
+     */
+    private static Thread resetAfter(final ServerProcess server, final long seconds) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TimeUnit.SECONDS.sleep(seconds);
+                    server.reset();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "reset-after-warmup");
+        t.start();
+        return t;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int connections = 10000;
+        long rate = 20000;
+        int fallbackThreads = 1000;
+        long warmup = 5;
+        long duration = 20;
+        int port = 9292;
+        String[] servers = { "blocking-vt", "netty-line" };
+        boolean allowFallback = false;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--connections=")) {
+                connections = Integer.parseInt(value);
+            } else if (arg.startsWith("--rate=")) {
+                rate = Long.parseLong(value);
+            } else if (arg.startsWith("--fallback-threads=")) {
+                fallbackThreads = Integer.parseInt(value);
+            } else if (arg.startsWith("--warmup=")) {
+                warmup = Long.parseLong(value);
+            } else if (arg.startsWith("--duration=")) {
+                duration = Long.parseLong(value);
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(value);
+            } else if (arg.startsWith("--servers=")) {
+                servers = value.split(",");
+            } else if (arg.equals("--allow-fallback")) {
+                allowFallback = true;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (!ConnectionExecutors.virtualThreadsAvailable() && !allowFallback) {
+            for (String name : servers) {
+                if (name.endsWith("-vt")) {
+                    throw new IllegalStateException("No virtual threads on JDK " +
+                            System.getProperty("java.version") + ", " + name +
+                            " would serve only " + fallbackThreads + " connections at a time" +
+                            " (use JDK 21+, or --allow-fallback)");
+                }
+            }
+        }
+        System.out.println("Blocking servers run on " + (ConnectionExecutors.virtualThreadsAvailable() ?
+                "virtual threads" : "a pool of " + fallbackThreads + " platform threads (no virtual threads)"));
+
+        List<String> rows = new ArrayList<String>();
+        for (String requested : servers) {
+            // 没有虚拟线程时结果标为blocking-bounded，而不是blocking-vt
+            String name = ShootoutServer.withAvailableThreads(requested);
+            System.out.println("== " + name);
+            ServerProcess server = ServerProcess.start(port,
+                    name, String.valueOf(port), String.valueOf(fallbackThreads));
+            try {
+                EchoLoadGenerator generator = new EchoLoadGenerator("127.0.0.1", port)
+                        .connections(connections)
+                        .rate(rate)
+                        .sizes(MessageSizeDistribution.fixed(16))
+                        .lineFraming(true)
+                        .warmup(warmup)
+                        .duration(duration);
+                Thread resetAfterWarmup = resetAfter(server, warmup);
+                LoadResult result = generator.run();
+                resetAfterWarmup.join();
+                ServerProcess.Stats stats = server.stats();
+                result.print(System.out);
+                rows.add(String.format("%-18s%12.0f%10.1f%10.1f%10.1f%10.1f%8d%8d%7.2f%12.1f",
+                        name, result.throughput(),
+                        result.latencyAt(50) / 1000.0, result.latencyAt(99) / 1000.0,
+                        result.latencyAt(99.9) / 1000.0, result.corrected().getMaxValue() / 1000.0,
+                        stats.liveThreads, stats.peakThreads,
+                        stats.cores(result.elapsedNanos()), stats.allocationRate(result.elapsedNanos())));
+            } finally {
+                server.close();
+            }
+        }
+
+        System.out.println();
+        System.out.println(connections + " connections, " + rate + " req/s");
+        System.out.printf("%-18s%12s%10s%10s%10s%10s%8s%8s%7s%12s%n", "Server", "req/s",
+                "p50 us", "p99 us", "p99.9 us", "max us", "threads", "peak", "cpu", "alloc MB/s");
+        for (String row : rows) {
+            System.out.println(row);
+        }
+    }
+}
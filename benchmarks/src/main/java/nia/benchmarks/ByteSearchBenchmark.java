@@ -0,0 +1,166 @@
+package nia.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ByteProcessor;
+import io.netty.util.CharsetUtil;
+import nia.util.ByteSearch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ByteSearch} against Netty's byte-at-a-time searches, on pooled
+ * heap and direct buffers with the delimiter as the last byte(s):
+ * <ul>
+ *   <li>LF: {@code ByteBuf.indexOf()}, {@code forEachByte(FIND_LF)}
+ *       (what {@code LineBasedFrameDecoder} uses) and {@code ByteSearch.of()}</li>
+ *   <li>CR or LF: {@code forEachByte(FIND_CRLF)} and {@code ByteSearch.anyOf()}</li>
+ *   <li>CRLFCRLF: {@code ByteBufUtil.indexOf(needle, haystack)} and
+ *       {@code ByteSearch.sequence()}</li>
+ * </ul>
+ * Reports the best nanoseconds per search of all rounds.
+ * <pre>
+ *   ByteSearchBenchmark [--sizes=16,64,...] [--rounds=N]
+ * </pre>
+ */
+public final class ByteSearchBenchmark {
+    private static final long TARGET_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final ByteSearch LF = ByteSearch.of((byte) '\n');
+    private static final ByteSearch CR_OR_LF = ByteSearch.anyOf((byte) '\r', (byte) '\n');
+    private static final ByteSearch CRLFCRLF = ByteSearch.sequence("\r\n\r\n");
+    private static final ByteBuf CRLFCRLF_NEEDLE = Unpooled.unreleasableBuffer(
+            Unpooled.copiedBuffer("\r\n\r\n", CharsetUtil.US_ASCII));
+
+    // keeps the JIT from dropping the searches
+    private static long sink;
+
+    private ByteSearchBenchmark() {
+    }
+
+    private enum Method {
+        LF_INDEX_OF("LF indexOf") {
+            @Override
+            int search(ByteBuf buf) {
+                return buf.indexOf(buf.readerIndex(), buf.writerIndex(), (byte) '\n');
+            }
+        },
+        LF_FOR_EACH_BYTE("LF forEachByte") {
+            @Override
+            int search(ByteBuf buf) {
+                return buf.forEachByte(ByteProcessor.FIND_LF);
+            }
+        },
+        LF_SWAR("LF swar") {
+            @Override
+            int search(ByteBuf buf) {
+                return LF.indexOf(buf);
+            }
+        },
+        CR_OR_LF_FOR_EACH_BYTE("CR|LF forEachByte") {
+            @Override
+            int search(ByteBuf buf) {
+                return buf.forEachByte(ByteProcessor.FIND_CRLF);
+            }
+        },
+        CR_OR_LF_SWAR("CR|LF swar") {
+            @Override
+            int search(ByteBuf buf) {
+                return CR_OR_LF.indexOf(buf);
+            }
+        },
+        CRLFCRLF_BYTE_BUF_UTIL("CRLFCRLF ByteBufUtil") {
+            @Override
+            int search(ByteBuf buf) {
+                return ByteBufUtil.indexOf(CRLFCRLF_NEEDLE, buf);
+            }
+        },
+        CRLFCRLF_SWAR("CRLFCRLF swar") {
+            @Override
+            int search(ByteBuf buf) {
+                return CRLFCRLF.indexOf(buf);
+            }
+        };
+
+        final String label;
+
+        Method(String label) {
+            this.label = label;
+        }
+
+        abstract int search(ByteBuf buf);
+
+        /**
+         * The haystack for this method: {@code size} bytes ending with the
+         * delimiter, so the whole buffer is scanned.
+         */
+        ByteBuf haystack(boolean direct, int size) {
+            String delimiter = label.startsWith("CRLFCRLF") ? "\r\n\r\n" : "\n";
+            ByteBuf buf = direct ? PooledByteBufAllocator.DEFAULT.directBuffer(size) :
+                    PooledByteBufAllocator.DEFAULT.heapBuffer(size);
+            buf.writeZero(Math.max(0, size - delimiter.length()));
+            // 填充\r使CRLFCRLF的首字节频繁命中，候选位置需要逐一校验
+            for (int i = 0; i < buf.writerIndex(); i += 2) {
+                buf.setByte(i, label.startsWith("CRLFCRLF") ? '\r' : 'x');
+            }
+            return buf.writeBytes(delimiter.getBytes(CharsetUtil.US_ASCII));
+        }
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = { 16, 64, 256, 1024, 8192 };
+        int rounds = 3;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--sizes=")) {
+                String[] parts = value.split(",");
+                sizes = new int[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    sizes[i] = Integer.parseInt(parts[i]);
+                }
+            } else if (arg.startsWith("--rounds=")) {
+                rounds = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        StringBuilder header = new StringBuilder(String.format("%-22s%-8s", "ns/search", ""));
+        for (int size : sizes) {
+            header.append(String.format("%10d", size));
+        }
+        System.out.println(header);
+        for (Method method : Method.values()) {
+            for (boolean direct : new boolean[] { false, true }) {
+                StringBuilder row = new StringBuilder(String.format("%-22s%-8s",
+                        method.label, direct ? "direct" : "heap"));
+                for (int size : sizes) {
+                    ByteBuf haystack = method.haystack(direct, size);
+                    double best = Double.MAX_VALUE;
+                    for (int round = 0; round < rounds; round++) {
+                        best = Math.min(best, run(method, haystack));
+                    }
+                    haystack.release();
+                    row.append(String.format("%10.1f", best));
+                }
+                System.out.println(row);
+            }
+        }
+    }
+
+    private static double run(Method method, ByteBuf haystack) {
+        int iterations = 1;
+        for (;;) {
+            long begin = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += method.search(haystack);
+            }
+            long elapsed = System.nanoTime() - begin;
+            if (elapsed >= TARGET_NANOS) {
+                return (double) elapsed / iterations;
+            }
+            iterations *= 2;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package nia.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import nia.chapter4.CoalescingChannelWriter;
+import nia.util.Transport;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many application threads writing small messages to one TCP connection:
+ * {@code channel.writeAndFlush()} from every thread (Listing 4.6), which
+ * submits one event loop task and does one flush per message, against
+ * {@link CoalescingChannelWriter}. Reports messages per second until the
+ * peer has received everything.
+ * <pre>
+ *   CoalescingWriteBenchmark [--producers=N] [--messages=N] [--size=BYTES] [--rounds=N]
+ * </pre>
+ */
+public final class CoalescingWriteBenchmark {
+    private CoalescingWriteBenchmark() {
+    }
+
+    private interface Writer {
+        void write(ByteBuf msg);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int producers = 4;
+        int messages = 1000000;
+        int size = 32;
+        int rounds = 5;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--producers=")) {
+                producers = Integer.parseInt(value);
+            } else if (arg.startsWith("--messages=")) {
+                messages = Integer.parseInt(value);
+            } else if (arg.startsWith("--size=")) {
+                size = Integer.parseInt(value);
+            } else if (arg.startsWith("--rounds=")) {
+                rounds = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        Transport transport = Transport.auto();
+        EventLoopGroup serverGroup = transport.newEventLoopGroup(1);
+        EventLoopGroup clientGroup = transport.newEventLoopGroup(1);
+        final AtomicLong received = new AtomicLong();
+        try {
+            Channel server = transport.serverBootstrap(serverGroup)
+                    .childHandler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                                @Override
+                                public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                    received.addAndGet(((ByteBuf) msg).readableBytes());
+                                    ReferenceCountUtil.release(msg);
+                                }
+                            });
+                        }
+                    })
+                    .bind("127.0.0.1", 0).sync().channel();
+            final Channel channel = transport.bootstrap(clientGroup)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .connect(server.localAddress()).sync().channel();
+            // 队列要能容纳一轮的全部消息，否则超出的写会被拒绝
+            final CoalescingChannelWriter coalescing = new CoalescingChannelWriter(channel, 1024,
+                    (int) Math.max(1024, Math.min((long) producers * messages, 1 << 30)));
+            ByteBuf payload = Unpooled.unreleasableBuffer(
+                    Unpooled.directBuffer(size).writeZero(size));
+
+            Writer direct = new Writer() {
+                @Override
+                public void write(ByteBuf msg) {
+                    channel.writeAndFlush(msg, channel.voidPromise());
+                }
+            };
+            Writer coalesced = new Writer() {
+                @Override
+                public void write(ByteBuf msg) {
+                    coalescing.write(msg);
+                }
+            };
+            System.out.println(producers + " producers x " + messages + " messages of " +
+                    size + " bytes over " + transport);
+            for (int round = 1; round <= rounds; round++) {
+                System.out.printf("round %d: writeAndFlush %,12.0f msg/s   coalesced %,12.0f msg/s%n",
+                        round,
+                        run(direct, payload, producers, messages, received),
+                        run(coalesced, payload, producers, messages, received));
+            }
+            channel.close().sync();
+            server.close().sync();
+        } finally {
+            clientGroup.shutdownGracefully().sync();
+            serverGroup.shutdownGracefully().sync();
+        }
+    }
+
+    private static double run(final Writer writer, final ByteBuf payload, int producers,
+        final int messages, AtomicLong received) throws InterruptedException {
+        long expected = received.get() + (long) producers * messages * payload.readableBytes();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int n = 0; n < messages; n++) {
+                        writer.write(payload.duplicate());
+                    }
+                }
+            }, "producer-" + i);
+            threads[i].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        while (received.get() < expected) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        long elapsed = System.nanoTime() - begin;
+        return (double) producers * messages * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+}
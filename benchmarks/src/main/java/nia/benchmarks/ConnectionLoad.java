@@ -0,0 +1,169 @@
+package nia.benchmarks;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.ReferenceCountUtil;
+import nia.util.Transport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side of {@link TransportShootout}: opens connections to a server
+ * that writes a greeting and closes, keeping {@code concurrency} of them
+ * in progress until {@code total} have been made or {@code duration} has
+ * passed. Latency is measured from the registration of the new channel,
+ * right before it connects, until the server has closed the connection.
+ * Connections that fail, or that see no data for {@code TIMEOUT_SECONDS},
+ * count as failures; in a storm the latter are typically connections dropped
+ * from a full accept queue.
+ */
+final class ConnectionLoad {
+    private static final int TIMEOUT_SECONDS = 10;
+
+    private final SocketAddress address;
+    private final int expectedBytes;
+    private final Transport transport = Transport.auto();
+    private final Recorder recorder = new Recorder(3);
+    private final AtomicLong remaining = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long deadline;
+    private CountDownLatch done;
+    private Bootstrap bootstrap;
+
+    ConnectionLoad(int port, int expectedBytes) {
+        this.address = new InetSocketAddress("127.0.0.1", port);
+        this.expectedBytes = expectedBytes;
+    }
+
+    /**
+     * Outcome of one run; latencies in nanoseconds.
+     */
+    static final class Result {
+        final long elapsedNanos;
+        final Histogram latency;
+        final int failures;
+
+        Result(long elapsedNanos, Histogram latency, int failures) {
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+            this.failures = failures;
+        }
+
+        double rate() {
+            return latency.getTotalCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+    }
+
+    /**
+     * A burst of {@code total} connections, all started at once.
+     */
+    Result storm(int total) throws InterruptedException {
+        return run(total, Long.MAX_VALUE, total);
+    }
+
+    /**
+     * {@code concurrency} connections in progress at all times, for
+     * {@code seconds}.
+     */
+    Result sustained(int concurrency, long seconds) throws InterruptedException {
+        return run(Long.MAX_VALUE, TimeUnit.SECONDS.toNanos(seconds), concurrency);
+    }
+
+    private Result run(long total, long durationNanos, int concurrency) throws InterruptedException {
+        EventLoopGroup group = transport.newEventLoopGroup();
+        try {
+            bootstrap = transport.bootstrap(group)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                            (int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS))
+                    .remoteAddress(address)
+                    .handler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            ch.pipeline().addLast(new ReadTimeoutHandler(TIMEOUT_SECONDS),
+                                    new GreetingHandler());
+                        }
+                    });
+            recorder.reset();
+            failures.set(0);
+            remaining.set(total);
+            done = new CountDownLatch(concurrency);
+            long start = System.nanoTime();
+            deadline = durationNanos == Long.MAX_VALUE ? Long.MAX_VALUE : start + durationNanos;
+            for (int i = 0; i < concurrency; i++) {
+                next();
+            }
+            done.await();
+            long elapsed = System.nanoTime() - start;
+            return new Result(elapsed, recorder.getIntervalHistogram(), failures.get());
+        } finally {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    /**
+     * Starts the next connection of a worker slot, or releases the slot if
+     * the run is over.
+     */
+    private void next() {
+        if (remaining.getAndDecrement() <= 0 || System.nanoTime() - deadline >= 0) {
+            done.countDown();
+            return;
+        }
+        bootstrap.connect().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    failures.incrementAndGet();
+                    next();
+                }
+            }
+        });
+    }
+
+    private void completed(long start, int bytes) {
+        if (bytes == expectedBytes) {
+            recorder.recordValue(System.nanoTime() - start);
+        } else {
+            failures.incrementAndGet();
+        }
+        next();
+    }
+
+    private final class GreetingHandler extends ChannelInboundHandlerAdapter {
+        private final long start = System.nanoTime();
+        private int bytes;
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            bytes += ((ByteBuf) msg).readableBytes();
+            ReferenceCountUtil.release(msg);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            completed(start, bytes);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            // resets and read timeouts are counted as failures in channelInactive
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package nia.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.util.CharsetUtil;
+import nia.chapter11.CmdFlyweight;
+import nia.chapter11.CmdFlyweightInitializer;
+import nia.chapter11.CmdHandlerInitializer;
+import nia.chapter13.LogEvent;
+import nia.chapter13.LogEventDecoder;
+import nia.chapter13.LogEventFlyweight;
+import nia.chapter13.LogEventFlyweightHandler;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding into message objects against reading the same bytes through a
+ * generated flyweight, for the log event datagrams of chapter 13 and the
+ * command lines of chapter 11. Both variants run on an
+ * {@link EmbeddedChannel}, so everything happens on the calling thread, and
+ * its allocations are counted with
+ * {@code com.sun.management.ThreadMXBean}. The varargs array of
+ * {@code writeInbound()} adds 24 bytes per datagram to both log variants.
+ * <pre>
+ *   FlyweightBenchmark [--messages=N] [--rounds=N]
+ * </pre>
+ */
+public final class FlyweightBenchmark {
+    private static final String LOGFILE = "/var/log/messages";
+    private static final String LOG_LINE = LOGFILE +
+            ":Oct 19 12:00:00 host sshd[4242]: Accepted publickey for netty from 10.0.0.1";
+    private static final String CMD_NAME = "set";
+    private static final String CMD_LINE = CMD_NAME + " session.timeout 30s\n";
+    private static final int LINES_PER_WRITE = 1000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // keeps the JIT from dropping the reads
+    private static long sink;
+
+    private FlyweightBenchmark() {
+    }
+
+    private interface Input {
+        /**
+         * Feeds the channel and returns the number of messages it carried.
+         */
+        int feed(EmbeddedChannel channel);
+    }
+
+    /**
+     * A fresh pipeline per run, the handlers are not sharable.
+     */
+    private interface Pipeline {
+        ChannelHandler[] handlers();
+    }
+
+    public static void main(String[] args) {
+        int messages = 2000000;
+        int rounds = 5;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--messages=")) {
+                messages = Integer.parseInt(value);
+            } else if (arg.startsWith("--rounds=")) {
+                rounds = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        final byte[] logfile = LOGFILE.getBytes(CharsetUtil.UTF_8);
+        final DatagramPacket packet = new DatagramPacket(
+                Unpooled.unreleasableBuffer(Unpooled.directBuffer().writeBytes(
+                        LOG_LINE.getBytes(CharsetUtil.UTF_8))),
+                new InetSocketAddress("127.0.0.1", 9999), new InetSocketAddress("10.0.0.1", 9999));
+        Input datagrams = new Input() {
+            @Override
+            public int feed(EmbeddedChannel channel) {
+                channel.writeInbound(packet);
+                return 1;
+            }
+        };
+        Pipeline logObjects = new Pipeline() {
+            @Override
+            public ChannelHandler[] handlers() {
+                return new ChannelHandler[] { new LogEventDecoder(), new SimpleChannelInboundHandler<LogEvent>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, LogEvent event) {
+                        sink += event.getLogfile().equals(LOGFILE) ? event.getMsg().length() : 0;
+                    }
+                } };
+            }
+        };
+        Pipeline logFlyweight = new Pipeline() {
+            @Override
+            public ChannelHandler[] handlers() {
+                return new ChannelHandler[] { new LogEventFlyweightHandler() {
+                    @Override
+                    protected void handle(DatagramPacket packet, LogEventFlyweight event) {
+                        sink += event.logfileEquals(logfile) ? event.msgLength() : 0;
+                    }
+                } };
+            }
+        };
+
+        final ByteBuf lines = PooledByteBufAllocator.DEFAULT.directBuffer();
+        for (int i = 0; i < LINES_PER_WRITE; i++) {
+            lines.writeBytes(CMD_LINE.getBytes(CharsetUtil.UTF_8));
+        }
+        Input commands = new Input() {
+            @Override
+            public int feed(EmbeddedChannel channel) {
+                // 池化的派生缓冲区由Recycler回收，不计入每条消息的分配
+                channel.writeInbound(lines.retainedDuplicate());
+                return LINES_PER_WRITE;
+            }
+        };
+        final ByteBuf name = Unpooled.copiedBuffer(CMD_NAME, CharsetUtil.UTF_8);
+        final byte[] nameBytes = CMD_NAME.getBytes(CharsetUtil.UTF_8);
+        Pipeline cmdObjects = new Pipeline() {
+            @Override
+            public ChannelHandler[] handlers() {
+                return new ChannelHandler[] { new CmdHandlerInitializer.CmdDecoder(64 * 1024),
+                        new SimpleChannelInboundHandler<CmdHandlerInitializer.Cmd>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, CmdHandlerInitializer.Cmd cmd) {
+                        sink += cmd.name().equals(name) ? cmd.args().readableBytes() : 0;
+                        // name和args是同一帧的切片，释放一次即归还该帧
+                        cmd.name().release();
+                    }
+                } };
+            }
+        };
+        Pipeline cmdFlyweight = new Pipeline() {
+            @Override
+            public ChannelHandler[] handlers() {
+                return new ChannelHandler[] { new LineBasedFrameDecoder(64 * 1024),
+                        new CmdFlyweightInitializer.CmdFlyweightHandler() {
+                    @Override
+                    protected void handle(ChannelHandlerContext ctx, CmdFlyweight cmd) {
+                        sink += cmd.nameEquals(nameBytes) ? cmd.argsLength() : 0;
+                    }
+                } };
+            }
+        };
+
+        System.out.printf("%-22s%14s%14s%n", "", "msg/s", "bytes/msg");
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            run("log event objects", datagrams, messages, logObjects);
+            run("log event flyweight", datagrams, messages, logFlyweight);
+            run("cmd objects", commands, messages, cmdObjects);
+            run("cmd flyweight", commands, messages, cmdFlyweight);
+        }
+        lines.release();
+    }
+
+    private static void run(String name, Input input, int messages, Pipeline pipeline) {
+        EmbeddedChannel channel = new EmbeddedChannel(pipeline.handlers());
+        long thread = Thread.currentThread().getId();
+        long allocated = THREADS.getThreadAllocatedBytes(thread);
+        long begin = System.nanoTime();
+        int count = 0;
+        while (count < messages) {
+            count += input.feed(channel);
+        }
+        long elapsed = System.nanoTime() - begin;
+        allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+        channel.finishAndReleaseAll();
+        System.out.printf("  %-20s%,14.0f%14.1f%n", name,
+                (double) count * TimeUnit.SECONDS.toNanos(1) / elapsed, (double) allocated / count);
+    }
+}
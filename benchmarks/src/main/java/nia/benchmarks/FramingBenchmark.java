@@ -0,0 +1,181 @@
+package nia.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import nia.chapter5.FrameAssembler;
+import nia.chapter5.LengthFieldFrameEncoder;
+import nia.util.Transport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Length-prefixed frames of retained payload slices over a loopback
+ * connection, assembled by {@link FrameAssembler} in each of its modes:
+ * copied into one buffer, as one composite buffer, or as header and payload
+ * gathered by the outbound buffer. The consolidation threshold is 0, so the
+ * smallest size at which composite or gather beats copy is the threshold to
+ * use. Reports the best frames per second of all rounds.
+ * <pre>
+ *   FramingBenchmark [--sizes=16,64,...] [--messages=N] [--rounds=N]
+ * </pre>
+ */
+public final class FramingBenchmark {
+    private static final int FLUSH_EVERY = 64;
+
+    private FramingBenchmark() {
+    }
+
+    /**
+     * Writes {@code remaining} slices of {@code source} on the event loop,
+     * as long as the channel is writable.
+     */
+    private static final class Sender extends ChannelInboundHandlerAdapter {
+        private ByteBuf source;
+        private int size;
+        private int remaining;
+
+        void start(final Channel channel, final ByteBuf source, final int size, final int count) {
+            channel.eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    Sender.this.source = source;
+                    Sender.this.size = size;
+                    remaining = count;
+                    send(channel);
+                }
+            });
+        }
+
+        private void send(Channel channel) {
+            while (remaining > 0 && channel.isWritable()) {
+                channel.write(source.retainedSlice(0, size), channel.voidPromise());
+                if (--remaining % FLUSH_EVERY == 0) {
+                    channel.flush();
+                }
+            }
+            channel.flush();
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            if (ctx.channel().isWritable() && remaining > 0) {
+                send(ctx.channel());
+            }
+            ctx.fireChannelWritabilityChanged();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = { 16, 64, 256, 1024, 4096, 16384, 65536 };
+        int messages = 200000;
+        int rounds = 3;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--sizes=")) {
+                String[] parts = value.split(",");
+                sizes = new int[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    sizes[i] = Integer.parseInt(parts[i]);
+                }
+            } else if (arg.startsWith("--messages=")) {
+                messages = Integer.parseInt(value);
+            } else if (arg.startsWith("--rounds=")) {
+                rounds = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        int maxSize = 0;
+        for (int size : sizes) {
+            maxSize = Math.max(maxSize, size);
+        }
+
+        Transport transport = Transport.auto();
+        EventLoopGroup serverGroup = transport.newEventLoopGroup(1);
+        EventLoopGroup clientGroup = transport.newEventLoopGroup(1);
+        final AtomicLong received = new AtomicLong();
+        ByteBuf source = PooledByteBufAllocator.DEFAULT.directBuffer(maxSize).writeZero(maxSize);
+        try {
+            Channel server = transport.serverBootstrap(serverGroup)
+                    .childHandler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                                @Override
+                                public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                    received.addAndGet(((ByteBuf) msg).readableBytes());
+                                    ReferenceCountUtil.release(msg);
+                                }
+                            });
+                        }
+                    })
+                    .bind("127.0.0.1", 0).sync().channel();
+
+            FrameAssembler.Mode[] modes = FrameAssembler.Mode.values();
+            Channel[] channels = new Channel[modes.length];
+            Sender[] senders = new Sender[modes.length];
+            for (int i = 0; i < modes.length; i++) {
+                final Sender sender = new Sender();
+                final LengthFieldFrameEncoder encoder =
+                        new LengthFieldFrameEncoder(new FrameAssembler(modes[i], 0));
+                channels[i] = transport.bootstrap(clientGroup)
+                        .option(ChannelOption.TCP_NODELAY, true)
+                        .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                        .handler(new ChannelInitializer<Channel>() {
+                            @Override
+                            protected void initChannel(Channel ch) {
+                                ch.pipeline().addLast(sender, encoder);
+                            }
+                        })
+                        .connect(server.localAddress()).sync().channel();
+                senders[i] = sender;
+            }
+
+            System.out.println(messages + " frames per run, best of " + rounds + " rounds over " + transport);
+            StringBuilder header = new StringBuilder(String.format("%8s", "payload"));
+            for (FrameAssembler.Mode mode : modes) {
+                header.append(String.format("%27s", mode.name().toLowerCase()));
+            }
+            System.out.println(header);
+            for (int size : sizes) {
+                StringBuilder row = new StringBuilder(String.format("%8d", size));
+                for (int i = 0; i < modes.length; i++) {
+                    double best = 0;
+                    for (int round = 0; round < rounds; round++) {
+                        best = Math.max(best, run(channels[i], senders[i], source, size, messages, received));
+                    }
+                    row.append(String.format("%,15.0f/s%,7.0fMB/s", best, best * size / (1 << 20)));
+                }
+                System.out.println(row);
+            }
+            for (Channel channel : channels) {
+                channel.close().sync();
+            }
+            server.close().sync();
+        } finally {
+            source.release();
+            clientGroup.shutdownGracefully().sync();
+            serverGroup.shutdownGracefully().sync();
+        }
+    }
+
+    private static double run(Channel channel, Sender sender, ByteBuf source, int size, int messages,
+        AtomicLong received) throws InterruptedException {
+        long expected = received.get() + (long) messages * (4 + size);
+        long begin = System.nanoTime();
+        sender.start(channel, source, size, messages);
+        while (received.get() < expected) {
+            TimeUnit.MICROSECONDS.sleep(100);
+        }
+        long elapsed = System.nanoTime() - begin;
+        return (double) messages * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+}
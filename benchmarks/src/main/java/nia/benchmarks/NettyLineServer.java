@@ -0,0 +1,71 @@
+package nia.benchmarks;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.util.ReferenceCountUtil;
+import nia.util.ConstantMessages;
+import nia.util.Transport;
+
+import java.io.IOException;
+
+/**
+ * The request/response protocol of {@code nia.chapter1.BlockingIoExample}
+ * on Netty: every line is answered with "Processed". Used as the
+ * non-blocking baseline of {@link BlockingServerBenchmark}.
+ */
+final class NettyLineServer {
+    private static final ByteBuf RESPONSE = ConstantMessages.intern("Processed\n");
+
+    private NettyLineServer() {
+    }
+
+    @Sharable
+    private static final class ProcessedHandler extends ChannelInboundHandlerAdapter {
+        static final ProcessedHandler INSTANCE = new ProcessedHandler();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+            ctx.write(RESPONSE.duplicate(), ctx.voidPromise());
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            ctx.flush();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            if (!(cause instanceof IOException)) {
+                cause.printStackTrace();
+            }
+            ctx.close();
+        }
+    }
+
+    static void serve(int port, Transport transport) throws InterruptedException {
+        EventLoopGroup group = transport.newEventLoopGroup();
+        try {
+            transport.serverBootstrap(group)
+                    .option(ChannelOption.SO_BACKLOG, 1024)
+                    .childHandler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            ch.pipeline().addLast(new LineBasedFrameDecoder(1024),
+                                    ProcessedHandler.INSTANCE);
+                        }
+                    })
+                    .bind(port).sync().channel().closeFuture().sync();
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package nia.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ShootoutServer} running in a child JVM with this JVM's class
+ * path, and the line based control channel to it.
+ */
+final class ServerProcess implements Closeable {
+    private final Process process;
+    private final PrintWriter out;
+    private final BufferedReader in;
+
+    private ServerProcess(Process process) throws IOException {
+        this.process = process;
+        out = new PrintWriter(new OutputStreamWriter(process.getOutputStream(), "UTF-8"), true);
+        in = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+    }
+
+    /**
+     * Starts {@code ShootoutServer <args>} and waits until it accepts
+     * connections on {@code port}.
+     */
+    static ServerProcess start(int port, String... args) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<String>(Arrays.asList(java,
+                "-cp", System.getProperty("java.class.path"), ShootoutServer.class.getName()));
+        command.addAll(Arrays.asList(args));
+        ServerProcess server = new ServerProcess(new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start());
+        try {
+            awaitListening(port);
+        } catch (IllegalStateException e) {
+            server.close();
+            throw e;
+        }
+        return server;
+    }
+
+    /**
+     * Starts a new measurement interval.
+     */
+    void reset() throws IOException {
+        command("reset");
+    }
+
+    /**
+     * Figures of the interval since {@link #reset()}.
+     */
+    Stats stats() throws IOException {
+        String[] fields = command("stats").split(" ");
+        return new Stats(Long.parseLong(fields[0]), Integer.parseInt(fields[1]),
+                Integer.parseInt(fields[2]), Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+    }
+
+    private String command(String command) throws IOException {
+        out.println(command);
+        String reply = in.readLine();
+        if (reply == null) {
+            throw new IOException("Server process exited");
+        }
+        return reply;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the child exits when its stdin is closed
+        process.getOutputStream().close();
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitListening(int port) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+                return;
+            } catch (IOException e) {
+                TimeUnit.MILLISECONDS.sleep(50);
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ignore) {
+                    // ignore on close
+                }
+            }
+        }
+        throw new IllegalStateException("Server did not start listening on port " + port);
+    }
+
+    /**
+     * Server side resource usage over one interval.
+     */
+    static final class Stats {
+        final long cpuNanos;
+        final int liveThreads;
+        final int peakThreads;
+        final long startedThreads;
+        final long allocatedBytes;
+
+        Stats(long cpuNanos, int liveThreads, int peakThreads, long startedThreads,
+            long allocatedBytes) {
+            this.cpuNanos = cpuNanos;
+            this.liveThreads = liveThreads;
+            this.peakThreads = peakThreads;
+            this.startedThreads = startedThreads;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        /**
+         * Average number of cores busy over {@code elapsedNanos}.
+         */
+        double cores(long elapsedNanos) {
+            return cpuNanos / (double) elapsedNanos;
+        }
+
+        /**
+         * Allocation rate over {@code elapsedNanos}, in MB/s.
+         */
+        double allocationRate(long elapsedNanos) {
+            return allocatedBytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos / (1024 * 1024);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package nia.benchmarks;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import nia.chapter1.BlockingIoExample;
+import nia.chapter4.MultiReactorNioServer;
+import nia.chapter4.NettyNioServer;
+import nia.chapter4.NettyOioServer;
+import nia.chapter4.PlainNioServer;
+import nia.chapter4.PlainOioServer;
+import nia.util.ConnectionExecutors;
+import nia.util.Transport;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One of the sample servers in its own JVM, for {@link TransportShootout} and
+ * {@link BlockingServerBenchmark}. The blocking servers on an executor use
+ * one virtual thread per connection ({@code plain-oio-vt},
+ * {@code blocking-vt}, JDK 21+) or a pool of {@code fallbackThreads}
+ * platform threads ({@code plain-oio-bounded}, {@code blocking-bounded}),
+ * see {@link #withAvailableThreads(String)}.
+ *
+ * The server runs on a background thread; the process is controlled through
+ * stdin, one command per line:
+ * <pre>
+ *   reset   start a new measurement interval
+ *   stats   print "cpuNanos liveThreads peakThreads startedThreads allocatedBytes"
+ *           for the interval
+ * </pre>
+ * and exits when stdin is closed. The "Accepted connection from" lines of the
+ * plain servers are discarded so that console output does not skew the
+ * comparison.
+ */
+public final class ShootoutServer {
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private final AtomicLong collected = new AtomicLong();
+    private long cpuBase;
+    private long startedBase;
+    private long heapBase;
+    private long collectedBase;
+
+    private ShootoutServer() {
+        NotificationListener listener = new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+                        .equals(notification.getType())) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+                        .from((CompositeData) notification.getUserData());
+                collected.addAndGet(used(info.getGcInfo().getMemoryUsageBeforeGc())
+                        - used(info.getGcInfo().getMemoryUsageAfterGc()));
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+        }
+    }
+
+    /**
+     * Bytes allocated since the last reset: what the collector freed plus
+     * the growth of the heap. Unlike per-thread counters this also covers
+     * threads that have already terminated, e.g. PlainOioServer's.
+     */
+    private long allocated() {
+        return collected.get() - collectedBase + heapUsed() - heapBase;
+    }
+
+    private void reset() {
+        cpuBase = os.getProcessCpuTime();
+        startedBase = threads.getTotalStartedThreadCount();
+        threads.resetPeakThreadCount();
+        heapBase = heapUsed();
+        collectedBase = collected.get();
+    }
+
+    private String stats() {
+        return String.format(Locale.ROOT, "%d %d %d %d %d",
+                os.getProcessCpuTime() - cpuBase,
+                threads.getThreadCount(),
+                threads.getPeakThreadCount(),
+                threads.getTotalStartedThreadCount() - startedBase,
+                allocated());
+    }
+
+    private static long heapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long used(Map<String, MemoryUsage> pools) {
+        long used = 0;
+        for (MemoryUsage usage : pools.values()) {
+            used += usage.getUsed();
+        }
+        return used;
+    }
+
+    /**
+     * {@code name}, except that a virtual thread server ({@code -vt}) on a
+     * JDK without virtual threads becomes the same server on the bounded
+     * platform thread pool ({@code -bounded}), so that its results are not
+     * labelled as virtual thread numbers.
+     */
+    static String withAvailableThreads(String name) {
+        if (name.endsWith("-vt") && !ConnectionExecutors.virtualThreadsAvailable()) {
+            return name.substring(0, name.length() - "-vt".length()) + "-bounded";
+        }
+        return name;
+    }
+
+    private static Runnable server(final String name, final int port, final int fallbackThreads) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if ("plain-oio".equals(name)) {
+                        new PlainOioServer().serve(port);
+                    } else if ("plain-oio-vt".equals(name)) {
+                        new PlainOioServer().serve(port, ConnectionExecutors.virtualThreadPerTask());
+                    } else if ("plain-oio-bounded".equals(name)) {
+                        new PlainOioServer().serve(port, ConnectionExecutors.bounded(fallbackThreads));
+                    } else if ("blocking-vt".equals(name)) {
+                        new BlockingIoExample().serve(port, ConnectionExecutors.virtualThreadPerTask());
+                    } else if ("blocking-bounded".equals(name)) {
+                        new BlockingIoExample().serve(port, ConnectionExecutors.bounded(fallbackThreads));
+                    } else if ("netty-line".equals(name)) {
+                        NettyLineServer.serve(port, Transport.NIO);
+                    } else if ("plain-nio".equals(name)) {
+                        new PlainNioServer().serve(port);
+                    } else if ("plain-nio-mr".equals(name)) {
+                        new MultiReactorNioServer().serve(port);
+                    } else if ("netty-oio".equals(name)) {
+                        new NettyOioServer().server(port);
+                    } else if ("netty-nio".equals(name)) {
+                        new NettyNioServer().server(port, Transport.NIO);
+                    } else if ("netty-epoll".equals(name)) {
+                        new NettyNioServer().server(port, Transport.of("epoll"));
+                    } else {
+                        throw new IllegalArgumentException("Unknown server: " + name);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    System.exit(1);
+                }
+            }
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 && args.length != 3) {
+            System.err.println("Usage: " + ShootoutServer.class.getSimpleName() +
+                    " plain-oio|plain-oio-vt|plain-oio-bounded|plain-nio|plain-nio-mr|netty-oio|netty-nio" +
+                    "|netty-epoll|blocking-vt|blocking-bounded|netty-line <port> [fallbackThreads]");
+            System.exit(1);
+        }
+        int fallbackThreads = args.length == 3 ? Integer.parseInt(args[2]) : 1000;
+        PrintStream control = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        ShootoutServer monitor = new ShootoutServer();
+        Thread server = new Thread(server(args[0], Integer.parseInt(args[1]), fallbackThreads), args[0]);
+        server.setDaemon(true);
+        server.start();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if ("reset".equals(line)) {
+                monitor.reset();
+                control.println("ok");
+            } else if ("stats".equals(line)) {
+                control.println(monitor.stats());
+            }
+            control.flush();
+        }
+        System.exit(0);
+    }
+}
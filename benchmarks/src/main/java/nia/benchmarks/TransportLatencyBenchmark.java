@@ -0,0 +1,109 @@
+package nia.benchmarks;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.unix.DomainSocketAddress;
+import nia.chapter2.echoclient.EchoLoadGenerator;
+import nia.chapter2.echoclient.LoadResult;
+import nia.chapter2.echoclient.MessageSizeDistribution;
+import nia.chapter2.echoserver.EchoServer;
+import nia.util.Transport;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Round-trip latency of the persistent {@link EchoServer} over the three
+ * endpoints a co-located client can use: TCP loopback, a Unix domain socket
+ * (epoll only) and an in-JVM LocalChannel.
+ *
+ * Server and clients run in this JVM. Every endpoint is measured with one
+ * connection, one request in flight, so the numbers are pure round-trip time.
+ * <pre>
+ *   TransportLatencyBenchmark [--size=SPEC] [--warmup=SECONDS] [--duration=SECONDS]
+ * </pre>
+ */
+public final class TransportLatencyBenchmark {
+    private static final String LOCAL_NAME = "nia-echo";
+
+    private TransportLatencyBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        MessageSizeDistribution sizes = MessageSizeDistribution.fixed(64);
+        long warmup = 2;
+        long duration = 10;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--size=")) {
+                sizes = MessageSizeDistribution.parse(value);
+            } else if (arg.startsWith("--warmup=")) {
+                warmup = Long.parseLong(value);
+            } else if (arg.startsWith("--duration=")) {
+                duration = Long.parseLong(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        Transport transport = Transport.auto();
+        String domainPath = new File(System.getProperty("java.io.tmpdir"),
+                "nia-echo-" + System.nanoTime() + ".sock").getPath();
+        EchoServer server = new EchoServer(0)
+                .transport(transport)
+                .persistent(true)
+                .local(LOCAL_NAME);
+        if (transport == Transport.EPOLL) {
+            server.domainSocket(domainPath);
+        } else {
+            System.out.println("epoll is not available, skipping the Unix domain socket");
+        }
+
+        EventLoopGroup group = transport.newEventLoopGroup(1);
+        try {
+            List<Channel> channels = server.bind(group);
+            int port = ((InetSocketAddress) channels.get(0).localAddress()).getPort();
+            Map<String, SocketAddress> targets = new LinkedHashMap<String, SocketAddress>();
+            targets.put("tcp", new InetSocketAddress("127.0.0.1", port));
+            if (transport == Transport.EPOLL) {
+                targets.put("domain socket", new DomainSocketAddress(domainPath));
+            }
+            targets.put("local", new LocalAddress(LOCAL_NAME));
+
+            List<LoadResult> results = new ArrayList<LoadResult>();
+            for (Map.Entry<String, SocketAddress> e : targets.entrySet()) {
+                System.out.println("== " + e.getKey());
+                LoadResult result = new EchoLoadGenerator(e.getValue())
+                        .transport(transport)
+                        .depth(1)
+                        .sizes(sizes)
+                        .warmup(warmup)
+                        .duration(duration)
+                        .run();
+                result.print(System.out);
+                results.add(result);
+            }
+
+            System.out.println();
+            System.out.printf("%-14s%12s%10s%10s%10s%n", "Endpoint", "req/s", "p50 us", "p99 us", "p99.9 us");
+            int i = 0;
+            for (String name : targets.keySet()) {
+                LoadResult r = results.get(i++);
+                System.out.printf("%-14s%12.0f%10.1f%10.1f%10.1f%n", name, r.throughput(),
+                        r.latencyAt(50) / 1000.0, r.latencyAt(99) / 1000.0, r.latencyAt(99.9) / 1000.0);
+            }
+            for (Channel ch : channels) {
+                ch.close().sync();
+            }
+        } finally {
+            group.shutdownGracefully().sync();
+            new File(domainPath).delete();
+        }
+    }
+}
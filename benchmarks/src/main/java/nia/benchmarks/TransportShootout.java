@@ -0,0 +1,114 @@
+package nia.benchmarks;
+
+import io.netty.channel.epoll.Epoll;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the four chapter4 servers, plus {@code PlainOioServer} on virtual
+ * threads ({@code plain-oio-vt}, reported as {@code plain-oio-bounded} on the
+ * platform thread pool before JDK 21), {@code MultiReactorNioServer}
+ * ({@code plain-nio-mr}) and {@code NettyNioServer} on epoll, under the same
+ * two workloads and compares them:
+ * <ul>
+ *   <li>storm: {@code --storm=N} connections started at once, and</li>
+ *   <li>sustained: {@code --concurrency=N} connections in progress at all
+ *       times for {@code --duration=SECONDS}.</li>
+ * </ul>
+ * The servers write their greeting and close, so a "sustained" connection is
+ * a steady stream of short ones rather than a long-lived one.
+ *
+ * Each server runs in its own JVM ({@link ShootoutServer}) so that its CPU
+ * time, thread count and allocation are not mixed up with the client's.
+ * Reported per server and workload: connections per second, connect-to-close
+ * latency percentiles, live/peak/started threads, CPU in cores used and
+ * allocation rate.
+ * <pre>
+ *   TransportShootout [--storm=N] [--concurrency=N] [--duration=SECONDS]
+ *                     [--port=N] [--servers=a,b,...]
+ * </pre>
+ */
+public final class TransportShootout {
+    private static final String[] SERVERS = {
+            "plain-oio", "plain-oio-vt", "plain-nio", "plain-nio-mr", "netty-oio", "netty-nio", "netty-epoll" };
+    // "Hi!\r\n"
+    private static final int GREETING_BYTES = 5;
+
+    private TransportShootout() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int storm = 2000;
+        int concurrency = 64;
+        long duration = 10;
+        int port = 9191;
+        String[] servers = SERVERS;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--storm=")) {
+                storm = Integer.parseInt(value);
+            } else if (arg.startsWith("--concurrency=")) {
+                concurrency = Integer.parseInt(value);
+            } else if (arg.startsWith("--duration=")) {
+                duration = Long.parseLong(value);
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(value);
+            } else if (arg.startsWith("--servers=")) {
+                servers = value.split(",");
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        List<String> rows = new ArrayList<String>();
+        for (String requested : servers) {
+            String name = ShootoutServer.withAvailableThreads(requested);
+            if (!name.equals(requested)) {
+                System.out.println("No virtual threads on JDK " + System.getProperty("java.version") +
+                        ", running " + name + " instead of " + requested);
+            }
+            if ("netty-epoll".equals(name) && !Epoll.isAvailable()) {
+                System.out.println("epoll is not available, skipping " + name);
+                continue;
+            }
+            System.out.println("== " + name);
+            ServerProcess server = ServerProcess.start(port, name, String.valueOf(port));
+            try {
+                ConnectionLoad load = new ConnectionLoad(port, GREETING_BYTES);
+                // warm up the server's code paths before measuring
+                load.sustained(concurrency, 2);
+
+                server.reset();
+                rows.add(row(name, "storm " + storm, load.storm(storm), server));
+                server.reset();
+                rows.add(row(name, "sustained " + concurrency,
+                        load.sustained(concurrency, duration), server));
+            } finally {
+                server.close();
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-18s%-16s%10s%8s%10s%10s%10s%10s%8s%8s%9s%7s%12s%n",
+                "Server", "Workload", "conn/s", "failed", "p50 us", "p99 us", "p99.9 us", "max us",
+                "threads", "peak", "started", "cpu", "alloc MB/s");
+        for (String row : rows) {
+            System.out.println(row);
+        }
+    }
+
+    private static String row(String name, String workload, ConnectionLoad.Result result,
+        ServerProcess server) throws IOException {
+        ServerProcess.Stats stats = server.stats();
+        return String.format("%-18s%-16s%10.0f%8d%10.1f%10.1f%10.1f%10.1f%8d%8d%9d%7.2f%12.1f",
+                name, workload, result.rate(), result.failures,
+                result.latency.getValueAtPercentile(50) / 1000.0,
+                result.latency.getValueAtPercentile(99) / 1000.0,
+                result.latency.getValueAtPercentile(99.9) / 1000.0,
+                result.latency.getMaxValue() / 1000.0,
+                stats.liveThreads, stats.peakThreads, stats.startedThreads,
+                stats.cores(result.elapsedNanos), stats.allocationRate(result.elapsedNanos));
+    }
+}
@@ -6,13 +6,21 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Created by kerr.
  *
  * Listing 1.1 Blocking I/O example
+ *
+ * {@link #serve(int)} handles a single client. {@link #serve(int, ExecutorService)}
+ * keeps the same blocking readLine/println handling but serves every client
+ * on a task of its own, e.g. one virtual thread per connection from
+ * {@code nia.util.ConnectionExecutors}.
  */
 public class BlockingIoExample {
+    private static final int BACKLOG = 1024;
 
     /**
      * Listing 1.1 Blocking I/O example
@@ -20,6 +28,46 @@ public class BlockingIoExample {
     public void serve(int portNumber) throws IOException {
         ServerSocket serverSocket = new ServerSocket(portNumber);
         Socket clientSocket = serverSocket.accept();
+        handle(clientSocket);
+    }
+
+    /**
+     * Accepts clients until the server socket fails and hands each one to
+     * {@code executor}; clients the executor rejects are closed.
+     */
+    public void serve(int portNumber, ExecutorService executor) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(portNumber, BACKLOG);
+        try {
+            for (;;) {
+                final Socket clientSocket = serverSocket.accept();
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                handle(clientSocket);
+                            } catch (IOException e) {
+                                // client went away
+                            } finally {
+                                try {
+                                    clientSocket.close();
+                                } catch (IOException ex) {
+                                    // ignore on close
+                                }
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    clientSocket.close();
+                }
+            }
+        } finally {
+            serverSocket.close();
+            executor.shutdown();
+        }
+    }
+
+    private void handle(Socket clientSocket) throws IOException {
         BufferedReader in = new BufferedReader(
                 new InputStreamReader(clientSocket.getInputStream()));
         PrintWriter out =
@@ -1,14 +1,13 @@
 package nia.chapter1;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import nia.util.ConstantMessages;
 
 import java.net.InetSocketAddress;
-import java.nio.charset.Charset;
 
 /**
  * Created by kerr.
@@ -19,6 +18,7 @@ import java.nio.charset.Charset;
  */
 public class ConnectExample {
     private static final Channel CHANNEL_FROM_SOMEWHERE = new NioSocketChannel();
+    private static final ByteBuf HELLO = ConstantMessages.intern("Hello");
 
     /**
      * Listing 1.3 Asynchronous connect
@@ -34,8 +34,7 @@ public class ConnectExample {
             @Override
             public void operationComplete(ChannelFuture future) {
                 if (future.isSuccess()) {
-                    ByteBuf buffer = Unpooled.copiedBuffer(
-                            "Hello", Charset.defaultCharset());
+                    ByteBuf buffer = HELLO.duplicate();
                     ChannelFuture wf = future.channel()
                             .writeAndFlush(buffer);
                     // ...
@@ -0,0 +1,42 @@
+package nia.chapter11;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+
+/**
+ * The command protocol of {@link CmdHandlerInitializer} without a
+ * {@code Cmd} object and two slices per line: each frame is read in place
+ * through a {@link CmdFlyweight} that belongs to the channel.
+ */
+public class CmdFlyweightInitializer extends ChannelInitializer<Channel> {
+    @Override
+    protected void initChannel(Channel ch) throws Exception {
+        ChannelPipeline pipeline = ch.pipeline();
+        pipeline.addLast(new LineBasedFrameDecoder(64 * 1024));
+        pipeline.addLast(new CmdFlyweightHandler());
+    }
+
+    public static class CmdFlyweightHandler
+        extends SimpleChannelInboundHandler<ByteBuf> {
+        private final CmdFlyweight cmd = new CmdFlyweight();
+
+        @Override
+        public void channelRead0(ChannelHandlerContext ctx, ByteBuf frame)
+            throws Exception {
+            handle(ctx, cmd.wrap(frame));
+        }
+
+        /**
+         * Called with the flyweight positioned on the current line; only
+         * valid until this method returns.
+         */
+        protected void handle(ChannelHandlerContext ctx, CmdFlyweight cmd) {
+            // Do something with the command
+        }
+    }
+}
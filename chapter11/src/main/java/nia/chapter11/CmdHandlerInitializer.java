@@ -3,17 +3,37 @@ package nia.chapter11;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
 import io.netty.handler.codec.LineBasedFrameDecoder;
+import nia.util.ByteSearch;
+import nia.util.FusedInboundHandler;
 
 /**
  * Listing 11.9 Using a ChannelInitializer as a decoder installer
  *
+ * With {@code fused} the decoder and the handler share one pipeline entry,
+ * see {@link FusedInboundHandler}.
+ *
  * @author <a href="mailto:norman.maurer@gmail.com">Norman Maurer</a>
  */
 public class CmdHandlerInitializer extends ChannelInitializer<Channel> {
     private static final byte SPACE = (byte)' ';
+    private static final ByteSearch SPACE_SEARCH = ByteSearch.of(SPACE);
+    private final boolean fused;
+
+    public CmdHandlerInitializer() {
+        this(false);
+    }
+
+    public CmdHandlerInitializer(boolean fused) {
+        this.fused = fused;
+    }
+
     @Override
     protected void initChannel(Channel ch) throws Exception {
         ChannelPipeline pipeline = ch.pipeline();
+        if (fused) {
+            pipeline.addLast(new FusedInboundHandler(new CmdDecoder(64 * 1024), new CmdHandler()));
+            return;
+        }
         pipeline.addLast(new CmdDecoder(64 * 1024));
         pipeline.addLast(new CmdHandler());
     }
@@ -48,10 +68,15 @@ public class CmdHandlerInitializer extends ChannelInitializer<Channel> {
             if (frame == null) {
                 return null;
             }
-            int index = frame.indexOf(frame.readerIndex(),
-                    frame.writerIndex(), SPACE);
-            return new Cmd(frame.slice(frame.readerIndex(), index),
-                    frame.slice(index + 1, frame.writerIndex()));
+            int index = SPACE_SEARCH.indexOf(frame,
+                    frame.readerIndex(), frame.writerIndex());
+            if (index < 0) {
+                // 没有空格的命令（如QUIT）没有参数
+                return new Cmd(frame.slice(), frame.slice(frame.writerIndex(), 0));
+            }
+            // slice()的第二个参数是长度而不是结束索引
+            return new Cmd(frame.slice(frame.readerIndex(), index - frame.readerIndex()),
+                    frame.slice(index + 1, frame.writerIndex() - index - 1));
         }
     }
 
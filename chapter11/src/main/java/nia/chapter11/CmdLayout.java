@@ -0,0 +1,18 @@
+package nia.chapter11;
+
+import nia.flyweight.Delimited;
+import nia.flyweight.Flyweight;
+
+/**
+ * Layout of a command line as parsed by
+ * {@link CmdHandlerInitializer.CmdDecoder}: the name, a space and the
+ * arguments. The {@code CmdFlyweight} accessor is generated from it at
+ * build time.
+ */
+@Flyweight("CmdFlyweight")
+public interface CmdLayout {
+    @Delimited(' ')
+    CharSequence name();
+
+    CharSequence args();
+}
@@ -1,11 +1,10 @@
 package nia.chapter11;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.handler.timeout.IdleStateHandler;
-import io.netty.util.CharsetUtil;
+import nia.util.ConstantMessages;
 
 import java.util.concurrent.TimeUnit;
 
@@ -27,8 +26,7 @@ public class IdleStateHandlerInitializer extends ChannelInitializer<Channel>
     public static final class HeartbeatHandler
         extends ChannelInboundHandlerAdapter {
         private static final ByteBuf HEARTBEAT_SEQUENCE =
-                Unpooled.unreleasableBuffer(Unpooled.copiedBuffer(
-                "HEARTBEAT", CharsetUtil.ISO_8859_1));
+                ConstantMessages.intern("HEARTBEAT");
         @Override
         public void userEventTriggered(ChannelHandlerContext ctx,
             Object evt) throws Exception {
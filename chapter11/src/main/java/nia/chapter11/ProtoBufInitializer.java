@@ -5,22 +5,39 @@ import io.netty.channel.*;
 import io.netty.handler.codec.protobuf.ProtobufDecoder;
 import io.netty.handler.codec.protobuf.ProtobufEncoder;
 import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
+import nia.util.FusedInboundHandler;
 
 /**
  * Listing 11.14 Using protobuf
  *
+ * With {@code fused} the three inbound handlers share one pipeline entry,
+ * see {@link FusedInboundHandler}; the encoder is outbound only and stays
+ * in front of them.
+ *
  * @author <a href="mailto:norman.maurer@gmail.com">Norman Maurer</a>
  */
 public class ProtoBufInitializer extends ChannelInitializer<Channel> {
     private final MessageLite lite;
+    private final boolean fused;
 
     public ProtoBufInitializer(MessageLite lite) {
+        this(lite, false);
+    }
+
+    public ProtoBufInitializer(MessageLite lite, boolean fused) {
         this.lite = lite;
+        this.fused = fused;
     }
 
     @Override
     protected void initChannel(Channel ch) throws Exception {
         ChannelPipeline pipeline = ch.pipeline();
+        if (fused) {
+            pipeline.addLast(new ProtobufEncoder());
+            pipeline.addLast(new FusedInboundHandler(new ProtobufVarint32FrameDecoder(),
+                    new ProtobufDecoder(lite), new ObjectHandler()));
+            return;
+        }
         pipeline.addLast(new ProtobufVarint32FrameDecoder());
         pipeline.addLast(new ProtobufEncoder());
         pipeline.addLast(new ProtobufDecoder(lite));
@@ -17,7 +17,7 @@
  *
  * Listing 11.8 Handling line-delimited frames {@link nia.chapter11.LineBasedHandlerInitializer}
  *
- * Listing 11.9 Using a ChannelInitializer as a decoder installer {@link nia.chapter11.CmdHandlerInitializer}
+ * Listing 11.9 Using a ChannelInitializer as a decoder installer {@link nia.chapter11.CmdHandlerInitializer}, fused {@link nia.chapter11.CmdHandlerInitializer#CmdHandlerInitializer(boolean)}
  *
  * Listing 11.10 Decoder for the command and the handler {@link nia.chapter11.LengthBasedInitializer}
  *
@@ -28,5 +28,7 @@
  * Listing 11.13 Using JBoss Marshalling {@link nia.chapter11.MarshallingInitializer}
  *
  * Listing 11.14 Using protobuf {@link nia.chapter11.ProtoBufInitializer}
+ *
+ * Reading commands in place {@link nia.chapter11.CmdLayout}, {@link nia.chapter11.CmdFlyweightInitializer}
  */
 package nia.chapter11;
\ No newline at end of file
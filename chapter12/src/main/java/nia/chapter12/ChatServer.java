@@ -7,31 +7,51 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.concurrent.ImmediateEventExecutor;
+import nia.util.Endpoints;
+import nia.util.PipelineTemplate;
+import nia.util.Transport;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Listing 12.4 Bootstrapping the server
  *
+ * Besides the TCP port the server can be bound to an in-JVM LocalAddress
+ * ({@code --local=NAME}) and a Unix domain socket ({@code --domain-socket=PATH},
+ * epoll only) for co-located clients. With {@code --template} new channels
+ * are set up by a {@link PipelineTemplate} instead of the initializer.
+ *
  * @author <a href="mailto:norman.maurer@gmail.com">Norman Maurer</a>
  */
 public class ChatServer {
     // ChannelGroup用于保存所有连接的客户端，注意要用static来保证只有一个ChannelGroup实例
     private final ChannelGroup channelGroup = new DefaultChannelGroup(ImmediateEventExecutor.INSTANCE);
-    private final EventLoopGroup group = new NioEventLoopGroup();
+    private final Transport transport = Transport.fromSystemProperty();
+    private final EventLoopGroup group = transport.newEventLoopGroup();
     private Channel channel;
+    private ServerBootstrap bootstrap;
+    private final List<Channel> extraChannels = new ArrayList<Channel>();
+    private boolean useTemplate;
+
+    /**
+     * 用PipelineTemplate代替ChannelInitializer初始化新连接，需在start之前调用
+     */
+    public ChatServer useTemplate(boolean useTemplate) {
+        this.useTemplate = useTemplate;
+        return this;
+    }
 
     /**
      * 运行引导
      */
     public ChannelFuture start(InetSocketAddress address) {
-        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap = new ServerBootstrap();
         bootstrap.group(group)
-             .channel(NioServerSocketChannel.class)
-             .childHandler(createInitializer(channelGroup));
+             .channel(transport.serverChannel())
+             .childHandler(useTemplate ? createTemplate(channelGroup) : createInitializer(channelGroup));
         ChannelFuture future = bootstrap.bind(address);
         // 这里不进行sync有坑 https://blog.51cto.com/14478380/2425450
         future.syncUninterruptibly();
@@ -39,26 +59,75 @@ public class ChatServer {
         return future;
     }
 
+    /**
+     * 在已启动的服务器上额外绑定一个进程内的LocalAddress
+     */
+    public ChannelFuture startLocal(String name) {
+        return track(Endpoints.bindLocal(started(), name));
+    }
+
+    /**
+     * 在已启动的服务器上额外绑定一个Unix domain socket，仅epoll可用
+     */
+    public ChannelFuture startDomainSocket(String path) {
+        return track(Endpoints.bindDomainSocket(started(), path));
+    }
+
+    private ServerBootstrap started() {
+        if (bootstrap == null) {
+            throw new IllegalStateException("start(InetSocketAddress) must be called first");
+        }
+        return bootstrap;
+    }
+
+    private ChannelFuture track(ChannelFuture future) {
+        future.syncUninterruptibly();
+        extraChannels.add(future.channel());
+        return future;
+    }
+
     protected ChannelInitializer<Channel> createInitializer(ChannelGroup group) {
         return new ChatServerInitializer(group);
     }
 
+    protected PipelineTemplate createTemplate(ChannelGroup group) {
+        return ChatServerInitializer.template(group);
+    }
+
     public void destroy() {
         if (channel != null) {
             channel.close();
         }
+        for (Channel ch : extraChannels) {
+            ch.close();
+        }
         channelGroup.close();
         group.shutdownGracefully();
     }
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.err.println("Please give port as argument");
+        if (args.length < 1) {
+            System.err.println("Please give port as argument, optionally followed by" +
+                    " --local=NAME, --domain-socket=PATH and --template");
             System.exit(1);
         }
         int port = Integer.parseInt(args[0]);
         final ChatServer endpoint = new ChatServer();
+        for (int i = 1; i < args.length; i++) {
+            if ("--template".equals(args[i])) {
+                endpoint.useTemplate(true);
+            }
+        }
         ChannelFuture future = endpoint.start(new InetSocketAddress(port));
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--local=")) {
+                endpoint.startLocal(args[i].substring("--local=".length()));
+            } else if (args[i].startsWith("--domain-socket=")) {
+                endpoint.startDomainSocket(args[i].substring("--domain-socket=".length()));
+            } else if (!"--template".equals(args[i])) {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
         // 注册虚拟机钩子
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
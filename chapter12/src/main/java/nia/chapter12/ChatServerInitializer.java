@@ -1,6 +1,7 @@
 package nia.chapter12;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.group.ChannelGroup;
@@ -8,6 +9,7 @@ import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import nia.util.PipelineTemplate;
 
 /**
  * Listing 12.3 Initializing the ChannelPipeline
@@ -48,4 +50,38 @@ public class ChatServerInitializer extends ChannelInitializer<Channel> {
         // 协议升级等操作由WebSocketServerProtocolHandler完成，我们只需要自定义对应Frame的处理类
         pipeline.addLast(new TextWebSocketFrameHandler(group));
     }
+
+    /**
+     * The same pipeline as a {@link PipelineTemplate}: the request and frame
+     * handlers are shared by all channels, the codecs are created per channel
+     */
+    public static PipelineTemplate template(ChannelGroup group) {
+        return new PipelineTemplate()
+                .addLast("http", new PipelineTemplate.HandlerFactory() {
+                    @Override
+                    public ChannelHandler newHandler(Channel channel) {
+                        return new HttpServerCodec();
+                    }
+                })
+                .addLast("chunked", new PipelineTemplate.HandlerFactory() {
+                    @Override
+                    public ChannelHandler newHandler(Channel channel) {
+                        return new ChunkedWriteHandler();
+                    }
+                })
+                .addLast("aggregator", new PipelineTemplate.HandlerFactory() {
+                    @Override
+                    public ChannelHandler newHandler(Channel channel) {
+                        return new HttpObjectAggregator(64 * 1024);
+                    }
+                })
+                .addLast("request", new HttpRequestHandler("/ws"))
+                .addLast("websocket", new PipelineTemplate.HandlerFactory() {
+                    @Override
+                    public ChannelHandler newHandler(Channel channel) {
+                        return new WebSocketServerProtocolHandler("/ws");
+                    }
+                })
+                .addLast("frames", new TextWebSocketFrameHandler(group));
+    }
 }
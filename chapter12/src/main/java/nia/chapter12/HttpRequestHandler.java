@@ -17,6 +17,8 @@ import java.net.URL;
  * @author <a href="mailto:norman.maurer@gmail.com">Norman Maurer</a>
  */
 // 1 用于处理FullHttpRequest
+// 没有每个连接的状态，所有Channel可以共享同一个实例
+@ChannelHandler.Sharable
 public class HttpRequestHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
     private final String wsUri;
     private static final File INDEX;
@@ -6,6 +6,7 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.util.SelfSignedCertificate;
+import nia.util.PipelineTemplate;
 
 import java.net.InetSocketAddress;
 
@@ -27,9 +28,14 @@ public class SecureChatServer extends ChatServer {
         return new SecureChatServerInitializer(group, context);
     }
 
+    @Override
+    protected PipelineTemplate createTemplate(ChannelGroup group) {
+        return SecureChatServerInitializer.template(group, context);
+    }
+
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.err.println("Please give port as argument");
+        if (args.length < 1) {
+            System.err.println("Please give port as argument, optionally followed by --template");
             System.exit(1);
         }
         int port = Integer.parseInt(args[0]);
@@ -37,6 +43,13 @@ public class SecureChatServer extends ChatServer {
         SslContext context = SslContext.newServerContext(
                 cert.certificate(), cert.privateKey());
         final SecureChatServer endpoint = new SecureChatServer(context);
+        for (int i = 1; i < args.length; i++) {
+            if ("--template".equals(args[i])) {
+                endpoint.useTemplate(true);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
         ChannelFuture future = endpoint.start(new InetSocketAddress(port));
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
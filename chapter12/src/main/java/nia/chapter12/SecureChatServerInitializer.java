@@ -1,9 +1,11 @@
 package nia.chapter12;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslHandler;
+import nia.util.PipelineTemplate;
 
 import javax.net.ssl.SSLEngine;
 
@@ -28,4 +30,19 @@ public class SecureChatServerInitializer extends ChatServerInitializer {
         engine.setUseClientMode(false);
         ch.pipeline().addFirst(new SslHandler(engine));
     }
+
+    /**
+     * The same pipeline as a {@link PipelineTemplate}
+     */
+    public static PipelineTemplate template(ChannelGroup group, final SslContext context) {
+        return ChatServerInitializer.template(group)
+                .addFirst("ssl", new PipelineTemplate.HandlerFactory() {
+                    @Override
+                    public ChannelHandler newHandler(Channel channel) {
+                        SSLEngine engine = context.newEngine(channel.alloc());
+                        engine.setUseClientMode(false);
+                        return new SslHandler(engine);
+                    }
+                });
+    }
 }
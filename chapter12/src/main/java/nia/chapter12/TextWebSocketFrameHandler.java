@@ -1,5 +1,6 @@
 package nia.chapter12;
 
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.group.ChannelGroup;
@@ -12,6 +13,7 @@ import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
  * @author <a href="mailto:norman.maurer@gmail.com">Norman Maurer</a>
  */
 //1
+@Sharable
 public class TextWebSocketFrameHandler
     extends SimpleChannelInboundHandler<TextWebSocketFrame> {
     private final ChannelGroup group;
@@ -8,6 +8,8 @@
  *
  * Listing 12.3 Initializing the ChannelPipeline {@link nia.chapter12.ChatServerInitializer}
  *
+ * The same pipeline as a template {@link nia.chapter12.ChatServerInitializer#template(io.netty.channel.group.ChannelGroup)}
+ *
  * Listing 12.4 Bootstrapping the server {@link nia.chapter12.ChatServer}
  *
  * Listing 12.6 Adding encryption to the ChannelPipeline {@link nia.chapter12.SecureChatServerInitializer}
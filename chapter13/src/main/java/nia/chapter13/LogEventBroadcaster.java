@@ -4,8 +4,7 @@ import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
+import nia.util.Transport;
 
 import java.io.File;
 import java.io.RandomAccessFile;
@@ -22,9 +21,10 @@ public class LogEventBroadcaster {
     private final File file;
 
     public LogEventBroadcaster(InetSocketAddress address, File file) {
-        group = new NioEventLoopGroup();
+        Transport transport = Transport.fromSystemProperty();
+        group = transport.newEventLoopGroup();
         bootstrap = new Bootstrap();
-        bootstrap.group(group).channel(NioDatagramChannel.class)
+        bootstrap.group(group).channel(transport.datagramChannel())
              .option(ChannelOption.SO_BROADCAST, true)
              .handler(new LogEventEncoder(address));
         this.file = file;
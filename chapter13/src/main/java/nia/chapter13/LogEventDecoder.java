@@ -5,6 +5,7 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.handler.codec.MessageToMessageDecoder;
 import io.netty.util.CharsetUtil;
+import nia.util.ByteSearch;
 
 import java.util.List;
 
@@ -14,12 +15,13 @@ import java.util.List;
  * @author <a href="mailto:norman.maurer@gmail.com">Norman Maurer</a>
  */
 public class LogEventDecoder extends MessageToMessageDecoder<DatagramPacket> {
+    private static final ByteSearch SEPARATOR_SEARCH = ByteSearch.of(LogEvent.SEPARATOR);
 
     @Override
     protected void decode(ChannelHandlerContext ctx, DatagramPacket datagramPacket, List<Object> out)
         throws Exception {
         ByteBuf data = datagramPacket.content();
-        int idx = data.indexOf(0, data.readableBytes(), LogEvent.SEPARATOR);
+        int idx = SEPARATOR_SEARCH.indexOf(data, 0, data.readableBytes());
         String filename = data.slice(0, idx).toString(CharsetUtil.UTF_8);
         String logMsg = data.slice(idx + 1,
             data.readableBytes()).toString(CharsetUtil.UTF_8);
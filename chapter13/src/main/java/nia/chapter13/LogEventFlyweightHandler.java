@@ -0,0 +1,46 @@
+package nia.chapter13;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+
+/**
+ * Does the work of {@link LogEventDecoder} and {@link LogEventHandler}
+ * without creating a {@link LogEvent} and two Strings per datagram: a
+ * {@link LogEventFlyweight} is wrapped around each packet's content and the
+ * fields are read in place. Not sharable, as the flyweight is per channel.
+ */
+public class LogEventFlyweightHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+    private final LogEventFlyweight event = new LogEventFlyweight();
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx,
+        Throwable cause) throws Exception {
+        cause.printStackTrace();
+        ctx.close();
+    }
+
+    @Override
+    public void channelRead0(ChannelHandlerContext ctx,
+        DatagramPacket packet) throws Exception {
+        event.wrap(packet.content());
+        handle(packet, event);
+    }
+
+    /**
+     * Called with the flyweight positioned on the current datagram; only
+     * valid until this method returns.
+     */
+    protected void handle(DatagramPacket packet, LogEventFlyweight event) {
+        // 仅在输出时才解码为字符串
+        StringBuilder builder = new StringBuilder();
+        builder.append(System.currentTimeMillis());
+        builder.append(" [");
+        builder.append(packet.sender().toString());
+        builder.append("] [");
+        builder.append(event.logfileAsString());
+        builder.append("] : ");
+        builder.append(event.msgAsString());
+        System.out.println(builder.toString());
+    }
+}
@@ -0,0 +1,17 @@
+package nia.chapter13;
+
+import nia.flyweight.Delimited;
+import nia.flyweight.Flyweight;
+
+/**
+ * Wire layout of a log event datagram as written by {@link LogEventEncoder}:
+ * the log file name, {@link LogEvent#SEPARATOR} and the message. The
+ * {@code LogEventFlyweight} accessor is generated from it at build time.
+ */
+@Flyweight("LogEventFlyweight")
+public interface LogEventLayout {
+    @Delimited(':')
+    CharSequence logfile();
+
+    CharSequence msg();
+}
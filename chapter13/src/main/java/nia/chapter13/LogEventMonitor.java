@@ -2,8 +2,7 @@ package nia.chapter13;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
+import nia.util.Transport;
 
 import java.net.InetSocketAddress;
 
@@ -17,18 +16,32 @@ public class LogEventMonitor {
     private final Bootstrap bootstrap;
 
     public LogEventMonitor(InetSocketAddress address) {
-        group = new NioEventLoopGroup();
+        this(address, false);
+    }
+
+    /**
+     * @param flyweight read the datagrams in place with
+     *                  {@link LogEventFlyweightHandler} instead of decoding
+     *                  them into {@link LogEvent}s
+     */
+    public LogEventMonitor(InetSocketAddress address, final boolean flyweight) {
+        Transport transport = Transport.fromSystemProperty();
+        group = transport.newEventLoopGroup();
         bootstrap = new Bootstrap();
         bootstrap.group(group)
-            .channel(NioDatagramChannel.class)
+            .channel(transport.datagramChannel())
             .option(ChannelOption.SO_BROADCAST, true)
             .handler( new ChannelInitializer<Channel>() {
                 @Override
                 protected void initChannel(Channel channel)
                     throws Exception {
                     ChannelPipeline pipeline = channel.pipeline();
-                    pipeline.addLast(new LogEventDecoder());
-                    pipeline.addLast(new LogEventHandler());
+                    if (flyweight) {
+                        pipeline.addLast(new LogEventFlyweightHandler());
+                    } else {
+                        pipeline.addLast(new LogEventDecoder());
+                        pipeline.addLast(new LogEventHandler());
+                    }
                 }
             } )
             .localAddress(address);
@@ -43,12 +56,12 @@ public class LogEventMonitor {
     }
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
+        if (args.length != 1 && !(args.length == 2 && "--flyweight".equals(args[1]))) {
             throw new IllegalArgumentException(
-            "Usage: LogEventMonitor <port>");
+            "Usage: LogEventMonitor <port> [--flyweight]");
         }
         LogEventMonitor monitor = new LogEventMonitor(
-            new InetSocketAddress(Integer.parseInt(args[0])));
+            new InetSocketAddress(Integer.parseInt(args[0])), args.length == 2);
         try {
             Channel channel = monitor.bind();
             System.out.println("LogEventMonitor running");
@@ -12,5 +12,7 @@
  * Listing 13.7 LogEventHandler {@link nia.chapter13.LogEventHandler}
  *
  * Listing 13.8 LogEventMonitor {@link nia.chapter13.LogEventMonitor}
+ *
+ * Reading log events in place {@link nia.chapter13.LogEventLayout}, {@link nia.chapter13.LogEventFlyweightHandler}
  */
 package nia.chapter13;
\ No newline at end of file
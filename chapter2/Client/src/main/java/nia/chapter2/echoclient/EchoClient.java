@@ -3,41 +3,52 @@ package nia.chapter2.echoclient;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.Channel;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import nia.util.Endpoints;
+import nia.util.Transport;
 
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 
 /**
  * Listing 2.4 Main class for the client
  * (1)一旦客户端建立连接，它就发送它的消息——Netty rocks!;
  * (2)服务器报告接收到的消息，并将其回送给客户端;
  * (3)客户端报告返回的消息并退出。
+ * The remote address may also be a LocalAddress or a Unix domain socket,
+ * see {@link Endpoints#cheapest}.
  * @author <a href="mailto:norman.maurer@gmail.com">Norman Maurer</a>
  */
 public class EchoClient {
-    private final String host;
-    private final int port;
+    private final SocketAddress remoteAddress;
+    private final Transport transport;
 
     public EchoClient(String host, int port) {
-        this.host = host;
-        this.port = port;
+        this(host, port, Transport.fromSystemProperty());
+    }
+
+    public EchoClient(String host, int port, Transport transport) {
+        this(new InetSocketAddress(host, port), transport);
+    }
+
+    public EchoClient(SocketAddress remoteAddress, Transport transport) {
+        this.remoteAddress = remoteAddress;
+        this.transport = transport;
     }
 
     public void start() throws Exception {
-        EventLoopGroup group = new NioEventLoopGroup();
+        EventLoopGroup group = transport.newEventLoopGroup();
         try {
             Bootstrap b = new Bootstrap();
             b.group(group)
                     // 以在客户端和服务器上分别使用不同的传输。 例如，在服务器端使用NIO传输，而在客户端使用OIO传输。即选择SocketChannel不同实现类
-                .channel(NioSocketChannel.class)
+                .channel(Endpoints.channel(remoteAddress, transport))
                     // 客户端是使用主机和端口参数来连接远程地址，也就是这里的Echo服务器的地址，而不是绑定到一个一直被监听的端口。
-                .remoteAddress(new InetSocketAddress(host, port))
-                .handler(new ChannelInitializer<SocketChannel>() {
+                .remoteAddress(remoteAddress)
+                .handler(new ChannelInitializer<Channel>() {
                     @Override
-                    public void initChannel(SocketChannel ch)
+                    public void initChannel(Channel ch)
                         throws Exception {
                         ch.pipeline().addLast(
                              new EchoClientHandler());
@@ -52,16 +63,25 @@ public class EchoClient {
 
     public static void main(String[] args)
             throws Exception {
-        if (args.length != 2) {
+        if (args.length != 2 && args.length != 3) {
             System.err.println("Usage: " + EchoClient.class.getSimpleName() +
-                    " <host> <port>"
+                    " <host> <port> [--domain-socket=PATH]"
             );
             return;
         }
 
         final String host = args[0];
         final int port = Integer.parseInt(args[1]);
-        new EchoClient(host, port).start();
+        final Transport transport = Transport.fromSystemProperty();
+        String domainPath = null;
+        if (args.length == 3) {
+            if (!args[2].startsWith("--domain-socket=")) {
+                throw new IllegalArgumentException("Unknown option: " + args[2]);
+            }
+            domainPath = args[2].substring("--domain-socket=".length());
+        }
+        new EchoClient(Endpoints.cheapest(transport, null, domainPath,
+                new InetSocketAddress(host, port)), transport).start();
     }
 }
 
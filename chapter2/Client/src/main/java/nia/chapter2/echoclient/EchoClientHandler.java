@@ -1,11 +1,11 @@
 package nia.chapter2.echoclient;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.util.CharsetUtil;
+import nia.util.ConstantMessages;
 
 /**
  * Listing 2.3 ChannelHandler for the client
@@ -14,14 +14,15 @@ import io.netty.util.CharsetUtil;
  */
 @Sharable
 public class EchoClientHandler extends SimpleChannelInboundHandler<ByteBuf> {
+    private static final ByteBuf GREETING = ConstantMessages.intern("Netty rocks!");
+
     /**
      * 在到服务器的连接已经建立之后将被调用
      */
     @Override
     public void channelActive(ChannelHandlerContext ctx) {
         // 发送一条消息
-        ctx.writeAndFlush(Unpooled.copiedBuffer("Netty rocks!",
-                CharsetUtil.UTF_8));
+        ctx.writeAndFlush(GREETING.duplicate());
     }
 
     /**
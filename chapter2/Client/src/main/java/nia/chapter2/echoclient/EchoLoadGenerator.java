@@ -0,0 +1,285 @@
+package nia.chapter2.echoclient;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import nia.util.CpuSet;
+import nia.util.Endpoints;
+import nia.util.Transport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator built on the {@link EchoClient} bootstrap.
+ *
+ * Opens {@code connections} connections to an echo server (or any server
+ * that answers every newline-terminated request with one line, using
+ * {@code --framing=line}) and keeps them busy for {@code duration} seconds
+ * after a warm-up period.
+ *
+ * Without {@code --rate} the generator runs closed-loop: every connection
+ * keeps {@code depth} requests in flight. With {@code --rate} it runs
+ * open-loop: requests are sent on a fixed schedule, spread evenly over the
+ * connections, whether or not earlier requests have been answered. In that
+ * mode {@code depth} only caps the number of requests in flight per
+ * connection. Latency is still measured from the scheduled send time.
+ *
+ * The target may also be a {@code LocalAddress} or, with {@code --domain-socket}
+ * and the epoll transport, a Unix domain socket, to compare the transports
+ * without the TCP/IP stack in the way.
+ *
+ * @see LoadResult
+ */
+public class EchoLoadGenerator {
+    private static final int DEFAULT_OPEN_LOOP_DEPTH = 128;
+
+    private final SocketAddress remoteAddress;
+    private Transport transport = Transport.fromSystemProperty();
+    private int connections = 1;
+    private int depth;
+    private MessageSizeDistribution sizes = MessageSizeDistribution.fixed(64);
+    private long rate;
+    private long warmupSeconds = 2;
+    private long durationSeconds = 10;
+    private boolean lineFraming;
+    private int threads;
+    private CpuSet cpus;
+
+    private final Recorder recorder = new Recorder(3);
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile boolean running;
+    private ByteBuf template;
+
+    public EchoLoadGenerator(String host, int port) {
+        this(new InetSocketAddress(host, port));
+    }
+
+    public EchoLoadGenerator(SocketAddress remoteAddress) {
+        this.remoteAddress = remoteAddress;
+    }
+
+    public EchoLoadGenerator transport(Transport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    public EchoLoadGenerator connections(int connections) {
+        this.connections = connections;
+        return this;
+    }
+
+    /**
+     * Requests in flight per connection (pipelining depth).
+     */
+    public EchoLoadGenerator depth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    public EchoLoadGenerator sizes(MessageSizeDistribution sizes) {
+        this.sizes = sizes;
+        return this;
+    }
+
+    /**
+     * Target request rate over all connections, in requests per second;
+     * {@code 0} runs closed-loop.
+     */
+    public EchoLoadGenerator rate(long rate) {
+        this.rate = rate;
+        return this;
+    }
+
+    public EchoLoadGenerator warmup(long seconds) {
+        this.warmupSeconds = seconds;
+        return this;
+    }
+
+    public EchoLoadGenerator duration(long seconds) {
+        this.durationSeconds = seconds;
+        return this;
+    }
+
+    /**
+     * Match responses by line feed instead of by echoed byte count.
+     */
+    public EchoLoadGenerator lineFraming(boolean lineFraming) {
+        this.lineFraming = lineFraming;
+        return this;
+    }
+
+    /**
+     * Event loop threads; {@code 0} uses Netty's default.
+     */
+    public EchoLoadGenerator threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * One event loop per CPU of {@code cpus}, each pinned to its CPU,
+     * instead of {@link #threads}.
+     */
+    public EchoLoadGenerator pin(CpuSet cpus) {
+        this.cpus = cpus;
+        return this;
+    }
+
+    public LoadResult run() throws InterruptedException {
+        final int depth = this.depth > 0 ? this.depth :
+                rate > 0 ? DEFAULT_OPEN_LOOP_DEPTH : 1;
+        final long intervalNanos = rate > 0 ?
+                TimeUnit.SECONDS.toNanos(connections) / rate : 0;
+        // every payload is a slice of the tail of one direct buffer: 'x'... '\n'
+        ByteBuf buf = Unpooled.directBuffer(sizes.max());
+        for (int i = 1; i < sizes.max(); i++) {
+            buf.writeByte('x');
+        }
+        buf.writeByte('\n');
+        template = Unpooled.unreleasableBuffer(buf);
+
+        EventLoopGroup group = cpus != null ?
+                transport.newEventLoopGroup("echo-client", cpus) : transport.newEventLoopGroup(threads);
+        List<Channel> channels = new ArrayList<Channel>(connections);
+        try {
+            Bootstrap b = new Bootstrap();
+            b.group(group)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    public void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast(new LoadGeneratorHandler(
+                                EchoLoadGenerator.this, depth, intervalNanos));
+                    }
+                });
+            Endpoints.configure(b, remoteAddress, transport);
+            running = true;
+            List<ChannelFuture> futures = new ArrayList<ChannelFuture>(connections);
+            for (int i = 0; i < connections; i++) {
+                futures.add(b.connect());
+            }
+            for (ChannelFuture f : futures) {
+                channels.add(f.sync().channel());
+            }
+
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+            recorder.reset();
+            bytes.set(0);
+            long start = System.nanoTime();
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            Histogram serviceTime = recorder.getIntervalHistogram();
+            long elapsed = System.nanoTime() - start;
+            long received = bytes.get();
+            running = false;
+
+            Histogram corrected;
+            if (rate > 0 || serviceTime.getTotalCount() == 0) {
+                corrected = serviceTime;
+            } else {
+                // 每个在途请求槽位的间隔：connections * depth 个槽位并行
+                long expectedInterval = elapsed * connections * depth / serviceTime.getTotalCount();
+                corrected = serviceTime.copyCorrectedForCoordinatedOmission(expectedInterval);
+            }
+            return new LoadResult(describe(depth), elapsed, received, serviceTime, corrected);
+        } finally {
+            running = false;
+            for (Channel ch : channels) {
+                ch.close();
+            }
+            group.shutdownGracefully().sync();
+            buf.release();
+        }
+    }
+
+    private String describe(int depth) {
+        return "Target:        " + remoteAddress + " (" + transport + ")\n" +
+            "Mode:          " + (rate > 0 ? "open-loop at " + rate + " req/s" : "closed-loop") +
+            ", " + connections + " connections, depth " + depth +
+            ", sizes " + sizes + (lineFraming ? ", line framing" : ", echo framing") +
+            (cpus != null ? ", pinned to CPUs " + cpus : "");
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    boolean lineFraming() {
+        return lineFraming;
+    }
+
+    MessageSizeDistribution sizes() {
+        return sizes;
+    }
+
+    ByteBuf payload(int size) {
+        return template.slice(template.capacity() - size, size);
+    }
+
+    void record(long latencyNanos) {
+        recorder.recordValue(latencyNanos);
+    }
+
+    void bytesReceived(int count) {
+        bytes.addAndGet(count);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: " + EchoLoadGenerator.class.getSimpleName() +
+                " <host> <port> [--connections=N] [--depth=N] [--size=SPEC]" +
+                " [--rate=REQ_PER_SEC] [--warmup=SECONDS] [--duration=SECONDS]" +
+                " [--framing=echo|line] [--transport=auto|epoll|nio|oio]" +
+                " [--domain-socket=PATH] [--cpus=LIST]");
+            System.err.println("  SPEC: N | fixed:N | uniform:MIN-MAX | exp:MEAN:MAX");
+            return;
+        }
+        Transport transport = Transport.fromArgs(args);
+        String domainPath = null;
+        for (String arg : args) {
+            if (arg.startsWith("--domain-socket=")) {
+                domainPath = arg.substring("--domain-socket=".length());
+            }
+        }
+        SocketAddress target = Endpoints.cheapest(transport, null, domainPath,
+                new InetSocketAddress(args[0], Integer.parseInt(args[1])));
+        EchoLoadGenerator generator = new EchoLoadGenerator(target).transport(transport);
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--connections=")) {
+                generator.connections(Integer.parseInt(value));
+            } else if (arg.startsWith("--depth=")) {
+                generator.depth(Integer.parseInt(value));
+            } else if (arg.startsWith("--size=")) {
+                generator.sizes(MessageSizeDistribution.parse(value));
+            } else if (arg.startsWith("--rate=")) {
+                generator.rate(Long.parseLong(value));
+            } else if (arg.startsWith("--warmup=")) {
+                generator.warmup(Long.parseLong(value));
+            } else if (arg.startsWith("--duration=")) {
+                generator.duration(Long.parseLong(value));
+            } else if (arg.startsWith("--transport=")) {
+                generator.transport(Transport.of(value));
+            } else if (arg.startsWith("--framing=")) {
+                generator.lineFraming("line".equals(value));
+            } else if (arg.startsWith("--cpus=")) {
+                generator.pin(CpuSet.parse(value));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        generator.run().print(System.out);
+    }
+}
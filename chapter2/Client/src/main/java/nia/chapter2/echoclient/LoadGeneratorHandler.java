@@ -0,0 +1,170 @@
+package nia.chapter2.echoclient;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ByteProcessor;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-connection state of the {@link EchoLoadGenerator}.
+ *
+ * Keeps up to {@code depth} requests in flight. The start time and size of
+ * every outstanding request lives in a ring buffer, so a request costs no
+ * allocation besides the payload slice. Responses are matched in order,
+ * either by byte count (echo framing) or by counting line feeds (line
+ * framing).
+ *
+ * In closed-loop mode a new request is sent whenever a response arrives. In
+ * open-loop mode request {@code k} is due at {@code start + k * interval}, and
+ * its latency is measured from that intended time, not from when it was
+ * actually written. Time the generator spends waiting on a slow server is
+ * therefore counted, not omitted.
+ */
+final class LoadGeneratorHandler extends ChannelInboundHandlerAdapter {
+    private static final long MIN_TICK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final EchoLoadGenerator generator;
+    private final long intervalNanos;
+    private final long[] startTimes;
+    private final int[] sizes;
+    private int head;
+    private int outstanding;
+    private long pendingBytes;
+    private long scheduled;
+    private long startNanos;
+    private ChannelHandlerContext ctx;
+    private ScheduledFuture<?> ticker;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            if (sendDue()) {
+                ctx.flush();
+            }
+        }
+    };
+
+    LoadGeneratorHandler(EchoLoadGenerator generator, int depth, long intervalNanos) {
+        this.generator = generator;
+        this.intervalNanos = intervalNanos;
+        startTimes = new long[depth];
+        sizes = new int[depth];
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        startNanos = System.nanoTime();
+        if (intervalNanos > 0) {
+            long period = Math.max(intervalNanos, MIN_TICK_NANOS);
+            ticker = ctx.executor().scheduleAtFixedRate(
+                    tick, 0, period, TimeUnit.NANOSECONDS);
+        } else if (fill()) {
+            ctx.flush();
+        }
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        if (ticker != null) {
+            ticker.cancel(false);
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        try {
+            ByteBuf in = (ByteBuf) msg;
+            generator.bytesReceived(in.readableBytes());
+            long now = System.nanoTime();
+            if (generator.lineFraming()) {
+                int from = in.readerIndex();
+                int to = in.writerIndex();
+                while (from < to) {
+                    int lf = in.forEachByte(from, to - from, ByteProcessor.FIND_LF);
+                    if (lf < 0) {
+                        break;
+                    }
+                    complete(now);
+                    from = lf + 1;
+                }
+            } else {
+                pendingBytes += in.readableBytes();
+                while (outstanding > 0 && pendingBytes >= sizes[head]) {
+                    pendingBytes -= sizes[head];
+                    complete(now);
+                }
+            }
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+        boolean sent = intervalNanos > 0 ? sendDue() : fill();
+        if (sent) {
+            ctx.flush();
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        if (!(cause instanceof IOException) || generator.isRunning()) {
+            cause.printStackTrace();
+        }
+        ctx.close();
+    }
+
+    private void complete(long now) {
+        if (outstanding == 0) {
+            return;
+        }
+        generator.record(now - startTimes[head]);
+        head = (head + 1) % startTimes.length;
+        outstanding--;
+    }
+
+    /**
+     * Closed loop: top up to {@code depth} outstanding requests.
+     */
+    private boolean fill() {
+        boolean sent = false;
+        while (outstanding < startTimes.length && generator.isRunning()) {
+            send(System.nanoTime());
+            sent = true;
+        }
+        return sent;
+    }
+
+    /**
+     * Open loop: send every request whose intended start time has passed,
+     * as long as there is room in the ring buffer.
+     */
+    private boolean sendDue() {
+        boolean sent = false;
+        long now = System.nanoTime();
+        while (outstanding < startTimes.length && generator.isRunning()) {
+            long intended = startNanos + scheduled * intervalNanos;
+            if (intended > now) {
+                break;
+            }
+            send(intended);
+            scheduled++;
+            sent = true;
+        }
+        return sent;
+    }
+
+    private void send(long startTime) {
+        int size = generator.sizes().next();
+        int slot = (head + outstanding) % startTimes.length;
+        startTimes[slot] = startTime;
+        sizes[slot] = size;
+        outstanding++;
+        ctx.write(generator.payload(size), ctx.voidPromise());
+    }
+}
@@ -0,0 +1,90 @@
+package nia.chapter2.echoclient;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of one {@link EchoLoadGenerator} run.
+ *
+ * {@link #serviceTime()} holds latencies as observed by the generator.
+ * {@link #corrected()} is corrected for coordinated omission: in open-loop
+ * mode latency is already measured from the intended send time. In
+ * closed-loop mode the service time histogram is back-filled using the mean
+ * per-connection request interval of the run.
+ */
+public final class LoadResult {
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+    private final String description;
+    private final long elapsedNanos;
+    private final long bytes;
+    private final Histogram serviceTime;
+    private final Histogram corrected;
+
+    LoadResult(String description, long elapsedNanos, long bytes,
+        Histogram serviceTime, Histogram corrected) {
+        this.description = description;
+        this.elapsedNanos = elapsedNanos;
+        this.bytes = bytes;
+        this.serviceTime = serviceTime;
+        this.corrected = corrected;
+    }
+
+    public long requests() {
+        return serviceTime.getTotalCount();
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Completed requests per second.
+     */
+    public double throughput() {
+        return requests() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    public Histogram serviceTime() {
+        return serviceTime;
+    }
+
+    public Histogram corrected() {
+        return corrected;
+    }
+
+    /**
+     * Corrected latency at the given percentile, in nanoseconds.
+     */
+    public long latencyAt(double percentile) {
+        return corrected.getValueAtPercentile(percentile);
+    }
+
+    public void print(PrintStream out) {
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        out.println(description);
+        out.printf("Requests:      %d in %.2f s (%.1f req/s, %.2f MB/s received)%n",
+                requests(), seconds, throughput(), bytes / seconds / (1024 * 1024));
+        out.printf("%-14s", "Latency (us)");
+        for (double p : PERCENTILES) {
+            out.printf("%10s", "p" + (p == Math.rint(p) ? String.valueOf((int) p) : String.valueOf(p)));
+        }
+        out.printf("%10s%n", "max");
+        printRow(out, "  service", serviceTime);
+        printRow(out, "  corrected", corrected);
+    }
+
+    private static void printRow(PrintStream out, String name, Histogram histogram) {
+        out.printf("%-14s", name);
+        for (double p : PERCENTILES) {
+            out.printf("%10.1f", histogram.getValueAtPercentile(p) / 1000.0);
+        }
+        out.printf("%10.1f%n", histogram.getMaxValue() / 1000.0);
+    }
+}
@@ -0,0 +1,118 @@
+package nia.chapter2.echoclient;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Message sizes used by {@link EchoLoadGenerator}, parsed from
+ * <pre>
+ *   fixed:N          every message is N bytes
+ *   uniform:MIN-MAX  uniformly distributed between MIN and MAX (inclusive)
+ *   exp:MEAN:MAX     exponentially distributed with the given mean, capped at MAX
+ * </pre>
+ * A plain number is shorthand for {@code fixed:N}.
+ */
+public abstract class MessageSizeDistribution {
+
+    public static MessageSizeDistribution parse(String spec) {
+        String[] parts = spec.split(":");
+        if (parts.length == 1) {
+            return fixed(Integer.parseInt(parts[0]));
+        }
+        if ("fixed".equals(parts[0])) {
+            return fixed(Integer.parseInt(parts[1]));
+        }
+        if ("uniform".equals(parts[0])) {
+            String[] range = parts[1].split("-");
+            return uniform(Integer.parseInt(range[0]), Integer.parseInt(range[1]));
+        }
+        if ("exp".equals(parts[0]) && parts.length == 3) {
+            return exponential(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        }
+        throw new IllegalArgumentException("Unknown size distribution: " + spec);
+    }
+
+    public static MessageSizeDistribution fixed(final int size) {
+        checkSize(size);
+        return new MessageSizeDistribution() {
+            @Override
+            public int next() {
+                return size;
+            }
+
+            @Override
+            public int max() {
+                return size;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed:" + size;
+            }
+        };
+    }
+
+    public static MessageSizeDistribution uniform(final int min, final int max) {
+        checkSize(min);
+        if (max < min) {
+            throw new IllegalArgumentException("max < min: " + max + " < " + min);
+        }
+        return new MessageSizeDistribution() {
+            @Override
+            public int next() {
+                return min + ThreadLocalRandom.current().nextInt(max - min + 1);
+            }
+
+            @Override
+            public int max() {
+                return max;
+            }
+
+            @Override
+            public String toString() {
+                return "uniform:" + min + '-' + max;
+            }
+        };
+    }
+
+    public static MessageSizeDistribution exponential(final int mean, final int max) {
+        checkSize(mean);
+        if (max < mean) {
+            throw new IllegalArgumentException("max < mean: " + max + " < " + mean);
+        }
+        return new MessageSizeDistribution() {
+            @Override
+            public int next() {
+                double u = 1.0 - ThreadLocalRandom.current().nextDouble();
+                long size = Math.round(-Math.log(u) * mean);
+                return (int) Math.max(1, Math.min(max, size));
+            }
+
+            @Override
+            public int max() {
+                return max;
+            }
+
+            @Override
+            public String toString() {
+                return "exp:" + mean + ':' + max;
+            }
+        };
+    }
+
+    private static void checkSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(
+                "message size must be a positive integer: " + size);
+        }
+    }
+
+    /**
+     * Size in bytes of the next message.
+     */
+    public abstract int next();
+
+    /**
+     * Largest size {@link #next()} can return.
+     */
+    public abstract int max();
+}
@@ -1,77 +1,305 @@
 package nia.chapter2.echoserver;
 
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import nia.util.CpuSet;
+import nia.util.Endpoints;
+import nia.util.Transport;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Listing 2.2 EchoServer class
  *
+ * Besides the one-shot echo of the listing, the server can run in persistent
+ * mode ({@code --persistent}) where connections stay open and every inbound
+ * buffer is echoed back by {@link PersistentEchoServerHandler}. Socket options
+ * can be given on the command line:
+ * <pre>
+ *   --backlog=N              SO_BACKLOG of the listening socket
+ *   --tcp-nodelay=true|false TCP_NODELAY of accepted sockets
+ *   --rcvbuf=N --sndbuf=N    SO_RCVBUF / SO_SNDBUF of accepted sockets
+ *   --write-buffer=LOW:HIGH  write buffer water marks of accepted sockets
+ *   --flush-after=N          consolidate flushes, at most one per N writes
+ *   --transport=NAME         auto, epoll, nio or oio, see {@link Transport}
+ *   --reuse-port             SO_REUSEPORT of the listening socket (epoll only)
+ *   --listener-per-loop      one SO_REUSEPORT listener per event loop (epoll only)
+ *   --cpus=LIST              one event loop per CPU of LIST, e.g. 0-3, pinned to it
+ *   --fast-open=N            TCP_FASTOPEN queue length (epoll only)
+ *   --local=NAME             also bind the in-JVM LocalAddress NAME
+ *   --domain-socket=PATH     also bind the Unix domain socket PATH (epoll only)
+ * </pre>
+ * Co-located clients can pick the cheapest endpoint with
+ * {@link Endpoints#cheapest}.
+ *
  * @author <a href="mailto:norman.maurer@gmail.com">Norman Maurer</a>
  */
 public class EchoServer {
     private final int port;
+    private Transport transport = Transport.fromSystemProperty();
+    private boolean reusePort;
+    private boolean listenerPerLoop;
+    private CpuSet cpus;
+    private int fastOpen;
+    private boolean persistent;
+    private int flushAfter;
+    private String localName;
+    private String domainPath;
+    private final Map<ChannelOption<?>, Object> options =
+            new LinkedHashMap<ChannelOption<?>, Object>();
+    private final Map<ChannelOption<?>, Object> childOptions =
+            new LinkedHashMap<ChannelOption<?>, Object>();
 
     public EchoServer(int port) {
         this.port = port;
     }
 
+    public EchoServer transport(Transport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Set {@code SO_REUSEPORT} if the transport supports it.
+     */
+    public EchoServer reusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+        return this;
+    }
+
+    /**
+     * Bind one listener per event loop, see {@link Transport#bindPerLoop};
+     * a single listener where the transport does not support
+     * {@code SO_REUSEPORT}.
+     */
+    public EchoServer listenerPerLoop(boolean listenerPerLoop) {
+        this.listenerPerLoop = listenerPerLoop;
+        return this;
+    }
+
+    /**
+     * Run {@link #start()} with one event loop per CPU of {@code cpus}, each
+     * pinned to its CPU; {@code null} for Netty's default group.
+     */
+    public EchoServer pin(CpuSet cpus) {
+        this.cpus = cpus;
+        return this;
+    }
+
+    /**
+     * Enable {@code TCP_FASTOPEN} with the given queue length if the
+     * transport supports it; {@code 0} disables it.
+     */
+    public EchoServer fastOpen(int queueLength) {
+        this.fastOpen = queueLength;
+        return this;
+    }
+
+    /**
+     * Keep connections open and echo every buffer back, see
+     * {@link PersistentEchoServerHandler}.
+     */
+    public EchoServer persistent(boolean persistent) {
+        this.persistent = persistent;
+        return this;
+    }
+
+    /**
+     * Install a {@link FlushConsolidationHandler} that flushes at most once
+     * per {@code flushAfter} flush calls; {@code 0} disables it.
+     */
+    public EchoServer flushAfter(int flushAfter) {
+        this.flushAfter = flushAfter;
+        return this;
+    }
+
+    /**
+     * Additionally bind the in-JVM address {@code name}.
+     */
+    public EchoServer local(String name) {
+        this.localName = name;
+        return this;
+    }
+
+    /**
+     * Additionally bind the Unix domain socket {@code path}, epoll only.
+     */
+    public EchoServer domainSocket(String path) {
+        this.domainPath = path;
+        return this;
+    }
+
+    public <T> EchoServer option(ChannelOption<T> option, T value) {
+        options.put(option, value);
+        return this;
+    }
+
+    public <T> EchoServer childOption(ChannelOption<T> option, T value) {
+        childOptions.put(option, value);
+        return this;
+    }
+
     public static void main(String[] args)
         throws Exception {
-        if (args.length != 1) {
+        if (args.length < 1) {
             System.err.println("Usage: " + EchoServer.class.getSimpleName() +
-                " <port>"
+                " <port> [--persistent] [--flush-after=N] [--backlog=N]" +
+                " [--tcp-nodelay=BOOL] [--rcvbuf=N] [--sndbuf=N]" +
+                " [--write-buffer=LOW:HIGH] [--transport=auto|epoll|nio|oio]" +
+                " [--reuse-port] [--listener-per-loop] [--cpus=LIST]" +
+                " [--fast-open=N] [--local=NAME]" +
+                " [--domain-socket=PATH]"
             );
             return;
         }
         int port = Integer.parseInt(args[0]);
         // 设置端口值port，调用start()初始化方法
-        new EchoServer(port).start();
+        EchoServer server = new EchoServer(port);
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if ("--persistent".equals(arg)) {
+                server.persistent(true);
+            } else if (arg.startsWith("--transport=")) {
+                server.transport(Transport.of(value(arg)));
+            } else if ("--reuse-port".equals(arg)) {
+                server.reusePort(true);
+            } else if ("--listener-per-loop".equals(arg)) {
+                server.listenerPerLoop(true);
+            } else if (arg.startsWith("--cpus=")) {
+                server.pin(CpuSet.parse(value(arg)));
+            } else if (arg.startsWith("--fast-open=")) {
+                server.fastOpen(Integer.parseInt(value(arg)));
+            } else if (arg.startsWith("--local=")) {
+                server.local(value(arg));
+            } else if (arg.startsWith("--domain-socket=")) {
+                server.domainSocket(value(arg));
+            } else if (arg.startsWith("--flush-after=")) {
+                server.flushAfter(Integer.parseInt(value(arg)));
+            } else if (arg.startsWith("--backlog=")) {
+                server.option(ChannelOption.SO_BACKLOG, Integer.parseInt(value(arg)));
+            } else if (arg.startsWith("--tcp-nodelay=")) {
+                server.childOption(ChannelOption.TCP_NODELAY, Boolean.parseBoolean(value(arg)));
+            } else if (arg.startsWith("--rcvbuf=")) {
+                server.childOption(ChannelOption.SO_RCVBUF, Integer.parseInt(value(arg)));
+            } else if (arg.startsWith("--sndbuf=")) {
+                server.childOption(ChannelOption.SO_SNDBUF, Integer.parseInt(value(arg)));
+            } else if (arg.startsWith("--write-buffer=")) {
+                String[] marks = value(arg).split(":");
+                server.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        new WriteBufferWaterMark(Integer.parseInt(marks[0]),
+                                Integer.parseInt(marks[1])));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        server.start();
+    }
+
+    private static String value(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void apply(Map<ChannelOption<?>, Object> options,
+        ServerBootstrap b, boolean child) {
+        for (Map.Entry<ChannelOption<?>, Object> e : options.entrySet()) {
+            if (child) {
+                b.childOption((ChannelOption<Object>) e.getKey(), e.getValue());
+            } else {
+                b.option((ChannelOption<Object>) e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Binds the TCP port and any extra endpoints on {@code group} and returns
+     * the server channels, the TCP ones first. Closing them and shutting down
+     * the group is up to the caller.
+     */
+    public List<Channel> bind(EventLoopGroup group) throws InterruptedException {
+        List<Channel> channels = new ArrayList<Channel>(3);
+        ServerBootstrap b = bootstrap(group);
+        if (listenerPerLoop) {
+            channels.addAll(transport.bindPerLoop(b));
+        } else {
+            channels.add(b.bind().sync().channel());
+        }
+        if (localName != null) {
+            channels.add(Endpoints.bindLocal(b, localName).sync().channel());
+        }
+        if (domainPath != null) {
+            channels.add(Endpoints.bindDomainSocket(b, domainPath).sync().channel());
+        }
+        return channels;
     }
 
     public void start() throws Exception {
-        // 创建ChannelHandler对象，用于跟Channel绑定
-        final EchoServerHandler serverHandler = new EchoServerHandler();
         // 参考 https://www.cnblogs.com/duanxz/p/3724395.html
         // NioEventLoopGroup是一个Schedule类型的线程池，线程池中的线程用数组存放， EventLoopGroup(其实是MultithreadEventExecutorGroup) 内部维护一个类型为 EventExecutor children 数组, 其大小是 nThreads, 这样就构成了一个线程池，线程池大小通过 在实例化 NioEventLoopGroup 时, 如果指定线程池大小, 则 nThreads 就是指定的值, 反之是处理器核心数 * 2
         // NioEventLoop两大功能：1.是作为 IO 线程, 执行与 Channel 相关的 IO 操作, 包括 调用 select 等待就绪的 IO 事件、读写数据与数据的处理等；2.为任务队列执行任务， 任务可以分为2类：普通task与定时任务执行schedule()方法
-        EventLoopGroup group = new NioEventLoopGroup();
+        EventLoopGroup group = cpus != null ?
+                transport.newEventLoopGroup("echo-server", cpus) : transport.newEventLoopGroup();
         try {
-            ServerBootstrap b = new ServerBootstrap();
-            b.group(group)
-                    // 创建并分配一个 NioEventLoopGroup 实例以进行事件的处理，如接受新连接以及读/写数据
-                    // 指定channel类型,channel方法的调用其实就是实例化了一个用于生成此channel类型对象的工厂对象。 并且在bind调用后，会调用此工厂对象来生成一个新channel。
-                    // 通过ServerBootstrap.channel方法的调用生成channelFactory对象
-                    // 1.NioServerSocketChannel对象内部绑定了Java NIO创建的ServerSocketChannel对象；
-                    // 2.Netty中，每个channel都有一个unsafe对象，此对象封装了Java NIO底层channel的操作细节；
-                    // 3.Netty中，每个channel都有一个pipeline对象，此对象就是一个双向链表；
-                    .channel(NioServerSocketChannel.class)
-                    // 使用指定的 端口设置套 接字地址
-                    .localAddress(new InetSocketAddress(port))
-                    //  添加一个Handler到子Channel的ChannelPipeline
-                    // ChannelInitializer:当一个新的连接被接受时，一个新的子 Channel 将会被创建，而ChannelInitializer将会把一个你的EchoServerHandler的实例添加到该Channel的ChannelPipeline中，用于初始化每一个新的Channel
-                    .childHandler(new ChannelInitializer<SocketChannel>() {
-                        @Override
-                        public void initChannel(SocketChannel ch) throws Exception {
-                            //  EchoServerHandler被标注为@Shareable，所以我们可以总是使用同样的实例
-                            ch.pipeline().addLast(serverHandler);
-                        }
-                    });
             // 异步地绑定服务器; 调用sync()方法阻塞,等待直到绑定完成
-            ChannelFuture f = b.bind().sync();
-            System.out.println(EchoServer.class.getName() +
-                " started and listening for connections on " + f.channel().localAddress());
+            List<Channel> channels = bind(group);
+            for (Channel ch : channels) {
+                System.out.println(EchoServer.class.getName() +
+                    " started and listening for connections on " + ch.localAddress());
+            }
             // 获取Channel的CloseFuture，并且阻塞当前线程直到它完成 https://www.javadoop.com/post/netty-part-3
-            f.channel().closeFuture().sync();
+            channels.get(0).closeFuture().sync();
         } finally {
             //  关闭 EventLoopGroup， 释放所有的资源
             group.shutdownGracefully().sync();
         }
     }
+
+    private ServerBootstrap bootstrap(EventLoopGroup group) {
+        // 创建ChannelHandler对象，用于跟Channel绑定
+        final ChannelHandler serverHandler = persistent ?
+                PersistentEchoServerHandler.INSTANCE : new EchoServerHandler();
+        ServerBootstrap b = new ServerBootstrap();
+        b.group(group)
+                // 创建并分配一个 NioEventLoopGroup 实例以进行事件的处理，如接受新连接以及读/写数据
+                // 指定channel类型,channel方法的调用其实就是实例化了一个用于生成此channel类型对象的工厂对象。 并且在bind调用后，会调用此工厂对象来生成一个新channel。
+                // 通过ServerBootstrap.channel方法的调用生成channelFactory对象
+                // 1.NioServerSocketChannel对象内部绑定了Java NIO创建的ServerSocketChannel对象；
+                // 2.Netty中，每个channel都有一个unsafe对象，此对象封装了Java NIO底层channel的操作细节；
+                // 3.Netty中，每个channel都有一个pipeline对象，此对象就是一个双向链表；
+                .channel(transport.serverChannel())
+                // 使用指定的 端口设置套 接字地址
+                .localAddress(new InetSocketAddress(port))
+                //  添加一个Handler到子Channel的ChannelPipeline
+                // ChannelInitializer:当一个新的连接被接受时，一个新的子 Channel 将会被创建，而ChannelInitializer将会把一个你的EchoServerHandler的实例添加到该Channel的ChannelPipeline中，用于初始化每一个新的Channel
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    public void initChannel(Channel ch) throws Exception {
+                        if (flushAfter > 0) {
+                            ch.pipeline().addLast(
+                                    new FlushConsolidationHandler(flushAfter, true));
+                        }
+                        //  EchoServerHandler被标注为@Shareable，所以我们可以总是使用同样的实例
+                        ch.pipeline().addLast(serverHandler);
+                    }
+                });
+        if (reusePort) {
+            transport.reusePort(b);
+        }
+        if (fastOpen > 0) {
+            transport.fastOpen(b, fastOpen);
+        }
+        apply(options, b, false);
+        apply(childOptions, b, true);
+        return b;
+    }
 }
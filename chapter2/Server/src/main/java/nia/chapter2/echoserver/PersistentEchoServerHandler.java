@@ -0,0 +1,53 @@
+package nia.chapter2.echoserver;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.io.IOException;
+
+/**
+ * Echo handler that keeps the connection open, for use as a benchmark target.
+ *
+ * Every inbound buffer is written back as-is (no copy, the reference count is
+ * handed over to the outbound side) with the channel's void promise, so no
+ * per-message objects are created. Writes are only flushed once per read
+ * loop in {@link #channelReadComplete(ChannelHandlerContext)}. When the
+ * outbound buffer goes over its high water mark reading is suspended until
+ * the channel becomes writable again.
+ */
+@Sharable
+public class PersistentEchoServerHandler extends ChannelInboundHandlerAdapter {
+    public static final PersistentEchoServerHandler INSTANCE =
+            new PersistentEchoServerHandler();
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        ctx.write(msg, ctx.voidPromise());
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        ctx.flush();
+        if (!ctx.channel().isWritable()) {
+            ctx.channel().config().setAutoRead(false);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if (ctx.channel().isWritable()) {
+            ctx.channel().config().setAutoRead(true);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        // load generators reset their connections at the end of every run
+        if (!(cause instanceof IOException)) {
+            cause.printStackTrace();
+        }
+        ctx.close();
+    }
+}
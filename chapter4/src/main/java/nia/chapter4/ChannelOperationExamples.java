@@ -16,6 +16,9 @@ import java.util.concurrent.Executors;
  *
  * Listing 4.6 Using a Channel from many threads
  * Channel是线程安全的，即使当时许多线程都在使用它，消息将会被保证按顺序发送
+ *
+ * {@link #writingToChannelFromManyThreadsCoalesced()} does the same through a
+ * {@link CoalescingChannelWriter}
  * @author <a href="mailto:norman.maurer@gmail.com">Norman Maurer</a>
  */
 public class ChannelOperationExamples {
@@ -65,4 +68,30 @@ public class ChannelOperationExamples {
         executor.execute(writer);
         //...
     }
+
+    /**
+     * Listing 4.6 with a {@link CoalescingChannelWriter}: concurrent writes
+     * are batched into one event loop task and one flush
+     */
+    public static void writingToChannelFromManyThreadsCoalesced() {
+        final CoalescingChannelWriter writer =
+                new CoalescingChannelWriter(CHANNEL_FROM_SOMEWHERE);
+        final ByteBuf buf = Unpooled.copiedBuffer("your data",
+                CharsetUtil.UTF_8);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                // 只入队，由EventLoop批量写出并flush一次
+                writer.write(buf.retainedDuplicate());
+            }
+        };
+        Executor executor = Executors.newCachedThreadPool();
+
+        // write in one thread
+        executor.execute(task);
+
+        // write in another thread
+        executor.execute(task);
+        //...
+    }
 }
@@ -0,0 +1,144 @@
+package nia.chapter4;
+
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes to a {@link Channel} from any number of threads with one event
+ * loop task and one flush per batch, instead of one task per
+ * {@code channel.write()} as in Listing 4.6.
+ *
+ * {@link #write(Object)} puts the message on a lock-free multi-producer
+ * queue and only submits a drain task if none is pending. The drain task
+ * writes up to {@code maxBatch} messages, flushes once and, if more arrived
+ * meanwhile, submits itself again so other tasks of the event loop get
+ * their turn.
+ *
+ * Every write returns a {@link WriteHandle} with the outcome of that very
+ * write: the handle is the promise the message is written with, so a
+ * message that fails, e.g. in an encoder, fails its own handle only, while
+ * the rest of the batch goes out.
+ *
+ * At most {@code maxPending} messages wait in the queue; a write beyond that
+ * releases the message and fails its handle right away rather than letting
+ * a producer that outpaces the socket exhaust the heap.
+ */
+public final class CoalescingChannelWriter {
+    private static final int DEFAULT_MAX_BATCH = 1024;
+    private static final int DEFAULT_MAX_PENDING = 1024 * 1024;
+
+    private final Channel channel;
+    private final int maxBatch;
+    private final Queue<WriteHandle> queue;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public CoalescingChannelWriter(Channel channel) {
+        this(channel, DEFAULT_MAX_BATCH, DEFAULT_MAX_PENDING);
+    }
+
+    public CoalescingChannelWriter(Channel channel, int maxBatch, int maxPending) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch: " + maxBatch + " (expected: > 0)");
+        }
+        if (maxPending < maxBatch) {
+            throw new IllegalArgumentException("maxPending: " + maxPending +
+                    " (expected: >= maxBatch " + maxBatch + ")");
+        }
+        this.channel = channel;
+        this.maxBatch = maxBatch;
+        this.queue = PlatformDependent.newMpscQueue(maxPending);
+    }
+
+    public Channel channel() {
+        return channel;
+    }
+
+    /**
+     * Queues {@code msg} for writing and flushing; may be called from any
+     * thread. Messages from one thread are written in order. If
+     * {@code maxPending} messages are already queued the returned handle has
+     * failed with a {@link RejectedExecutionException}.
+     */
+    public WriteHandle write(Object msg) {
+        WriteHandle handle = new WriteHandle(channel, msg);
+        if (!queue.offer(handle)) {
+            ReferenceCountUtil.release(handle.takeMessage());
+            handle.setFailure(new RejectedExecutionException(
+                    "too many pending writes on " + channel));
+            return handle;
+        }
+        // 只有在没有待执行的drain任务时才提交任务到EventLoop
+        if (scheduled.compareAndSet(false, true)) {
+            schedule();
+        }
+        return handle;
+    }
+
+    private void schedule() {
+        try {
+            channel.eventLoop().execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            // the event loop is shut down, nothing will ever be written
+            failAll(e);
+        }
+    }
+
+    private void drain() {
+        WriteHandle handle;
+        int count = 0;
+        while (count < maxBatch && (handle = queue.poll()) != null) {
+            channel.write(handle.takeMessage(), handle);
+            count++;
+        }
+        if (count > 0) {
+            channel.flush();
+        }
+        scheduled.set(false);
+        // 若在drain期间有新消息入队，而生产者看到scheduled仍为true未提交任务，这里负责重新提交
+        if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    private void failAll(Throwable cause) {
+        WriteHandle handle;
+        while ((handle = queue.poll()) != null) {
+            ReferenceCountUtil.release(handle.takeMessage());
+            handle.setFailure(cause);
+        }
+        scheduled.set(false);
+    }
+
+    /**
+     * Outcome of one {@link #write(Object)}. It is the queue node and the
+     * promise of the write in one object, so a write costs no allocation
+     * beyond it. Poll it, add a listener, or rely on the channel's exception
+     * handling; only the writer completes it.
+     */
+    public static final class WriteHandle extends DefaultChannelPromise {
+        private Object msg;
+
+        WriteHandle(Channel channel, Object msg) {
+            super(channel);
+            this.msg = msg;
+        }
+
+        Object takeMessage() {
+            Object m = msg;
+            msg = null;
+            return m;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package nia.chapter4;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Multi-reactor variant of {@link PlainNioServer}, same behavior: every
+ * client gets "Hi!\r\n" and the connection is closed.
+ *
+ * One acceptor selector hands accepted channels round-robin to N worker
+ * selectors, each on its own thread. A worker writes the greeting right
+ * away and registers {@code OP_WRITE} only if the socket buffer could not
+ * take all of it, so idle writable keys never make the selector spin.
+ * This is the hand-rolled equivalent of Netty's boss/worker event loops.
+ */
+public class MultiReactorNioServer {
+    // accept失败后（比如文件描述符用完）暂停接受新连接的时间
+    private static final long ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final int workerCount;
+
+    public MultiReactorNioServer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public MultiReactorNioServer(int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount: " + workerCount + " (expected: > 0)");
+        }
+        this.workerCount = workerCount;
+    }
+
+    public void serve(int port) throws IOException {
+        final ByteBuffer msg = ByteBuffer.wrap("Hi!\r\n".getBytes(Charset.forName("UTF-8")));
+        Worker[] workers = new Worker[workerCount];
+        ServerSocketChannel serverChannel = null;
+        Selector acceptor = null;
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Worker(msg);
+                Thread t = new Thread(workers[i], "nio-worker-" + i);
+                t.setDaemon(true);
+                t.start();
+            }
+
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.socket().bind(new InetSocketAddress(port));
+            // acceptor只关心OP_ACCEPT，读写都交给worker
+            acceptor = Selector.open();
+            serverChannel.register(acceptor, SelectionKey.OP_ACCEPT);
+            accept(serverChannel, acceptor, workers);
+        } finally {
+            if (acceptor != null) {
+                acceptor.close();
+            }
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            for (Worker worker : workers) {
+                if (worker != null) {
+                    worker.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs until {@code select()} fails or the thread is interrupted.
+     */
+    private static void accept(ServerSocketChannel serverChannel, Selector acceptor, Worker[] workers) {
+        int next = 0;
+        for (;;) {
+            try {
+                acceptor.select();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                return;
+            }
+            acceptor.selectedKeys().clear();
+            // 一次select可能有多个连接就绪，全部accept
+            for (;;) {
+                SocketChannel client;
+                try {
+                    client = serverChannel.accept();
+                } catch (IOException ex) {
+                    // 比如EMFILE或accept时连接被重置，只影响这一个连接
+                    ex.printStackTrace();
+                    // OP_ACCEPT仍然就绪，马上再select只会空转；和Netty一样先停一会儿
+                    try {
+                        Thread.sleep(ACCEPT_BACKOFF_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    break;
+                }
+                if (client == null) {
+                    break;
+                }
+                try {
+                    client.configureBlocking(false);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    close(client);
+                    continue;
+                }
+                workers[next].register(client);
+                next = (next + 1) % workers.length;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private static void close(SocketChannel client) {
+        try {
+            client.close();
+        } catch (IOException ex) {
+            // ignore on close
+        }
+    }
+
+    /**
+     * A worker reactor: one selector, one thread. Channels arrive through a
+     * queue because only the selector's own thread may register with it
+     * without blocking.
+     */
+    private static final class Worker implements Runnable {
+        private final ByteBuffer msg;
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<SocketChannel>();
+        private final AtomicBoolean wakeupRequested = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Worker(ByteBuffer msg) throws IOException {
+            this.msg = msg;
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel client) {
+            pending.add(client);
+            // 只有第一个新连接需要唤醒selector，wakeup()本身是一次系统调用
+            if (wakeupRequested.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Stops the worker; its thread closes the selector and the channels
+         * it still has.
+         */
+        void shutdown() {
+            closed = true;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                loop();
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    close((SocketChannel) key.channel());
+                }
+                SocketChannel client;
+                while ((client = pending.poll()) != null) {
+                    close(client);
+                }
+                try {
+                    selector.close();
+                } catch (IOException ex) {
+                    // ignore on close
+                }
+            }
+        }
+
+        private void loop() {
+            while (!closed) {
+                wakeupRequested.set(false);
+                SocketChannel client;
+                while ((client = pending.poll()) != null) {
+                    greet(client);
+                }
+                try {
+                    selector.select();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    return;
+                }
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (key.isValid() && key.isWritable()) {
+                        write((SocketChannel) key.channel(), (ByteBuffer) key.attachment());
+                    }
+                }
+            }
+        }
+
+        private void greet(SocketChannel client) {
+            ByteBuffer buffer = msg.duplicate();
+            if (write(client, buffer)) {
+                return;
+            }
+            try {
+                // 只有数据没有写完时才关注OP_WRITE
+                client.register(selector, SelectionKey.OP_WRITE, buffer);
+            } catch (IOException ex) {
+                close(client);
+            }
+        }
+
+        /**
+         * Writes as much as the socket takes; closes the channel, which also
+         * cancels its key, once the buffer is drained or on error.
+         *
+         * @return {@code true} if the channel is done with
+         */
+        private static boolean write(SocketChannel client, ByteBuffer buffer) {
+            try {
+                while (buffer.hasRemaining()) {
+                    if (client.write(buffer) == 0) {
+                        return false;
+                    }
+                }
+            } catch (IOException ex) {
+                // peer went away, nothing left to do
+            }
+            close(client);
+            return true;
+        }
+    }
+}
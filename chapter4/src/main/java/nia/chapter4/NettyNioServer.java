@@ -2,14 +2,12 @@ package nia.chapter4;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import nia.util.ConstantMessages;
+import nia.util.Transport;
 
 import java.net.InetSocketAddress;
-import java.nio.charset.Charset;
 
 /**
  * Listing 4.4 Asynchronous networking with Netty
@@ -19,15 +17,21 @@ import java.nio.charset.Charset;
  */
 public class NettyNioServer {
     public void server(int port) throws Exception {
-        final ByteBuf buf =
-                Unpooled.unreleasableBuffer(Unpooled.copiedBuffer("Hi!\r\n",
-                        Charset.forName("UTF-8")));
+        server(port, Transport.fromSystemProperty());
+    }
+
+    /**
+     * Same server on the given non-blocking transport, e.g.
+     * {@link Transport#EPOLL} instead of NIO.
+     */
+    public void server(int port, Transport transport) throws Exception {
+        final ByteBuf buf = ConstantMessages.intern("Hi!\r\n");
         // 选用非阻塞EventLoopGroup
-        NioEventLoopGroup group = new NioEventLoopGroup();
+        EventLoopGroup group = transport.newEventLoopGroup();
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(group)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverChannel())
                     .localAddress(new InetSocketAddress(port))
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                                       @Override
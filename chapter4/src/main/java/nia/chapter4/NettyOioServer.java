@@ -2,14 +2,13 @@ package nia.chapter4;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
 import io.netty.channel.oio.OioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.oio.OioServerSocketChannel;
+import nia.util.ConstantMessages;
 
 import java.net.InetSocketAddress;
-import java.nio.charset.Charset;
 
 /**
  * Listing 4.3 Blocking networking with Netty
@@ -19,8 +18,8 @@ import java.nio.charset.Charset;
 public class NettyOioServer {
     public void server(int port)
             throws Exception {
-        final ByteBuf buf =
-                Unpooled.unreleasableBuffer(Unpooled.copiedBuffer("Hi!\r\n", Charset.forName("UTF-8")));
+        // 预编码、不可释放的共享缓冲区，每次写出的是duplicate()
+        final ByteBuf buf = ConstantMessages.intern("Hi!\r\n");
         EventLoopGroup group = new OioEventLoopGroup();
         try {
             ServerBootstrap b = new ServerBootstrap();
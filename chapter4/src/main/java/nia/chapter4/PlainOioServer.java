@@ -5,13 +5,23 @@ import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Listing 4.1 Blocking networking without Netty
  * 未使用netty的OIO通信
+ *
+ * {@link #serve(int, ExecutorService)} runs the same handler on an executor
+ * instead of a new platform thread per connection, e.g. one virtual thread
+ * per connection from {@code nia.util.ConnectionExecutors}.
+ *
  * @author <a href="mailto:norman.maurer@gmail.com">Norman Maurer</a>
  */
 public class PlainOioServer {
+    // 大量并发连接时默认的50不够用
+    private static final int BACKLOG = 1024;
+
     public void serve(int port) throws IOException {
         // 将服务器指定到指定端口
         final ServerSocket socket = new ServerSocket(port);
@@ -22,34 +32,60 @@ public class PlainOioServer {
                 System.out.println(
                         "Accepted connection from " + clientSocket);
                 // 用线程池可以有多个客户端连接，但是非常消耗性能，每一个客户都需要一个线程提供独立服务
-                // 新建一个线程处理该连接
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        OutputStream out;
-                        try {
-                            out = clientSocket.getOutputStream();
-                            // 将消息写到客户端
-                            out.write("Hi!\r\n".getBytes(
-                                    Charset.forName("UTF-8")));
-                            out.flush();
-                            // 关闭连接
-                            clientSocket.close();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        } finally {
-                            try {
-                                clientSocket.close();
-                            } catch (IOException ex) {
-                                // ignore on close
-                            }
-                        }
-                    }
-                    // 启动线程
-                }).start();
+                // 新建一个线程处理该连接并启动线程
+                new Thread(handler(clientSocket)).start();
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Same server, every connection handled by a task on {@code executor}.
+     * Connections the executor rejects are closed.
+     */
+    public void serve(int port, ExecutorService executor) throws IOException {
+        final ServerSocket socket = new ServerSocket(port, BACKLOG);
+        try {
+            for (;;) {
+                Socket clientSocket = socket.accept();
+                try {
+                    executor.execute(handler(clientSocket));
+                } catch (RejectedExecutionException e) {
+                    clientSocket.close();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            socket.close();
+            executor.shutdown();
+        }
+    }
+
+    private static Runnable handler(final Socket clientSocket) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                OutputStream out;
+                try {
+                    out = clientSocket.getOutputStream();
+                    // 将消息写到客户端
+                    out.write("Hi!\r\n".getBytes(
+                            Charset.forName("UTF-8")));
+                    out.flush();
+                    // 关闭连接
+                    clientSocket.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    try {
+                        clientSocket.close();
+                    } catch (IOException ex) {
+                        // ignore on close
+                    }
+                }
+            }
+        };
+    }
 }
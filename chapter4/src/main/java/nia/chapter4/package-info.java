@@ -5,6 +5,8 @@
  *
  * Listing 4.2 Asynchronous networking without Netty {@link nia.chapter4.PlainNioServer}
  *
+ * Multi-reactor variant of Listing 4.2 {@link nia.chapter4.MultiReactorNioServer}
+ *
  * Listing 4.3 Blocking networking with Netty {@link nia.chapter4.NettyOioServer}
  *
  * Listing 4.4 Asynchronous networking with Netty {@link nia.chapter4.NettyNioServer}
@@ -0,0 +1,134 @@
+package nia.test.chapter4;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToByteEncoder;
+import nia.chapter4.CoalescingChannelWriter;
+import nia.chapter4.CoalescingChannelWriter.WriteHandle;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes through a {@link CoalescingChannelWriter} from several threads and
+ * checks order and the outcome of every handle.
+ */
+public class CoalescingChannelWriterTest {
+    private static final int PRODUCERS = 4;
+    private static final int MESSAGES = 20000;
+
+    @Test
+    public void keepsOrderPerProducer() throws Exception {
+        EventLoopGroup group = new DefaultEventLoopGroup(2);
+        LocalAddress address = new LocalAddress("coalescing-writer-test");
+        final List<Integer> received = new ArrayList<Integer>();
+        final CountDownLatch done = new CountDownLatch(PRODUCERS * MESSAGES);
+        try {
+            Channel server = new ServerBootstrap()
+                    .group(group)
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            received.add((Integer) msg);
+                            done.countDown();
+                        }
+                    })
+                    .bind(address).sync().channel();
+            Channel client = new Bootstrap()
+                    .group(group)
+                    .channel(LocalChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .connect(address).sync().channel();
+            // 批量小一些，让drain任务多次重新提交
+            final CoalescingChannelWriter writer = new CoalescingChannelWriter(client, 64,
+                    PRODUCERS * MESSAGES);
+            final List<WriteHandle> handles = new ArrayList<WriteHandle>();
+            Thread[] producers = new Thread[PRODUCERS];
+            for (int p = 0; p < PRODUCERS; p++) {
+                final int producer = p;
+                final List<WriteHandle> own = new ArrayList<WriteHandle>(MESSAGES);
+                producers[p] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < MESSAGES; i++) {
+                            own.add(writer.write(producer * MESSAGES + i));
+                        }
+                        synchronized (handles) {
+                            handles.addAll(own);
+                        }
+                    }
+                });
+                producers[p].start();
+            }
+            for (Thread t : producers) {
+                t.join();
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            client.close().sync();
+            server.close().sync();
+
+            int[] next = new int[PRODUCERS];
+            for (int value : received) {
+                int producer = value / MESSAGES;
+                assertEquals(producer * MESSAGES + next[producer], value);
+                next[producer]++;
+            }
+            assertEquals(PRODUCERS * MESSAGES, handles.size());
+            for (WriteHandle handle : handles) {
+                assertTrue(handle.isSuccess());
+            }
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    @Test
+    public void failedWriteFailsOnlyItsHandle() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageToByteEncoder<Integer>() {
+            @Override
+            protected void encode(ChannelHandlerContext ctx, Integer msg, ByteBuf out) {
+                if (msg < 0) {
+                    throw new IllegalArgumentException("negative: " + msg);
+                }
+                out.writeInt(msg);
+            }
+        });
+        CoalescingChannelWriter writer = new CoalescingChannelWriter(channel);
+        WriteHandle first = writer.write(1);
+        WriteHandle middle = writer.write(-1);
+        WriteHandle last = writer.write(2);
+        assertFalse(first.isDone());
+
+        channel.runPendingTasks();
+        assertTrue(first.isSuccess());
+        assertFalse(middle.isSuccess());
+        assertTrue(middle.cause() instanceof EncoderException);
+        assertTrue(last.isSuccess());
+
+        ByteBuf buf = channel.readOutbound();
+        assertEquals(1, buf.readInt());
+        buf.release();
+        buf = channel.readOutbound();
+        assertEquals(2, buf.readInt());
+        buf.release();
+        assertNull(channel.readOutbound());
+        assertFalse(channel.finish());
+    }
+}
@@ -0,0 +1,108 @@
+package io.netty.buffer;
+
+import java.nio.ByteOrder;
+
+/**
+ * A buffer handed out by {@code nia.chapter5.TrackingByteBufAllocator}: runs
+ * a callback when its memory is given back, i.e. when a {@link #release()}
+ * on it or on one of its derived buffers brings the reference count to 0.
+ *
+ * It lives in {@code io.netty.buffer} because {@link WrappedByteBuf}, the
+ * base class of Netty's own leak-aware buffers, and {@link PooledByteBuf}
+ * are package-private; outside the package it would have to delegate every
+ * {@link ByteBuf} method itself.
+ */
+public final class TrackedByteBuf extends WrappedByteBuf {
+    private final Runnable onDeallocate;
+
+    public TrackedByteBuf(ByteBuf buf, Runnable onDeallocate) {
+        super(buf);
+        this.onDeallocate = onDeallocate;
+    }
+
+    /**
+     * Whether {@code buf} came out of a {@link PooledByteBufAllocator} arena,
+     * looking through leak detection wrappers.
+     */
+    public static boolean isPooled(ByteBuf buf) {
+        while (buf instanceof WrappedByteBuf) {
+            buf = buf.unwrap();
+        }
+        return buf instanceof PooledByteBuf;
+    }
+
+    @Override
+    public boolean release() {
+        return deallocated(buf.release());
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return deallocated(buf.release(decrement));
+    }
+
+    private boolean deallocated(boolean deallocated) {
+        if (deallocated) {
+            onDeallocate.run();
+        }
+        return deallocated;
+    }
+
+    // 派生缓冲区与原缓冲区共享引用计数，同样需要包装，否则通过它们release()时无法感知
+    // retained变体通过非retained视图加retain()实现，使引用计数始终落在原缓冲区上
+
+    private ByteBuf view(ByteBuf derived) {
+        return new TrackedByteBuf(derived, onDeallocate);
+    }
+
+    @Override
+    @Deprecated
+    public ByteBuf order(ByteOrder endianness) {
+        return endianness == order() ? this : view(buf.order(endianness));
+    }
+
+    @Override
+    public ByteBuf asReadOnly() {
+        return view(buf.asReadOnly());
+    }
+
+    @Override
+    public ByteBuf slice() {
+        return view(buf.slice());
+    }
+
+    @Override
+    public ByteBuf slice(int index, int length) {
+        return view(buf.slice(index, length));
+    }
+
+    @Override
+    public ByteBuf retainedSlice() {
+        return slice().retain();
+    }
+
+    @Override
+    public ByteBuf retainedSlice(int index, int length) {
+        return slice(index, length).retain();
+    }
+
+    @Override
+    public ByteBuf readSlice(int length) {
+        return view(buf.readSlice(length));
+    }
+
+    @Override
+    public ByteBuf readRetainedSlice(int length) {
+        return readSlice(length).retain();
+    }
+
+    @Override
+    public ByteBuf duplicate() {
+        return view(buf.duplicate());
+    }
+
+    @Override
+    public ByteBuf retainedDuplicate() {
+        return duplicate().retain();
+    }
+}
@@ -1,11 +1,16 @@
 package nia.chapter5;
 
+import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.*;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.ByteProcessor;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Random;
@@ -46,6 +51,10 @@ import static io.netty.channel.DummyChannelHandlerContext.DUMMY_INSTANCE;
  * Listing 5.15 Reference counting
  *
  * Listing 5.16 Release reference-counted object
+ *
+ * Tracking allocations with {@link TrackingByteBufAllocator}
+ *
+ * Memory-mapped file contents with {@link MappedFile}
  */
 public class ByteBufExamples {
     private final static Random random = new Random();
@@ -296,6 +305,44 @@ public class ByteBufExamples {
         //...
     }
 
+    /**
+     * Tracking allocations
+     * 用TrackingByteBufAllocator包装池化分配器并通过ChannelOption.ALLOCATOR安装，
+     * 之后Channel及其ChannelHandler通过alloc()获得的ByteBuf都会被统计
+     */
+    public static void trackingAllocations(PrintStream out) {
+        TrackingByteBufAllocator allocator =
+                new TrackingByteBufAllocator(PooledByteBufAllocator.DEFAULT);
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .option(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.ALLOCATOR, allocator);
+        //...
+        ByteBuf buffer = allocator.directBuffer(64);
+        buffer.writeBytes("Netty rocks!".getBytes(Charset.forName("UTF-8")));
+        buffer.release();
+        // 打印总数、分配字节最多的调用点以及内存池各arena的统计
+        allocator.print(out, 10);
+    }
+
+    /**
+     * Memory-mapped file contents
+     * 文件内容直接作为ByteBuf写出，无需先读入缓冲区；最后一个引用释放后才解除映射
+     */
+    public static void mappedFile(File file) throws IOException {
+        MappedFile mapped = MappedFile.open(file);
+        try {
+            CompositeByteBuf messageBuf = Unpooled.compositeBuffer();
+            ByteBuf headerBuf = Unpooled.copyInt((int) Math.min(mapped.size(), 4096));
+            ByteBuf bodyBuf = mapped.slice(0, (int) Math.min(mapped.size(), 4096));
+            // CompositeByteBuf接管两个组件的引用
+            messageBuf.addComponents(true, headerBuf, bodyBuf);
+            CHANNEL_FROM_SOMEWHERE.writeAndFlush(messageBuf);
+        } finally {
+            // 关闭文件不影响仍在写出的缓冲区
+            mapped.close();
+        }
+    }
+
     public static void main(String[] args) {
         ByteBuffer byteBuffer = ByteBuffer.allocateDirect(1024);
         if (byteBuffer.isDirect()) {
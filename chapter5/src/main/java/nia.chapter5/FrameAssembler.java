@@ -0,0 +1,105 @@
+package nia.chapter5;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+
+import java.util.List;
+
+/**
+ * Puts a frame together from a small header and a payload without copying
+ * the payload, for codecs that add framing to data they already hold, e.g.
+ * a retained slice of a received buffer. Listing 5.4 does the same by hand.
+ *
+ * How the parts reach the socket depends on the {@link Mode}. Below
+ * {@code consolidationThreshold} payload bytes the frame is copied into one
+ * buffer in any mode: for tiny payloads, a composite or an extra
+ * {@code iovec} costs more than the copy saves.
+ *
+ * The NIO and epoll transports can only hand direct buffers to the kernel.
+ * A heap header or payload is copied again on write, so the payload should
+ * come from an {@code ioBuffer()}, as received data does.
+ */
+public final class FrameAssembler {
+    public enum Mode {
+        /** Header and payload copied into a single buffer. */
+        COPY,
+        /** One {@link CompositeByteBuf} per frame, written as a gathering write of its components. */
+        COMPOSITE,
+        /**
+         * Header and payload as two messages; the channel's outbound buffer
+         * gathers them, with the rest of the flush, into one {@code writev}.
+         */
+        GATHER
+    }
+
+    public static final int DEFAULT_CONSOLIDATION_THRESHOLD = 512;
+
+    private final Mode mode;
+    private final int consolidationThreshold;
+
+    public FrameAssembler(Mode mode) {
+        this(mode, DEFAULT_CONSOLIDATION_THRESHOLD);
+    }
+
+    public FrameAssembler(Mode mode, int consolidationThreshold) {
+        if (mode == null) {
+            throw new NullPointerException("mode");
+        }
+        if (consolidationThreshold < 0) {
+            throw new IllegalArgumentException("consolidationThreshold: " + consolidationThreshold +
+                    " (expected: >= 0)");
+        }
+        this.mode = mode;
+        this.consolidationThreshold = consolidationThreshold;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public int consolidationThreshold() {
+        return consolidationThreshold;
+    }
+
+    /**
+     * A pooled I/O buffer of exactly {@code capacity} bytes to write a header
+     * into.
+     */
+    public static ByteBuf header(ByteBufAllocator alloc, int capacity) {
+        return alloc.ioBuffer(capacity, capacity);
+    }
+
+    /**
+     * Adds the frame {@code header + payload} to {@code out}, as one or two
+     * buffers. Takes over one reference of both {@code header} and
+     * {@code payload}.
+     */
+    public void assemble(ByteBufAllocator alloc, ByteBuf header, ByteBuf payload, List<Object> out) {
+        int payloadLength = payload.readableBytes();
+        if (mode == Mode.COPY || payloadLength < consolidationThreshold) {
+            // 小负载直接拷贝，比维护多个组件或多一个iovec更便宜
+            ByteBuf frame = null;
+            try {
+                // 分配失败时也要释放header和payload
+                frame = alloc.ioBuffer(header.readableBytes() + payloadLength);
+                frame.writeBytes(header).writeBytes(payload);
+                out.add(frame);
+                frame = null;
+            } finally {
+                header.release();
+                payload.release();
+                if (frame != null) {
+                    frame.release();
+                }
+            }
+        } else if (mode == Mode.COMPOSITE) {
+            CompositeByteBuf frame = alloc.compositeDirectBuffer(2);
+            frame.addComponents(true, header, payload);
+            out.add(frame);
+        } else {
+            out.add(header);
+            out.add(payload);
+        }
+    }
+}
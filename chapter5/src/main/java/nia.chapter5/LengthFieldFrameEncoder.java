@@ -0,0 +1,33 @@
+package nia.chapter5;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+/**
+ * Prefixes every outbound {@link ByteBuf} with its length as a 4-byte int,
+ * using a {@link FrameAssembler}: the payload is passed on as it is, behind
+ * a pooled 4-byte header, instead of being copied into a new frame buffer.
+ * Frames can be read back with {@code LengthFieldBasedFrameDecoder(max, 0, 4, 0, 4)}.
+ */
+@Sharable
+public class LengthFieldFrameEncoder extends MessageToMessageEncoder<ByteBuf> {
+    private static final int HEADER_LENGTH = 4;
+
+    private final FrameAssembler assembler;
+
+    public LengthFieldFrameEncoder(FrameAssembler assembler) {
+        this.assembler = assembler;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) {
+        ByteBuf header = FrameAssembler.header(ctx.alloc(), HEADER_LENGTH)
+                .writeInt(msg.readableBytes());
+        // MessageToMessageEncoder在encode之后会释放msg，负载继续向下传递需要多持有一个引用
+        assembler.assemble(ctx.alloc(), header, msg.retain(), out);
+    }
+}
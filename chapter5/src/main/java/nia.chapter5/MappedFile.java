@@ -0,0 +1,247 @@
+package nia.chapter5;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Random access to a file through memory-mapped, read-only {@link ByteBuf}s,
+ * so file contents go through codecs and out to sockets without being read
+ * into a buffer first.
+ *
+ * The file is mapped in windows of {@code windowSize} bytes, each mapped on
+ * first use and shared by every buffer that covers part of it.
+ * {@link #slice(long, int)} returns a {@link MappedByteBuf}, a
+ * {@link CompositeByteBuf} with one component per window it spans, so a
+ * slice may cross window boundaries, and files larger than 2 GiB are read
+ * in slices of at most 2 GiB each.
+ *
+ * A window is unmapped when the file is closed and the last buffer using it
+ * is released. Derived buffers ({@code slice()}, {@code duplicate()}) share
+ * the reference count of their {@link MappedByteBuf}, as usual, and a
+ * {@link CompositeByteBuf} it is added to takes over its reference, so the
+ * usual release rules are all it takes. Accessing a buffer after its release
+ * is an error as with any other buffer, but here it can crash the JVM, so
+ * never keep an {@code nioBuffer()} of it beyond the release.
+ *
+ * The size is fixed when the file is opened; the file must not be truncated
+ * while it is mapped.
+ */
+public final class MappedFile implements Closeable {
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final ByteBufAllocator alloc;
+    private final Map<Long, Window> windows = new HashMap<Long, Window>();
+    private boolean closed;
+
+    public MappedFile(FileChannel channel) throws IOException {
+        this(channel, DEFAULT_WINDOW_SIZE, ByteBufAllocator.DEFAULT);
+    }
+
+    /**
+     * @param alloc used only when a {@link MappedByteBuf} has to allocate,
+     *              e.g. for {@code consolidate()} or {@code copy()}
+     */
+    public MappedFile(FileChannel channel, int windowSize, ByteBufAllocator alloc) throws IOException {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize: " + windowSize + " (expected: > 0)");
+        }
+        if (alloc == null) {
+            throw new NullPointerException("alloc");
+        }
+        this.channel = channel;
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.alloc = alloc;
+    }
+
+    /**
+     * Opens {@code file} read-only.
+     */
+    public static MappedFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return new MappedFile(raf.getChannel());
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public int windowSize() {
+        return windowSize;
+    }
+
+    /**
+     * The whole file, if it is smaller than 2 GiB.
+     */
+    public MappedByteBuf slice() throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("file too large for one buffer: " + size + " bytes");
+        }
+        return slice(0, (int) size);
+    }
+
+    /**
+     * {@code length} bytes of the file from {@code position}, readable and
+     * with a reference count of 1.
+     */
+    public MappedByteBuf slice(long position, int length) throws IOException {
+        if (position < 0 || length < 0 || position > size - length) {
+            throw new IndexOutOfBoundsException("position: " + position + ", length: " + length +
+                    " (file size: " + size + ')');
+        }
+        long end = position + length;
+        int count = length == 0 ? 0 : (int) ((end - 1) / windowSize - position / windowSize + 1);
+        Window[] used = new Window[count];
+        ByteBuf[] parts = new ByteBuf[count];
+        boolean sliced = false;
+        try {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("closed");
+                }
+                long offset = position;
+                for (int i = 0; i < count; i++) {
+                    Window window = window(offset / windowSize * windowSize);
+                    int from = (int) (offset - window.position);
+                    int to = (int) (Math.min(end, window.position + windowSize) - window.position);
+                    used[i] = (Window) window.retain();
+                    // 每个组件都是独立的包装对象：组合缓冲区释放组件时不影响共享的窗口
+                    ByteBuffer view = window.mapped.duplicate();
+                    view.position(from).limit(to);
+                    parts[i] = Unpooled.wrappedBuffer(view.slice());
+                    offset += to - from;
+                }
+            }
+            MappedByteBuf buf = new MappedByteBuf(alloc, parts, used);
+            sliced = true;
+            return buf;
+        } finally {
+            if (!sliced) {
+                // 后面的窗口映射失败（IOException或"Map failed"），放回前面窗口的引用
+                for (int i = 0; i < count; i++) {
+                    if (parts[i] != null) {
+                        parts[i].release();
+                    }
+                    if (used[i] != null) {
+                        used[i].release();
+                    }
+                }
+            }
+        }
+    }
+
+    private Window window(long windowPosition) throws IOException {
+        Window window = windows.get(windowPosition);
+        if (window == null) {
+            long length = Math.min(windowSize, size - windowPosition);
+            window = new Window(windowPosition,
+                    channel.map(FileChannel.MapMode.READ_ONLY, windowPosition, length));
+            windows.put(windowPosition, window);
+        }
+        return window;
+    }
+
+    /**
+     * Closes the channel. Windows still used by buffers stay mapped until
+     * those are released; the mappings do not depend on the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Window window : windows.values()) {
+                window.release();
+            }
+            windows.clear();
+        }
+        channel.close();
+    }
+
+    /**
+     * One mapping; the file holds one reference until it is closed, every
+     * {@link MappedByteBuf} spanning it holds another.
+     */
+    private static final class Window extends AbstractReferenceCounted {
+        final long position;
+        final MappedByteBuffer mapped;
+
+        Window(long position, MappedByteBuffer mapped) {
+            this.position = position;
+            this.mapped = mapped;
+        }
+
+        @Override
+        protected void deallocate() {
+            // 立即解除映射，而不是等待GC回收MappedByteBuffer
+            PlatformDependent.freeDirectBuffer(mapped);
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+
+    /**
+     * A read-only range of a {@link MappedFile}, see there.
+     */
+    public static final class MappedByteBuf extends CompositeByteBuf {
+        private Window[] windows;
+
+        MappedByteBuf(ByteBufAllocator alloc, ByteBuf[] parts, Window[] windows) {
+            // 组件数不设上限，否则超过maxNumComponents时会合并，即把映射内容复制到堆外内存
+            super(alloc, true, Integer.MAX_VALUE, parts);
+            this.windows = windows;
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+
+        @Override
+        public CompositeByteBuf capacity(int newCapacity) {
+            if (newCapacity != capacity()) {
+                throw new ReadOnlyBufferException();
+            }
+            return this;
+        }
+
+        @Override
+        protected void deallocate() {
+            super.deallocate();
+            Window[] windows = this.windows;
+            this.windows = null;
+            for (Window window : windows) {
+                window.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package nia.chapter5;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import io.netty.buffer.TrackedByteBuf;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link ByteBufAllocator} that counts what it hands out before passing
+ * the calls on to another allocator (Listing 5.14 shows where the channels
+ * and handlers get theirs from). Install it with
+ * {@code ChannelOption.ALLOCATOR} on a bootstrap, see
+ * {@link ByteBufExamples#trackingAllocations(PrintStream)}.
+ *
+ * Every allocation is counted by capacity, direct or heap, and pooled or
+ * unpooled. One in {@code sampleInterval} allocations is also attributed to
+ * its call site, the first stack frame outside the allocator and
+ * {@code io.netty.buffer}, and wrapped in a {@link TrackedByteBuf} to measure
+ * how long the buffer lives until it is released. Capturing the stack is
+ * what makes a sample expensive; unsampled buffers are returned as they are.
+ * Composite buffers are only counted.
+ */
+public final class TrackingByteBufAllocator implements ByteBufAllocator, ByteBufAllocatorMetricProvider {
+    private static final int DEFAULT_SAMPLE_INTERVAL = 100;
+    private static final String UNKNOWN_SITE = "<unknown>";
+
+    private final ByteBufAllocator delegate;
+    private final int sampleInterval;
+    private final Stats total = new Stats(UNKNOWN_SITE);
+    private final AtomicLong composites = new AtomicLong();
+    private final ConcurrentMap<String, Stats> sites = new ConcurrentHashMap<String, Stats>();
+
+    public TrackingByteBufAllocator(ByteBufAllocator delegate) {
+        this(delegate, DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * @param sampleInterval attribute one in this many allocations to its
+     *                       call site; 1 samples all of them
+     */
+    public TrackingByteBufAllocator(ByteBufAllocator delegate, int sampleInterval) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate");
+        }
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sampleInterval: " + sampleInterval + " (expected: > 0)");
+        }
+        this.delegate = delegate;
+        this.sampleInterval = sampleInterval;
+    }
+
+    public ByteBufAllocator delegate() {
+        return delegate;
+    }
+
+    /**
+     * All allocations; lifetimes and live buffers cover the sampled ones only.
+     */
+    public Stats total() {
+        return total;
+    }
+
+    public long compositeAllocations() {
+        return composites.get();
+    }
+
+    /**
+     * Statistics per sampled call site, most bytes allocated first.
+     */
+    public List<Stats> callSites() {
+        List<Stats> list = new ArrayList<Stats>(sites.values());
+        Collections.sort(list, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats a, Stats b) {
+                long x = a.bytes();
+                long y = b.bytes();
+                return x < y ? 1 : x == y ? 0 : -1;
+            }
+        });
+        return list;
+    }
+
+    /**
+     * The arena statistics of the delegate, {@code null} if it is not a
+     * {@link PooledByteBufAllocator}.
+     */
+    public PooledByteBufAllocatorMetric poolMetric() {
+        return delegate instanceof PooledByteBufAllocator ?
+                ((PooledByteBufAllocator) delegate).metric() : null;
+    }
+
+    @Override
+    public ByteBufAllocatorMetric metric() {
+        return delegate instanceof ByteBufAllocatorMetricProvider ?
+                ((ByteBufAllocatorMetricProvider) delegate).metric() : null;
+    }
+
+    private ByteBuf track(ByteBuf buf) {
+        int capacity = buf.capacity();
+        boolean direct = buf.isDirect();
+        boolean pooled = TrackedByteBuf.isPooled(buf);
+        total.allocated(capacity, direct, pooled);
+        if (sampleInterval > 1 && ThreadLocalRandom.current().nextInt(sampleInterval) != 0) {
+            return buf;
+        }
+        final Stats site = site(callSite());
+        site.allocated(capacity, direct, pooled);
+        site.live.incrementAndGet();
+        total.live.incrementAndGet();
+        final long start = System.nanoTime();
+        return new TrackedByteBuf(buf, new Runnable() {
+            @Override
+            public void run() {
+                long lifetime = System.nanoTime() - start;
+                site.released(lifetime);
+                total.released(lifetime);
+            }
+        });
+    }
+
+    private CompositeByteBuf count(CompositeByteBuf buf) {
+        composites.incrementAndGet();
+        return buf;
+    }
+
+    private Stats site(String callSite) {
+        Stats stats = sites.get(callSite);
+        if (stats == null) {
+            Stats newStats = new Stats(callSite);
+            stats = sites.putIfAbsent(callSite, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    private static String callSite() {
+        for (StackTraceElement frame : new Throwable().getStackTrace()) {
+            String className = frame.getClassName();
+            // 跳过分配器自身以及Netty内部的ByteBuf工具类(如ByteBufUtil)，定位到真正申请内存的代码
+            if (!className.startsWith(TrackingByteBufAllocator.class.getName()) &&
+                    !className.startsWith("io.netty.buffer.")) {
+                return frame.toString();
+            }
+        }
+        return UNKNOWN_SITE;
+    }
+
+    @Override
+    public ByteBuf buffer() {
+        return track(delegate.buffer());
+    }
+
+    @Override
+    public ByteBuf buffer(int initialCapacity) {
+        return track(delegate.buffer(initialCapacity));
+    }
+
+    @Override
+    public ByteBuf buffer(int initialCapacity, int maxCapacity) {
+        return track(delegate.buffer(initialCapacity, maxCapacity));
+    }
+
+    @Override
+    public ByteBuf ioBuffer() {
+        return track(delegate.ioBuffer());
+    }
+
+    @Override
+    public ByteBuf ioBuffer(int initialCapacity) {
+        return track(delegate.ioBuffer(initialCapacity));
+    }
+
+    @Override
+    public ByteBuf ioBuffer(int initialCapacity, int maxCapacity) {
+        return track(delegate.ioBuffer(initialCapacity, maxCapacity));
+    }
+
+    @Override
+    public ByteBuf heapBuffer() {
+        return track(delegate.heapBuffer());
+    }
+
+    @Override
+    public ByteBuf heapBuffer(int initialCapacity) {
+        return track(delegate.heapBuffer(initialCapacity));
+    }
+
+    @Override
+    public ByteBuf heapBuffer(int initialCapacity, int maxCapacity) {
+        return track(delegate.heapBuffer(initialCapacity, maxCapacity));
+    }
+
+    @Override
+    public ByteBuf directBuffer() {
+        return track(delegate.directBuffer());
+    }
+
+    @Override
+    public ByteBuf directBuffer(int initialCapacity) {
+        return track(delegate.directBuffer(initialCapacity));
+    }
+
+    @Override
+    public ByteBuf directBuffer(int initialCapacity, int maxCapacity) {
+        return track(delegate.directBuffer(initialCapacity, maxCapacity));
+    }
+
+    @Override
+    public CompositeByteBuf compositeBuffer() {
+        return count(delegate.compositeBuffer());
+    }
+
+    @Override
+    public CompositeByteBuf compositeBuffer(int maxNumComponents) {
+        return count(delegate.compositeBuffer(maxNumComponents));
+    }
+
+    @Override
+    public CompositeByteBuf compositeHeapBuffer() {
+        return count(delegate.compositeHeapBuffer());
+    }
+
+    @Override
+    public CompositeByteBuf compositeHeapBuffer(int maxNumComponents) {
+        return count(delegate.compositeHeapBuffer(maxNumComponents));
+    }
+
+    @Override
+    public CompositeByteBuf compositeDirectBuffer() {
+        return count(delegate.compositeDirectBuffer());
+    }
+
+    @Override
+    public CompositeByteBuf compositeDirectBuffer(int maxNumComponents) {
+        return count(delegate.compositeDirectBuffer(maxNumComponents));
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return delegate.isDirectBufferPooled();
+    }
+
+    @Override
+    public int calculateNewCapacity(int minNewCapacity, int maxCapacity) {
+        return delegate.calculateNewCapacity(minNewCapacity, maxCapacity);
+    }
+
+    /**
+     * Prints the totals, the {@code maxSites} call sites allocating the most
+     * bytes and, for a pooled delegate, the arena statistics.
+     */
+    public void print(PrintStream out, int maxSites) {
+        out.printf("%,d allocations, %,d bytes, %,d composite, sampling 1/%d%n",
+                total.allocations(), total.bytes(), compositeAllocations(), sampleInterval);
+        total.print(out);
+        List<Stats> list = callSites();
+        for (int i = 0; i < list.size() && i < maxSites; i++) {
+            Stats site = list.get(i);
+            out.printf("%n%s%n  %,d sampled allocations, %,d bytes%n",
+                    site.callSite(), site.allocations(), site.bytes());
+            site.print(out);
+        }
+        PooledByteBufAllocatorMetric pool = poolMetric();
+        if (pool != null) {
+            out.printf("%npool: chunk size %,d, %d thread caches, used heap %,d, used direct %,d%n",
+                    pool.chunkSize(), pool.numThreadLocalCaches(),
+                    pool.usedHeapMemory(), pool.usedDirectMemory());
+            printArenas(out, "heap", pool.heapArenas());
+            printArenas(out, "direct", pool.directArenas());
+        }
+    }
+
+    private static void printArenas(PrintStream out, String kind, List<PoolArenaMetric> arenas) {
+        for (int i = 0; i < arenas.size(); i++) {
+            PoolArenaMetric arena = arenas.get(i);
+            out.printf("  %s arena %d: %,d active (%,d bytes), allocations tiny %,d small %,d" +
+                            " normal %,d huge %,d, %d thread caches%n",
+                    kind, i, arena.numActiveAllocations(), arena.numActiveBytes(),
+                    arena.numTinyAllocations(), arena.numSmallAllocations(),
+                    arena.numNormalAllocations(), arena.numHugeAllocations(),
+                    arena.numThreadCaches());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + delegate + ")";
+    }
+
+    /**
+     * Allocation counts of one call site, or of all of them. The histograms
+     * count capacities and lifetimes (in microseconds) in power-of-two
+     * buckets: bucket {@code i} holds values in {@code [2^(i-1), 2^i)},
+     * bucket 0 holds 0.
+     */
+    public static final class Stats {
+        private static final int BUCKETS = 64;
+
+        private final String callSite;
+        private final AtomicLong allocations = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong direct = new AtomicLong();
+        private final AtomicLong pooled = new AtomicLong();
+        private final AtomicLong live = new AtomicLong();
+        private final AtomicLongArray sizes = new AtomicLongArray(BUCKETS);
+        private final AtomicLongArray lifetimes = new AtomicLongArray(BUCKETS);
+
+        Stats(String callSite) {
+            this.callSite = callSite;
+        }
+
+        void allocated(int capacity, boolean isDirect, boolean isPooled) {
+            allocations.incrementAndGet();
+            bytes.addAndGet(capacity);
+            if (isDirect) {
+                direct.incrementAndGet();
+            }
+            if (isPooled) {
+                pooled.incrementAndGet();
+            }
+            sizes.incrementAndGet(bucket(capacity));
+        }
+
+        void released(long lifetimeNanos) {
+            live.decrementAndGet();
+            lifetimes.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(lifetimeNanos)));
+        }
+
+        private static int bucket(long value) {
+            return BUCKETS - Long.numberOfLeadingZeros(value);
+        }
+
+        public String callSite() {
+            return callSite;
+        }
+
+        public long allocations() {
+            return allocations.get();
+        }
+
+        public long bytes() {
+            return bytes.get();
+        }
+
+        public long directAllocations() {
+            return direct.get();
+        }
+
+        public long pooledAllocations() {
+            return pooled.get();
+        }
+
+        /**
+         * Sampled buffers not released yet; a number that keeps growing is a
+         * leak.
+         */
+        public long live() {
+            return live.get();
+        }
+
+        public long[] sizeHistogram() {
+            return toArray(sizes);
+        }
+
+        public long[] lifetimeHistogram() {
+            return toArray(lifetimes);
+        }
+
+        private static long[] toArray(AtomicLongArray array) {
+            long[] copy = new long[array.length()];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = array.get(i);
+            }
+            return copy;
+        }
+
+        void print(PrintStream out) {
+            long n = allocations();
+            out.printf("  direct %,d / heap %,d, pooled %,d / unpooled %,d, live %,d%n",
+                    directAllocations(), n - directAllocations(),
+                    pooledAllocations(), n - pooledAllocations(), live());
+            printHistogram(out, "  capacity", sizeHistogram(), "B");
+            printHistogram(out, "  lifetime", lifetimeHistogram(), "us");
+        }
+
+        private static void printHistogram(PrintStream out, String label, long[] histogram, String unit) {
+            StringBuilder sb = new StringBuilder(label);
+            for (int i = 0; i < histogram.length; i++) {
+                if (histogram[i] != 0) {
+                    sb.append(' ').append('<').append(1L << i).append(unit)
+                            .append(':').append(histogram[i]);
+                }
+            }
+            out.println(sb);
+        }
+
+        @Override
+        public String toString() {
+            return callSite + ": " + allocations() + " allocations, " + bytes() + " bytes";
+        }
+    }
+}
@@ -32,5 +32,11 @@
  * Listing 5.15 Reference counting {@link nia.chapter5.ByteBufExamples#referenceCounting()}
  *
  * Listing 5.16 Release reference-counted object {@link nia.chapter5.ByteBufExamples#releaseReferenceCountedObject()}
+ *
+ * Tracking allocations {@link nia.chapter5.ByteBufExamples#trackingAllocations(java.io.PrintStream)}
+ *
+ * Zero-copy framing {@link nia.chapter5.FrameAssembler}, {@link nia.chapter5.LengthFieldFrameEncoder}
+ *
+ * Memory-mapped file buffers {@link nia.chapter5.MappedFile}
  */
 package nia.chapter5;
\ No newline at end of file
@@ -0,0 +1,132 @@
+package nia.test.chapter5;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.IllegalReferenceCountException;
+import nia.chapter5.MappedFile;
+import nia.chapter5.MappedFile.MappedByteBuf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Maps a small file in windows of {@value #WINDOW} bytes.
+ */
+public class MappedFileTest {
+    private static final int WINDOW = 1024;
+    private static final int SIZE = 3 * WINDOW + 100;
+
+    private File file;
+    private MappedFile mapped;
+
+    @Before
+    public void open() throws IOException {
+        file = File.createTempFile("mapped-file-test", ".bin");
+        byte[] content = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            content[i] = at(i);
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        mapped = new MappedFile(new RandomAccessFile(file, "r").getChannel(), WINDOW,
+                ByteBufAllocator.DEFAULT);
+    }
+
+    @After
+    public void close() throws IOException {
+        mapped.close();
+        assertTrue(file.delete());
+    }
+
+    private static byte at(long position) {
+        return (byte) (position * 31 + 7);
+    }
+
+    private static void assertContent(long position, ByteBuf buf) {
+        for (int i = 0; i < buf.readableBytes(); i++) {
+            assertEquals("byte " + (position + i), at(position + i), buf.getByte(buf.readerIndex() + i));
+        }
+    }
+
+    @Test
+    public void sliceSpansWindows() throws IOException {
+        MappedByteBuf inside = mapped.slice(10, 100);
+        assertEquals(1, inside.numComponents());
+        assertContent(10, inside);
+
+        MappedByteBuf across = mapped.slice(WINDOW - 50, 100);
+        assertEquals(2, across.numComponents());
+        assertEquals(100, across.readableBytes());
+        assertContent(WINDOW - 50, across);
+
+        // 从第一个窗口到最后一个不满的窗口
+        MappedByteBuf all = mapped.slice();
+        assertEquals(4, all.numComponents());
+        assertEquals(SIZE, all.readableBytes());
+        assertContent(0, all);
+
+        assertTrue(inside.release());
+        assertTrue(across.release());
+        assertTrue(all.release());
+    }
+
+    @Test
+    public void buffersOutliveClose() throws IOException {
+        MappedByteBuf first = mapped.slice(0, 2 * WINDOW);
+        MappedByteBuf second = mapped.slice(WINDOW / 2, WINDOW);
+        ByteBuf derived = second.slice(10, 10);
+        mapped.close();
+        assertEquals(1, first.refCnt());
+        assertEquals(1, second.refCnt());
+
+        // 文件关闭后窗口还被缓冲区占用，仍然映射着
+        assertTrue(first.release());
+        assertContent(WINDOW / 2, second);
+        assertContent(WINDOW / 2 + 10, derived);
+        assertTrue(second.release());
+        assertEquals(0, derived.refCnt());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noSliceAfterClose() throws IOException {
+        mapped.close();
+        mapped.slice(0, 1);
+    }
+
+    @Test
+    public void accessAfterReleaseFails() throws IOException {
+        MappedByteBuf buf = mapped.slice(WINDOW - 1, 2);
+        ByteBuf derived = buf.duplicate();
+        assertTrue(buf.release());
+        mapped.close();
+        // 检查引用计数的异常，而不是读已经解除映射的内存
+        try {
+            buf.getByte(0);
+            fail();
+        } catch (IllegalReferenceCountException e) {
+            // expected exception
+        }
+        try {
+            derived.getByte(0);
+            fail();
+        } catch (IllegalReferenceCountException e) {
+            // expected exception
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void sliceBeyondEnd() throws IOException {
+        mapped.slice(SIZE - 10, 11);
+    }
+}
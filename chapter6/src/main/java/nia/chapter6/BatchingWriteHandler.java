@@ -0,0 +1,172 @@
+package nia.chapter6;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.MessageSizeEstimator;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Like {@link WriteHandler} (Listing 6.9), but {@link #send(Object)} only
+ * writes. Every flush is a {@code write} syscall, so instead of one per
+ * message the handler flushes
+ * <ul>
+ *   <li>once per event loop iteration: the first pending write schedules a
+ *       flush task, which the event loop runs after it has processed the
+ *       I/O of this iteration, e.g. all requests of one read,</li>
+ *   <li>or right away once {@code maxPendingMessages} messages or
+ *       {@code maxPendingBytes} bytes, as estimated by the channel's
+ *       {@link MessageSizeEstimator}, are pending.</li>
+ * </ul>
+ * Calls from outside the event loop go through a lock-free queue that one
+ * task drains, however many threads send meanwhile.
+ *
+ * Writes and flushes of the handlers behind this one also pass through it
+ * and are counted; a flush by anyone resets the counts. The pending writes
+ * are flushed before the channel is closed. Failed writes are reported
+ * through {@code exceptionCaught}, as with {@code channel.voidPromise()}.
+ */
+public class BatchingWriteHandler extends ChannelOutboundHandlerAdapter {
+    public static final int DEFAULT_MAX_PENDING_MESSAGES = 1024;
+    public static final int DEFAULT_MAX_PENDING_BYTES = 64 * 1024;
+
+    private final int maxPendingMessages;
+    private final int maxPendingBytes;
+    private final Queue<Object> queue = PlatformDependent.newMpscQueue();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            if (pendingMessages > 0) {
+                flush(ctx);
+            }
+        }
+    };
+    private ChannelHandlerContext ctx;
+    private MessageSizeEstimator.Handle sizeEstimator;
+    // 以下字段只在EventLoop中访问
+    private int pendingMessages;
+    private long pendingBytes;
+    private boolean flushScheduled;
+
+    public BatchingWriteHandler() {
+        this(DEFAULT_MAX_PENDING_MESSAGES, DEFAULT_MAX_PENDING_BYTES);
+    }
+
+    public BatchingWriteHandler(int maxPendingMessages, int maxPendingBytes) {
+        if (maxPendingMessages <= 0) {
+            throw new IllegalArgumentException("maxPendingMessages: " + maxPendingMessages + " (expected: > 0)");
+        }
+        if (maxPendingBytes <= 0) {
+            throw new IllegalArgumentException("maxPendingBytes: " + maxPendingBytes + " (expected: > 0)");
+        }
+        this.maxPendingMessages = maxPendingMessages;
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        sizeEstimator = ctx.channel().config().getMessageSizeEstimator().newHandle();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        drain();
+        if (pendingMessages > 0) {
+            flush(ctx);
+        }
+    }
+
+    /**
+     * Writes {@code msg}; it is flushed by the end of the current event loop
+     * iteration at the latest. May be called from any thread.
+     */
+    public void send(Object msg) {
+        if (ctx.executor().inEventLoop()) {
+            // 先写出其他线程排队的消息，保证同一线程发送的消息有序
+            drain();
+            write(msg);
+            return;
+        }
+        queue.offer(msg);
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                ctx.executor().execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                // EventLoop已关闭，消息永远不会被写出
+                Object m;
+                while ((m = queue.poll()) != null) {
+                    ReferenceCountUtil.release(m);
+                }
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        added(msg);
+        ctx.write(msg, promise);
+        flushIfNeeded();
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        pendingMessages = 0;
+        pendingBytes = 0;
+        ctx.flush();
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) {
+        drain();
+        if (pendingMessages > 0) {
+            flush(ctx);
+        }
+        ctx.close(promise);
+    }
+
+    private void write(Object msg) {
+        added(msg);
+        ctx.write(msg, ctx.voidPromise());
+        flushIfNeeded();
+    }
+
+    private void added(Object msg) {
+        pendingMessages++;
+        int size = sizeEstimator.size(msg);
+        if (size > 0) {
+            pendingBytes += size;
+        }
+    }
+
+    private void flushIfNeeded() {
+        if (pendingMessages >= maxPendingMessages || pendingBytes >= maxPendingBytes) {
+            flush(ctx);
+        } else if (pendingMessages > 0 && !flushScheduled) {
+            flushScheduled = true;
+            ctx.executor().execute(flushTask);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        Object msg;
+        while ((msg = queue.poll()) != null) {
+            write(msg);
+        }
+    }
+}
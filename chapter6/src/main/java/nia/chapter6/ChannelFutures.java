@@ -35,4 +35,18 @@ public class ChannelFutures {
             }
         });
     }
+
+    /**
+     * The same without a listener per write: the failure goes through the
+     * pipeline to an {@link ErrorFunnel} shared by all channels
+     * */
+    public static void writingWithVoidPromise(ErrorFunnel funnel) {
+        Channel channel = CHANNEL_FROM_SOMEWHERE; // get reference to pipeline;
+        ByteBuf someMessage = SOME_MSG_FROM_SOMEWHERE; // get reference to pipeline;
+        // 通常在ChannelInitializer中添加，位于ChannelPipeline的最后
+        channel.pipeline().addLast(funnel);
+        //...
+        // 写失败时触发exceptionCaught，不需要创建ChannelFutureListener
+        channel.write(someMessage, channel.voidPromise());
+    }
 }
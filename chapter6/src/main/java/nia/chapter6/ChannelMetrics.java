@@ -0,0 +1,29 @@
+package nia.chapter6;
+
+/**
+ * Traffic counters of a group of channels, e.g. all channels of a server,
+ * for export to a monitoring system. Every call sums the counters anew, so
+ * the values of one call need not be consistent with each other.
+ */
+public interface ChannelMetrics {
+    /**
+     * Messages read since the start.
+     */
+    long messagesRead();
+
+    /**
+     * Bytes of the {@code ByteBuf}s and {@code ByteBufHolder}s read since
+     * the start.
+     */
+    long bytesRead();
+
+    /**
+     * Channels active right now.
+     */
+    long activeChannels();
+
+    /**
+     * Exceptions caught since the start.
+     */
+    long exceptionsCaught();
+}
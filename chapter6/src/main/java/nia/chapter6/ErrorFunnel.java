@@ -0,0 +1,189 @@
+package nia.chapter6;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One place for all failures of a pipeline, instead of a
+ * {@code ChannelFutureListener} per write as in Listing 6.13 and 6.14.
+ * Write with {@code channel.voidPromise()} (or {@code ctx.voidPromise()}):
+ * a failed write then fires {@code exceptionCaught} through the pipeline,
+ * and so do inbound failures. Add one shared instance as the last handler
+ * of every pipeline; it closes the channel and reports the failure.
+ *
+ * Reports are written by a background thread, at most
+ * {@code maxReportsPerSecond} stack traces per second. Failures beyond that
+ * or beyond what the report queue holds are only counted, by exception
+ * type, and summed up in one line per second. So a storm of broken
+ * connections costs the event loops neither console I/O nor allocation:
+ * <pre>
+ *   12345 failures not reported in the last 1000 ms: java.io.IOException=12000 ...
+ * </pre>
+ */
+@Sharable
+public class ErrorFunnel extends ChannelInboundHandlerAdapter implements Closeable {
+    public static final int DEFAULT_MAX_REPORTS_PER_SECOND = 10;
+    // 超过这么多种异常类型后归入Throwable一类，计数表不会无限增长
+    private static final int MAX_TYPES = 64;
+
+    private final int maxReportsPerSecond;
+    private final PrintStream out;
+    private final BlockingQueue<Report> reports;
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger reportedInWindow = new AtomicInteger();
+    private final AtomicLong failures = new AtomicLong();
+    private final ConcurrentMap<Class<?>, AtomicLong> unreported = new ConcurrentHashMap<Class<?>, AtomicLong>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public ErrorFunnel() {
+        this(DEFAULT_MAX_REPORTS_PER_SECOND, System.err);
+    }
+
+    public ErrorFunnel(int maxReportsPerSecond, PrintStream out) {
+        if (maxReportsPerSecond <= 0) {
+            throw new IllegalArgumentException("maxReportsPerSecond: " + maxReportsPerSecond + " (expected: > 0)");
+        }
+        if (out == null) {
+            throw new NullPointerException("out");
+        }
+        this.maxReportsPerSecond = maxReportsPerSecond;
+        this.out = out;
+        reports = new ArrayBlockingQueue<Report>(maxReportsPerSecond);
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeReports();
+            }
+        }, "error-funnel");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Failures seen so far, reported or not.
+     */
+    public long failures() {
+        return failures.get();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        ctx.close();
+        report(ctx.channel(), cause);
+    }
+
+    /**
+     * Reports {@code cause} as a failure of {@code channel}; may be called
+     * from any thread, e.g. from a listener of a non-void promise.
+     */
+    public void report(Channel channel, Throwable cause) {
+        failures.incrementAndGet();
+        if (closed || !admit() || !reports.offer(new Report(channel, cause))) {
+            countUnreported(cause.getClass());
+        }
+    }
+
+    /**
+     * Whether one more report fits into the current one-second window.
+     */
+    private boolean admit() {
+        long start = windowStart.get();
+        long now = System.nanoTime();
+        if (now - start >= TimeUnit.SECONDS.toNanos(1) && windowStart.compareAndSet(start, now)) {
+            reportedInWindow.set(0);
+        }
+        return reportedInWindow.incrementAndGet() <= maxReportsPerSecond;
+    }
+
+    private void countUnreported(Class<?> type) {
+        AtomicLong count = unreported.get(type);
+        if (count == null) {
+            if (unreported.size() >= MAX_TYPES) {
+                type = Throwable.class;
+            }
+            AtomicLong created = new AtomicLong();
+            count = unreported.putIfAbsent(type, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private void writeReports() {
+        long lastSummary = System.nanoTime();
+        while (!closed || !reports.isEmpty()) {
+            try {
+                Report report = reports.poll(100, TimeUnit.MILLISECONDS);
+                if (report != null) {
+                    out.println("Failure on " + report.channel + ':');
+                    report.cause.printStackTrace(out);
+                }
+            } catch (InterruptedException e) {
+                // close()唤醒，循环条件决定是否退出
+            }
+            long now = System.nanoTime();
+            if (now - lastSummary >= TimeUnit.SECONDS.toNanos(1) || closed) {
+                writeSummary(TimeUnit.NANOSECONDS.toMillis(now - lastSummary));
+                lastSummary = now;
+            }
+        }
+        out.flush();
+    }
+
+    private void writeSummary(long millis) {
+        StringBuilder summary = null;
+        long total = 0;
+        for (Map.Entry<Class<?>, AtomicLong> entry : unreported.entrySet()) {
+            long count = entry.getValue().getAndSet(0);
+            if (count > 0) {
+                if (summary == null) {
+                    summary = new StringBuilder();
+                }
+                summary.append(' ').append(entry.getKey().getName()).append('=').append(count);
+                total += count;
+            }
+        }
+        if (summary != null) {
+            out.println(total + " failures not reported in the last " + millis + " ms:" + summary);
+        }
+    }
+
+    /**
+     * Writes what is queued and stops the background thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Report {
+        final Channel channel;
+        final Throwable cause;
+
+        Report(Channel channel, Throwable cause) {
+            this.channel = channel;
+            this.cause = cause;
+        }
+    }
+}
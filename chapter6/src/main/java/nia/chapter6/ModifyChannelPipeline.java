@@ -31,6 +31,22 @@ public class ModifyChannelPipeline {
 
     }
 
+    /**
+     * Profiles the handlers of a pipeline, e.g. at the end of
+     * {@code initChannel()}; share one {@link PipelineProfiler} between all
+     * channels and print it from time to time
+     * */
+    public static void profilePipeline(PipelineProfiler profiler) {
+        ChannelPipeline pipeline = CHANNEL_PIPELINE_FROM_SOMEWHERE; // get reference to pipeline;
+        pipeline.addLast("handler1", new FirstHandler());
+        pipeline.addLast("handler2", new SecondHandler());
+        // 每个处理器前插入一个探针，之后添加的处理器在下次采样时补上
+        profiler.install(pipeline);
+        pipeline.addLast("handler3", new ThirdHandler());
+        //...
+        profiler.print(System.out);
+    }
+
     private static final class FirstHandler
         extends ChannelHandlerAdapter {
 
@@ -0,0 +1,597 @@
+package nia.chapter6;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandler;
+import io.netty.channel.ChannelOutboundHandler;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the expensive {@link ChannelHandler}s of a pipeline. {@link #install}
+ * puts a probe in front of every handler (and one at the tail); an event
+ * passing a probe enters the handler behind it, inbound events the one
+ * toward the tail, outbound events the one toward the head. Per handler name,
+ * across all channels, the profiler keeps
+ * <ul>
+ *   <li>inbound and outbound invocation counts,</li>
+ *   <li>messages and bytes read and written,</li>
+ *   <li>histograms of the self time of sampled invocations: the time until
+ *       the handler returns, minus the time spent in the handlers it passed
+ *       the event on to.</li>
+ * </ul>
+ * The counts are exact. On average only one in {@code sampleInterval} event
+ * chains on a thread is timed, including everything that event triggers
+ * synchronously; the gaps are random so the samples do not lock onto one
+ * event of a repeating pattern, e.g. always the flush after a read.
+ * The probes do not wrap the handlers, so {@code get()}, {@code remove()}
+ * and {@code replace()} by type or instance work as before. Handlers added
+ * or removed later, e.g. by a {@link io.netty.channel.ChannelInitializer}
+ * or a protocol upgrade, are picked up on the next sampled event.
+ *
+ * The time spent in the transport, e.g. the {@code write} syscalls of a
+ * flush, is reported as {@value #HEAD}; events that reach the end of the
+ * pipeline as {@value #TAIL}. Handlers added with their own
+ * {@code EventExecutorGroup} show only the hand-off to their executor.
+ */
+public final class PipelineProfiler {
+    public static final String HEAD = "(head)";
+    public static final String TAIL = "(tail)";
+    public static final int DEFAULT_SAMPLE_INTERVAL = 100;
+
+    private static final FastThreadLocal<Clock> CLOCK = new FastThreadLocal<Clock>() {
+        @Override
+        protected Clock initialValue() {
+            return new Clock();
+        }
+    };
+
+    private final int sampleInterval;
+    private final ConcurrentMap<String, HandlerStats> stats = new ConcurrentHashMap<String, HandlerStats>();
+
+    public PipelineProfiler() {
+        this(DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * @param sampleInterval 1 times every event
+     */
+    public PipelineProfiler(int sampleInterval) {
+        if (sampleInterval <= 0 || sampleInterval > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("sampleInterval: " + sampleInterval +
+                    " (expected: 0 < sampleInterval <= " + Integer.MAX_VALUE / 2 + ")");
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Profiles the handlers of {@code pipeline}, now and later ones; usually
+     * called at the end of {@code initChannel()}.
+     */
+    public void install(final ChannelPipeline pipeline) {
+        if (!pipeline.channel().isRegistered() || pipeline.channel().eventLoop().inEventLoop()) {
+            reconcile(pipeline);
+        } else {
+            pipeline.channel().eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    reconcile(pipeline);
+                }
+            });
+        }
+    }
+
+    /**
+     * Statistics of the handlers seen so far, by name.
+     */
+    public Map<String, HandlerStats> stats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * A table of all handlers, the most expensive first: mean self time
+     * times the number of invocations.
+     */
+    public void print(PrintStream out) {
+        List<HandlerStats> all = new ArrayList<HandlerStats>(stats.values());
+        final Map<HandlerStats, Double> costs = new HashMap<HandlerStats, Double>();
+        for (HandlerStats s : all) {
+            costs.put(s, s.estimatedNanos());
+        }
+        Collections.sort(all, new Comparator<HandlerStats>() {
+            @Override
+            public int compare(HandlerStats a, HandlerStats b) {
+                return Double.compare(costs.get(b), costs.get(a));
+            }
+        });
+        out.printf("%-32s%8s%12s%12s%14s%12s%12s%12s%12s%n", "handler", "", "calls", "messages",
+                "bytes", "p50 ns", "p99 ns", "max ns", "total ms");
+        for (HandlerStats s : all) {
+            if (s.inboundCalls.value() > 0) {
+                print(out, s.name, "in", s.inboundCalls.value(), s.messagesIn.value(), s.bytesIn.value(),
+                        s.inboundSelfTime());
+            }
+            if (s.outboundCalls.value() > 0) {
+                print(out, s.inboundCalls.value() > 0 ? "" : s.name, "out", s.outboundCalls.value(),
+                        s.messagesOut.value(), s.bytesOut.value(), s.outboundSelfTime());
+            }
+        }
+    }
+
+    private static void print(PrintStream out, String name, String direction, long calls, long messages,
+        long bytes, Histogram selfTime) {
+        if (selfTime.getTotalCount() == 0) {
+            out.printf("%-32s%8s%,12d%,12d%,14d%12s%12s%12s%12s%n", name, direction, calls, messages, bytes,
+                    "-", "-", "-", "-");
+        } else {
+            out.printf("%-32s%8s%,12d%,12d%,14d%,12d%,12d%,12d%,12.1f%n", name, direction, calls, messages, bytes,
+                    selfTime.getValueAtPercentile(50), selfTime.getValueAtPercentile(99), selfTime.getMaxValue(),
+                    selfTime.getMean() * calls / TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private HandlerStats stats(String name) {
+        HandlerStats s = stats.get(name);
+        if (s == null) {
+            HandlerStats created = new HandlerStats(name);
+            s = stats.putIfAbsent(name, created);
+            if (s == null) {
+                s = created;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Makes sure every handler has a probe right in front of it and the
+     * pipeline ends with one, drops the probes of removed handlers, and
+     * points every probe at its neighbours.
+     */
+    void reconcile(ChannelPipeline pipeline) {
+        HandlerStats previous = stats(HEAD);
+        Probe pending = null;
+        for (Map.Entry<String, ChannelHandler> entry : pipeline) {
+            ChannelHandler handler = entry.getValue();
+            if (handler instanceof Probe) {
+                if (pending != null) {
+                    // 两个探针相邻：中间的处理器已被移除
+                    // 被移除的探针可能正在处理当前事件，解除绑定让事件只是经过
+                    pending.bind(null, null);
+                    pipeline.remove(pending);
+                }
+                pending = (Probe) handler;
+                continue;
+            }
+            String name = entry.getKey();
+            if (pending == null) {
+                pending = new Probe();
+                pipeline.addBefore(name, null, pending);
+            }
+            pending.bind(previous, handler instanceof ChannelInboundHandler ? stats(name) : null);
+            previous = handler instanceof ChannelOutboundHandler ? stats(name) : null;
+            pending = null;
+        }
+        if (pending == null) {
+            pending = new Probe();
+            pipeline.addLast((String) null, pending);
+        }
+        pending.bind(previous, stats(TAIL));
+    }
+
+    /**
+     * Counters and self-time histograms of one handler name.
+     */
+    public static final class HandlerStats {
+        private final String name;
+        final LongCounter inboundCalls = PlatformDependent.newLongCounter();
+        final LongCounter outboundCalls = PlatformDependent.newLongCounter();
+        final LongCounter messagesIn = PlatformDependent.newLongCounter();
+        final LongCounter messagesOut = PlatformDependent.newLongCounter();
+        final LongCounter bytesIn = PlatformDependent.newLongCounter();
+        final LongCounter bytesOut = PlatformDependent.newLongCounter();
+        final Recorder inboundRecorder = new Recorder(2);
+        final Recorder outboundRecorder = new Recorder(2);
+        // Recorder每次读取后清零，累计到这两个直方图中
+        private final Histogram inboundTotal = new Histogram(2);
+        private final Histogram outboundTotal = new Histogram(2);
+
+        HandlerStats(String name) {
+            this.name = name;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long inboundCalls() {
+            return inboundCalls.value();
+        }
+
+        public long outboundCalls() {
+            return outboundCalls.value();
+        }
+
+        public long messagesIn() {
+            return messagesIn.value();
+        }
+
+        public long messagesOut() {
+            return messagesOut.value();
+        }
+
+        public long bytesIn() {
+            return bytesIn.value();
+        }
+
+        public long bytesOut() {
+            return bytesOut.value();
+        }
+
+        /**
+         * Self time in nanoseconds of the sampled inbound invocations.
+         */
+        public synchronized Histogram inboundSelfTime() {
+            inboundTotal.add(inboundRecorder.getIntervalHistogram());
+            return inboundTotal.copy();
+        }
+
+        /**
+         * Self time in nanoseconds of the sampled outbound invocations.
+         */
+        public synchronized Histogram outboundSelfTime() {
+            outboundTotal.add(outboundRecorder.getIntervalHistogram());
+            return outboundTotal.copy();
+        }
+
+        double estimatedNanos() {
+            Histogram in = inboundSelfTime();
+            Histogram out = outboundSelfTime();
+            return (in.getTotalCount() == 0 ? 0 : in.getMean() * inboundCalls.value()) +
+                    (out.getTotalCount() == 0 ? 0 : out.getMean() * outboundCalls.value());
+        }
+    }
+
+    /**
+     * The nesting of the timed handlers on one thread: an event passed on
+     * synchronously runs inside the call of the handler that passed it.
+     */
+    private static final class Clock {
+        long[] childNanos = new long[16];
+        int depth = -1;
+        // 距下一次计时还剩几个事件
+        int countdown = 1;
+    }
+
+    /**
+     * Sits in front of the handler of {@link #inbound} and behind the one of
+     * {@link #outbound}.
+     */
+    private final class Probe extends ChannelDuplexHandler {
+        private HandlerStats inbound;
+        private HandlerStats outbound;
+
+        void bind(HandlerStats outbound, HandlerStats inbound) {
+            this.outbound = outbound;
+            this.inbound = inbound;
+        }
+
+        /**
+         * Whether this invocation is timed. A new timed event chain first
+         * brings the probes up to date, so the bindings read after this call
+         * are current.
+         */
+        private boolean sample(ChannelHandlerContext ctx) {
+            Clock clock = CLOCK.get();
+            if (clock.depth >= 0) {
+                return true;
+            }
+            if (--clock.countdown > 0) {
+                return false;
+            }
+            clock.countdown = 1 + ThreadLocalRandom.current().nextInt(2 * sampleInterval - 1);
+            reconcile(ctx.pipeline());
+            return true;
+        }
+
+        /**
+         * Start time if this invocation is timed, else -1.
+         */
+        private long enter(HandlerStats s, boolean timed) {
+            if (!timed) {
+                return -1;
+            }
+            Clock clock = CLOCK.get();
+            if (s == null) {
+                if (clock.depth < 0) {
+                    // 事件只是经过这个探针，改由下一个探针开始计时
+                    clock.countdown = 1;
+                }
+                return -1;
+            }
+            if (++clock.depth == clock.childNanos.length) {
+                long[] grown = new long[clock.depth << 1];
+                System.arraycopy(clock.childNanos, 0, grown, 0, clock.depth);
+                clock.childNanos = grown;
+            }
+            clock.childNanos[clock.depth] = 0;
+            return System.nanoTime();
+        }
+
+        private void exit(long start, HandlerStats s, boolean inbound) {
+            if (start < 0) {
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            Clock clock = CLOCK.get();
+            long self = elapsed - clock.childNanos[clock.depth];
+            if (--clock.depth >= 0) {
+                clock.childNanos[clock.depth] += elapsed;
+            }
+            (inbound ? s.inboundRecorder : s.outboundRecorder).recordValue(Math.max(0, self));
+        }
+
+        // 为null时事件只是经过：相邻的处理器不处理该方向的事件，由下一个探针记录
+
+        private long in(HandlerStats s, boolean timed) {
+            if (s != null) {
+                s.inboundCalls.increment();
+            }
+            return enter(s, timed);
+        }
+
+        private long out(HandlerStats s, boolean timed) {
+            if (s != null) {
+                s.outboundCalls.increment();
+            }
+            return enter(s, timed);
+        }
+
+        @Override
+        public void channelRegistered(ChannelHandlerContext ctx) {
+            boolean timed = sample(ctx);
+            HandlerStats s = inbound;
+            long start = in(s, timed);
+            try {
+                ctx.fireChannelRegistered();
+            } finally {
+                exit(start, s, true);
+            }
+        }
+
+        @Override
+        public void channelUnregistered(ChannelHandlerContext ctx) {
+            boolean timed = sample(ctx);
+            HandlerStats s = inbound;
+            long start = in(s, timed);
+            try {
+                ctx.fireChannelUnregistered();
+            } finally {
+                exit(start, s, true);
+            }
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            boolean timed = sample(ctx);
+            HandlerStats s = inbound;
+            long start = in(s, timed);
+            try {
+                ctx.fireChannelActive();
+            } finally {
+                exit(start, s, true);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            boolean timed = sample(ctx);
+            HandlerStats s = inbound;
+            long start = in(s, timed);
+            try {
+                ctx.fireChannelInactive();
+            } finally {
+                exit(start, s, true);
+            }
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            boolean timed = sample(ctx);
+            HandlerStats s = inbound;
+            if (s != null) {
+                s.messagesIn.increment();
+                s.bytesIn.add(bytes(msg));
+            }
+            long start = in(s, timed);
+            try {
+                ctx.fireChannelRead(msg);
+            } finally {
+                exit(start, s, true);
+            }
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            boolean timed = sample(ctx);
+            HandlerStats s = inbound;
+            long start = in(s, timed);
+            try {
+                ctx.fireChannelReadComplete();
+            } finally {
+                exit(start, s, true);
+            }
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+            boolean timed = sample(ctx);
+            HandlerStats s = inbound;
+            long start = in(s, timed);
+            try {
+                ctx.fireUserEventTriggered(evt);
+            } finally {
+                exit(start, s, true);
+            }
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            boolean timed = sample(ctx);
+            HandlerStats s = inbound;
+            long start = in(s, timed);
+            try {
+                ctx.fireChannelWritabilityChanged();
+            } finally {
+                exit(start, s, true);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            boolean timed = sample(ctx);
+            HandlerStats s = inbound;
+            long start = in(s, timed);
+            try {
+                ctx.fireExceptionCaught(cause);
+            } finally {
+                exit(start, s, true);
+            }
+        }
+
+        @Override
+        public void bind(ChannelHandlerContext ctx, SocketAddress localAddress, ChannelPromise promise) {
+            boolean timed = sample(ctx);
+            HandlerStats s = outbound;
+            long start = out(s, timed);
+            try {
+                ctx.bind(localAddress, promise);
+            } finally {
+                exit(start, s, false);
+            }
+        }
+
+        @Override
+        public void connect(ChannelHandlerContext ctx, SocketAddress remoteAddress, SocketAddress localAddress,
+            ChannelPromise promise) {
+            boolean timed = sample(ctx);
+            HandlerStats s = outbound;
+            long start = out(s, timed);
+            try {
+                ctx.connect(remoteAddress, localAddress, promise);
+            } finally {
+                exit(start, s, false);
+            }
+        }
+
+        @Override
+        public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) {
+            boolean timed = sample(ctx);
+            HandlerStats s = outbound;
+            long start = out(s, timed);
+            try {
+                ctx.disconnect(promise);
+            } finally {
+                exit(start, s, false);
+            }
+        }
+
+        @Override
+        public void close(ChannelHandlerContext ctx, ChannelPromise promise) {
+            boolean timed = sample(ctx);
+            HandlerStats s = outbound;
+            long start = out(s, timed);
+            try {
+                ctx.close(promise);
+            } finally {
+                exit(start, s, false);
+            }
+        }
+
+        @Override
+        public void deregister(ChannelHandlerContext ctx, ChannelPromise promise) {
+            boolean timed = sample(ctx);
+            HandlerStats s = outbound;
+            long start = out(s, timed);
+            try {
+                ctx.deregister(promise);
+            } finally {
+                exit(start, s, false);
+            }
+        }
+
+        @Override
+        public void read(ChannelHandlerContext ctx) {
+            boolean timed = sample(ctx);
+            HandlerStats s = outbound;
+            long start = out(s, timed);
+            try {
+                ctx.read();
+            } finally {
+                exit(start, s, false);
+            }
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            boolean timed = sample(ctx);
+            HandlerStats s = outbound;
+            if (s != null) {
+                s.messagesOut.increment();
+                s.bytesOut.add(bytes(msg));
+            }
+            long start = out(s, timed);
+            try {
+                ctx.write(msg, promise);
+            } finally {
+                exit(start, s, false);
+            }
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+            boolean timed = sample(ctx);
+            HandlerStats s = outbound;
+            long start = out(s, timed);
+            try {
+                ctx.flush();
+            } finally {
+                exit(start, s, false);
+            }
+        }
+    }
+
+    private static long bytes(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        }
+        if (msg instanceof FileRegion) {
+            return ((FileRegion) msg).count();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,173 @@
+package nia.chapter6;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.MathUtil;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A correctly {@link Sharable} counterpart of {@link UnsharableHandler}: one
+ * instance can sit in every pipeline of a server and counts the messages,
+ * bytes, active channels and exceptions of all of them.
+ *
+ * The counters are striped: each thread, i.e. each event loop, updates its
+ * own stripe and {@link ChannelMetrics} sums the stripes when read. A stripe
+ * holds all four counters and is padded to 128 bytes, two cache lines
+ * because of the adjacent line prefetcher, so event loops never write to
+ * the same cache line. There are at least twice as many stripes as CPUs,
+ * the default number of event loops; more threads share stripes, which
+ * stays correct but may contend.
+ *
+ * A channel counts as active from {@code channelActive}, or from the
+ * handler being added if the channel is already active, until
+ * {@code channelInactive} or the handler being removed. Add at most one
+ * instance to a pipeline.
+ */
+@Sharable
+public class StatisticsHandler extends ChannelInboundHandlerAdapter implements ChannelMetrics {
+    private static final int MESSAGES = 0;
+    private static final int BYTES = 1;
+    private static final int ACTIVE = 2;
+    private static final int EXCEPTIONS = 3;
+    // 16个long = 128字节
+    private static final int STRIDE = 16;
+
+    // 标记已经计入活跃数的Channel，避免重复计数或减成负数
+    private static final AttributeKey<Boolean> COUNTED = AttributeKey.valueOf(StatisticsHandler.class, "COUNTED");
+
+    private static final AtomicInteger NEXT_THREAD_INDEX = new AtomicInteger();
+    private static final FastThreadLocal<Integer> THREAD_INDEX = new FastThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return NEXT_THREAD_INDEX.getAndIncrement();
+        }
+    };
+
+    private final int stripeMask;
+    // 第一个条纹前也留出STRIDE个long，与数组头及其他对象隔开
+    private final AtomicLongArray counters;
+
+    public StatisticsHandler() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes rounded up to a power of two
+     */
+    public StatisticsHandler(int stripes) {
+        if (stripes <= 0 || stripes > 1 << 20) {
+            throw new IllegalArgumentException("stripes: " + stripes + " (expected: 0 < stripes <= " + (1 << 20) + ")");
+        }
+        stripes = MathUtil.findNextPositivePowerOfTwo(stripes);
+        stripeMask = stripes - 1;
+        counters = new AtomicLongArray((stripes + 1) * STRIDE);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        // 加到已经活跃的Channel上时不会再收到channelActive
+        if (ctx.channel().isActive()) {
+            countActive(ctx);
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        countInactive(ctx);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        countActive(ctx);
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        countInactive(ctx);
+        ctx.fireChannelInactive();
+    }
+
+    private void countActive(ChannelHandlerContext ctx) {
+        if (ctx.channel().attr(COUNTED).setIfAbsent(Boolean.TRUE) == null) {
+            add(ACTIVE, 1);
+        }
+    }
+
+    private void countInactive(ChannelHandlerContext ctx) {
+        if (ctx.channel().attr(COUNTED).getAndSet(null) != null) {
+            add(ACTIVE, -1);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        int stripe = stripe();
+        counters.getAndIncrement(stripe + MESSAGES);
+        if (msg instanceof ByteBuf) {
+            counters.getAndAdd(stripe + BYTES, ((ByteBuf) msg).readableBytes());
+        } else if (msg instanceof ByteBufHolder) {
+            counters.getAndAdd(stripe + BYTES, ((ByteBufHolder) msg).content().readableBytes());
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        add(EXCEPTIONS, 1);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public long messagesRead() {
+        return sum(MESSAGES);
+    }
+
+    @Override
+    public long bytesRead() {
+        return sum(BYTES);
+    }
+
+    @Override
+    public long activeChannels() {
+        return sum(ACTIVE);
+    }
+
+    @Override
+    public long exceptionsCaught() {
+        return sum(EXCEPTIONS);
+    }
+
+    @Override
+    public String toString() {
+        return "StatisticsHandler(messages: " + messagesRead() + ", bytes: " + bytesRead() +
+                ", active: " + activeChannels() + ", exceptions: " + exceptionsCaught() + ')';
+    }
+
+    /**
+     * The index of the current thread's stripe in {@link #counters}.
+     */
+    private int stripe() {
+        return ((THREAD_INDEX.get() & stripeMask) + 1) * STRIDE;
+    }
+
+    private void add(int counter, long delta) {
+        // 条纹通常只被一个线程写，这里的原子操作不会发生竞争
+        counters.getAndAdd(stripe() + counter, delta);
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+        for (int stripe = STRIDE; stripe < counters.length(); stripe += STRIDE) {
+            sum += counters.get(stripe + counter);
+        }
+        return sum;
+    }
+}
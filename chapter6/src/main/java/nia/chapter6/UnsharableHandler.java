@@ -7,6 +7,9 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 /**
  * Listing 6.11 Invalid usage of @Sharable
  *
+ * {@code count} is updated by the event loops of all channels without any
+ * synchronization; {@link StatisticsHandler} counts correctly.
+ *
  * @author <a href="mailto:norman.maurer@gmail.com">Norman Maurer</a>
  */
 @Sharable
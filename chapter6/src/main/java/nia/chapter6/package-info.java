@@ -11,6 +11,8 @@
  *
  * Listing 6.5 Modify the ChannelPipeline {@link nia.chapter6.ModifyChannelPipeline#modifyPipeline()}
  *
+ * Per-handler profiling {@link nia.chapter6.PipelineProfiler}, {@link nia.chapter6.ModifyChannelPipeline#profilePipeline(PipelineProfiler)}
+ *
  * Listing 6.6 Accessing the Channel from a ChannelHandlerContext {@link nia.chapter6.WriteHandlers#writeViaChannel()}
  *
  * Listing 6.7 Accessing the ChannelPipeline from a ChannelHandlerContext {@link nia.chapter6.WriteHandlers#writeViaChannelPipeline()}
@@ -19,14 +21,20 @@
  *
  * Listing 6.9 Caching a ChannelHandlerContext {@link nia.chapter6.WriteHandler}
  *
+ * Flushing once per event loop iteration {@link nia.chapter6.BatchingWriteHandler}
+ *
  * Listing 6.10 A sharable ChannelHandler {@link nia.chapter6.SharableHandler}
  *
  * Listing 6.11 Invalid usage of @Sharable {@link nia.chapter6.UnsharableHandler}
  *
+ * Sharable statistics with striped counters {@link nia.chapter6.StatisticsHandler}, {@link nia.chapter6.ChannelMetrics}
+ *
  * Listing 6.12 Basic inbound exception handling {@link nia.chapter6.InboundExceptionHandler}
  *
  * Listing 6.13 Adding a ChannelFutureListener to a ChannelFuture {@link nia.chapter6.ChannelFutures#addingChannelFutureListener()}
  *
  * Listing 6.14 Adding a ChannelFutureListener to a ChannelPromise {@link nia.chapter6.OutboundExceptionHandler}
+ *
+ * Failures of void-promise writes reported in one place {@link nia.chapter6.ErrorFunnel}, {@link nia.chapter6.ChannelFutures#writingWithVoidPromise(ErrorFunnel)}
  */
 package nia.chapter6;
\ No newline at end of file
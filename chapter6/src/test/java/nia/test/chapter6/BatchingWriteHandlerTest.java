@@ -0,0 +1,112 @@
+package nia.test.chapter6;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import nia.chapter6.BatchingWriteHandler;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts the flushes that reach the transport when sending through a
+ * {@link BatchingWriteHandler}.
+ */
+public class BatchingWriteHandlerTest {
+    private static final class FlushCounter extends ChannelOutboundHandlerAdapter {
+        int flushes;
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes++;
+            super.flush(ctx);
+        }
+    }
+
+    private static ByteBuf bytes(int length) {
+        return Unpooled.buffer(length).writeZero(length);
+    }
+
+    private static int drainOutbound(EmbeddedChannel channel) {
+        int count = 0;
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            ((ByteBuf) msg).release();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void flushesOncePerEventLoopIteration() {
+        FlushCounter counter = new FlushCounter();
+        BatchingWriteHandler batching = new BatchingWriteHandler();
+        EmbeddedChannel channel = new EmbeddedChannel(counter, batching);
+        batching.send(bytes(8));
+        batching.send(bytes(8));
+        batching.send(bytes(8));
+        assertEquals(0, counter.flushes);
+        assertEquals(0, drainOutbound(channel));
+
+        // 待执行任务相当于本轮I/O处理之后的任务
+        channel.runPendingTasks();
+        assertEquals(1, counter.flushes);
+        assertEquals(3, drainOutbound(channel));
+
+        channel.runPendingTasks();
+        assertEquals(1, counter.flushes);
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void flushesAtMessageLimit() {
+        FlushCounter counter = new FlushCounter();
+        BatchingWriteHandler batching = new BatchingWriteHandler(2, 1024);
+        EmbeddedChannel channel = new EmbeddedChannel(counter, batching);
+        batching.send(bytes(1));
+        batching.send(bytes(1));
+        assertEquals(1, counter.flushes);
+        assertEquals(2, drainOutbound(channel));
+
+        batching.send(bytes(1));
+        assertEquals(1, counter.flushes);
+        channel.runPendingTasks();
+        assertEquals(2, counter.flushes);
+        assertEquals(1, drainOutbound(channel));
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void flushesAtByteLimit() {
+        FlushCounter counter = new FlushCounter();
+        BatchingWriteHandler batching = new BatchingWriteHandler(100, 10);
+        EmbeddedChannel channel = new EmbeddedChannel(counter, batching);
+        batching.send(bytes(4));
+        assertEquals(0, counter.flushes);
+        batching.send(bytes(8));
+        assertEquals(1, counter.flushes);
+        assertEquals(2, drainOutbound(channel));
+
+        // 计数已清零，再写4字节不会触发flush
+        batching.send(bytes(4));
+        assertEquals(1, counter.flushes);
+        channel.runPendingTasks();
+        assertEquals(2, counter.flushes);
+        assertEquals(1, drainOutbound(channel));
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void flushesBeforeClose() {
+        FlushCounter counter = new FlushCounter();
+        BatchingWriteHandler batching = new BatchingWriteHandler();
+        EmbeddedChannel channel = new EmbeddedChannel(counter, batching);
+        batching.send(bytes(8));
+        channel.close();
+        assertEquals(1, counter.flushes);
+        assertEquals(1, drainOutbound(channel));
+        assertFalse(channel.finish());
+    }
+}
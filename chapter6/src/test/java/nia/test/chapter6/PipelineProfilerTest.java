@@ -0,0 +1,68 @@
+package nia.test.chapter6;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.embedded.EmbeddedChannel;
+import nia.chapter6.PipelineProfiler;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Changes a profiled pipeline at runtime and checks that the probes follow.
+ */
+public class PipelineProfilerTest {
+    /**
+     * The handler names in pipeline order, {@code *} for a probe.
+     */
+    private static List<String> layout(ChannelPipeline pipeline) {
+        List<String> names = new ArrayList<String>();
+        for (Map.Entry<String, ChannelHandler> entry : pipeline) {
+            names.add(entry.getValue().getClass().getName().startsWith(PipelineProfiler.class.getName()) ?
+                    "*" : entry.getKey());
+        }
+        return names;
+    }
+
+    private static long messagesIn(PipelineProfiler profiler, String name) {
+        PipelineProfiler.HandlerStats s = profiler.stats().get(name);
+        return s == null ? 0 : s.messagesIn();
+    }
+
+    @Test
+    public void probesFollowRemoveAndAdd() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline()
+                .addLast("a", new ChannelInboundHandlerAdapter())
+                .addLast("b", new ChannelInboundHandlerAdapter());
+        // 每个事件都计时，下一个事件就会调整探针
+        PipelineProfiler profiler = new PipelineProfiler(1);
+        profiler.install(channel.pipeline());
+        assertEquals(Arrays.asList("*", "a", "*", "b", "*"), layout(channel.pipeline()));
+
+        assertTrue(channel.writeInbound("one"));
+        assertEquals(1, messagesIn(profiler, "a"));
+        assertEquals(1, messagesIn(profiler, "b"));
+        assertEquals(1, messagesIn(profiler, PipelineProfiler.TAIL));
+
+        channel.pipeline().remove("a");
+        channel.pipeline().addLast("c", new ChannelInboundHandlerAdapter());
+        assertTrue(channel.writeInbound("two"));
+        assertEquals(Arrays.asList("*", "b", "*", "c", "*"), layout(channel.pipeline()));
+        assertEquals(1, messagesIn(profiler, "a"));
+        assertEquals(2, messagesIn(profiler, "b"));
+        assertEquals(1, messagesIn(profiler, "c"));
+        assertEquals(2, messagesIn(profiler, PipelineProfiler.TAIL));
+        assertTrue(profiler.stats().get("b").inboundSelfTime().getTotalCount() > 0);
+
+        assertEquals("one", channel.readInbound());
+        assertEquals("two", channel.readInbound());
+        assertFalse(channel.finish());
+    }
+}
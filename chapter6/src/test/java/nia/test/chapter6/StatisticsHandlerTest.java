@@ -0,0 +1,70 @@
+package nia.test.chapter6;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import nia.chapter6.StatisticsHandler;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads the counters of one {@link StatisticsHandler} shared by several
+ * pipelines.
+ */
+public class StatisticsHandlerTest {
+    private static final class SwallowExceptions extends ChannelInboundHandlerAdapter {
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        }
+    }
+
+    @Test
+    public void countsMessagesBytesAndExceptions() {
+        StatisticsHandler stats = new StatisticsHandler(4);
+        EmbeddedChannel first = new EmbeddedChannel(stats, new SwallowExceptions());
+        EmbeddedChannel second = new EmbeddedChannel(stats, new SwallowExceptions());
+        assertTrue(first.writeInbound(Unpooled.buffer().writeZero(5)));
+        assertTrue(first.writeInbound("not a buffer"));
+        assertTrue(second.writeInbound(Unpooled.buffer().writeZero(7)));
+        second.pipeline().fireExceptionCaught(new Exception("test"));
+
+        assertEquals(3, stats.messagesRead());
+        assertEquals(12, stats.bytesRead());
+        assertEquals(1, stats.exceptionsCaught());
+        first.finishAndReleaseAll();
+        second.finishAndReleaseAll();
+    }
+
+    @Test
+    public void countsEveryActiveChannelOnce() {
+        StatisticsHandler stats = new StatisticsHandler(4);
+        // EmbeddedChannel在加入处理器时已经活跃，随后还会触发channelActive
+        EmbeddedChannel first = new EmbeddedChannel(stats);
+        EmbeddedChannel second = new EmbeddedChannel(stats);
+        assertEquals(2, stats.activeChannels());
+
+        first.close();
+        assertEquals(1, stats.activeChannels());
+        second.close();
+        assertEquals(0, stats.activeChannels());
+    }
+
+    @Test
+    public void addedToAndRemovedFromActiveChannel() {
+        StatisticsHandler stats = new StatisticsHandler(4);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast(stats);
+        assertEquals(1, stats.activeChannels());
+
+        channel.pipeline().remove(stats);
+        assertEquals(0, stats.activeChannels());
+        channel.pipeline().addLast(stats);
+        assertEquals(1, stats.activeChannels());
+
+        channel.close();
+        assertEquals(0, stats.activeChannels());
+        assertFalse(channel.finish());
+    }
+}
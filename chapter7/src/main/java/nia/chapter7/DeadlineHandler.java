@@ -0,0 +1,185 @@
+package nia.chapter7;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelException;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.timeout.ReadTimeoutException;
+import io.netty.handler.timeout.WriteTimeoutException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read, write and request deadlines of a connection on a
+ * {@link TimeoutService}, in place of Netty's {@code ReadTimeoutHandler} and
+ * {@code WriteTimeoutHandler}, which schedule a task on the event loop for
+ * every read period and every write. Each deadline is one
+ * {@link TimingWheel.Timeout} per connection, re-armed as the connection
+ * makes progress:
+ * <ul>
+ *   <li>read: nothing read for {@code readTimeout},</li>
+ *   <li>write: a write has been pending for {@code writeTimeout} without any
+ *       write completing,</li>
+ *   <li>request: nothing read within {@code requestTimeout} after a write,
+ *       the deadline of a client waiting for the response to its request.
+ *       Further writes do not move it, the next read cancels it.</li>
+ * </ul>
+ * When a deadline passes, the handler fires a {@link ReadTimeoutException},
+ * {@link WriteTimeoutException} or {@link RequestTimeoutException} through the
+ * pipeline and closes the channel. A timeout of 0 disables that deadline.
+ */
+public class DeadlineHandler extends ChannelDuplexHandler {
+    private final TimeoutService timeouts;
+    private final long readTimeoutNanos;
+    private final long writeTimeoutNanos;
+    private final long requestTimeoutNanos;
+    private ChannelHandlerContext ctx;
+    private TimingWheel.Timeout readDeadline;
+    private TimingWheel.Timeout writeDeadline;
+    private TimingWheel.Timeout requestDeadline;
+    private int pendingWrites;
+    private boolean destroyed;
+
+    private final ChannelFutureListener writeDone = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            if (destroyed) {
+                return;
+            }
+            // 有写完成就算有进展，重新计时
+            if (--pendingWrites == 0) {
+                writeDeadline.cancel();
+            } else {
+                writeDeadline.arm(writeTimeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    };
+
+    public DeadlineHandler(TimeoutService timeouts, long readTimeout, long writeTimeout, long requestTimeout,
+        TimeUnit unit) {
+        if (timeouts == null) {
+            throw new NullPointerException("timeouts");
+        }
+        if (readTimeout < 0 || writeTimeout < 0 || requestTimeout < 0) {
+            throw new IllegalArgumentException("timeouts must be >= 0");
+        }
+        this.timeouts = timeouts;
+        readTimeoutNanos = unit.toNanos(readTimeout);
+        writeTimeoutNanos = unit.toNanos(writeTimeout);
+        requestTimeoutNanos = unit.toNanos(requestTimeout);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        if (ctx.channel().isActive() && ctx.channel().isRegistered()) {
+            initialize(ctx);
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        initialize(ctx);
+        super.channelActive(ctx);
+    }
+
+    private void initialize(ChannelHandlerContext ctx) {
+        if (this.ctx != null || destroyed) {
+            return;
+        }
+        this.ctx = ctx;
+        TimingWheel wheel = timeouts.wheel(ctx.channel().eventLoop());
+        if (readTimeoutNanos > 0) {
+            readDeadline = wheel.newTimeout(new Expiry(ReadTimeoutException.INSTANCE));
+            readDeadline.arm(readTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        if (writeTimeoutNanos > 0) {
+            writeDeadline = wheel.newTimeout(new Expiry(WriteTimeoutException.INSTANCE));
+        }
+        if (requestTimeoutNanos > 0) {
+            requestDeadline = wheel.newTimeout(new Expiry(RequestTimeoutException.INSTANCE));
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (readDeadline != null) {
+            readDeadline.arm(readTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        if (requestDeadline != null) {
+            requestDeadline.cancel();
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (writeDeadline != null) {
+            // void promise不能加监听器
+            promise = promise.unvoid();
+            if (pendingWrites++ == 0) {
+                writeDeadline.arm(writeTimeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            promise.addListener(writeDone);
+        }
+        if (requestDeadline != null && !requestDeadline.isArmed()) {
+            requestDeadline.arm(requestTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        destroy();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        destroy();
+    }
+
+    private void destroy() {
+        destroyed = true;
+        if (readDeadline != null) {
+            readDeadline.cancel();
+        }
+        if (writeDeadline != null) {
+            writeDeadline.cancel();
+        }
+        if (requestDeadline != null) {
+            requestDeadline.cancel();
+        }
+    }
+
+    private final class Expiry implements Runnable {
+        private final ChannelException cause;
+
+        Expiry(ChannelException cause) {
+            this.cause = cause;
+        }
+
+        @Override
+        public void run() {
+            if (!destroyed) {
+                destroy();
+                ctx.fireExceptionCaught(cause);
+                ctx.close();
+            }
+        }
+    }
+
+    public static final class RequestTimeoutException extends ChannelException {
+        public static final RequestTimeoutException INSTANCE = new RequestTimeoutException();
+
+        private RequestTimeoutException() {
+            super("request timed out");
+        }
+
+        @Override
+        public Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
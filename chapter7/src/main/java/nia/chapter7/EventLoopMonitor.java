@@ -0,0 +1,399 @@
+package nia.chapter7;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shows when the event loops of a group are blocked, e.g. by a blocking call
+ * hidden in a handler or in a task passed to {@code execute()} or
+ * {@code schedule()} (Listing 7.3 to 7.5). Per event loop the monitor keeps
+ * <ul>
+ *   <li>the probe delay: a background thread hands every loop an empty task
+ *       each {@code probeInterval} and measures how long the loop takes to
+ *       run it. A loop waiting in {@code select()} is woken up and runs it
+ *       at once; a longer delay is time the loop spent away from I/O, in
+ *       handlers and in other tasks,</li>
+ *   <li>queue delay and run time of the tasks submitted through
+ *       {@link #execute} and {@link #schedule} (for scheduled tasks the
+ *       queue delay is how late they started),</li>
+ *   <li>the number of pending tasks, as last seen by a probe and at most;
+ *       {@code NioEventLoop} only counts them on its own thread,</li>
+ *   <li>stalls: a probe that has not run after {@code stallThreshold}. The
+ *       monitor then prints the stack of the loop thread, which shows what
+ *       is blocking it, and a line once the loop is back. The monitored
+ *       tasks reported as waiting are those passed to {@link #execute} and
+ *       the scheduled ones that are due, neither started nor cancelled.</li>
+ * </ul>
+ * A healthy loop costs one task per probe interval, plus two
+ * {@code nanoTime()} calls and two wait-free histogram records per
+ * monitored task; the stack is only taken once a loop is stalled.
+ * <pre>
+ *   Event loop nioEventLoopGroup-2-1 stalled for 500 ms, 0 monitored tasks waiting:
+ *       at java.lang.Thread.sleep(Native Method)
+ *       at nia.chapter7.ScheduleExamples$6.run(ScheduleExamples.java:125)
+ *       ...
+ * </pre>
+ */
+public final class EventLoopMonitor implements Closeable {
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 100;
+    public static final long DEFAULT_STALL_THRESHOLD_MILLIS = 500;
+
+    // 构造后只读，事件循环线程可以不加锁地查找
+    private final Map<EventExecutor, LoopState> loops = new IdentityHashMap<EventExecutor, LoopState>();
+    private final LoopState[] states;
+    private final long probeIntervalNanos;
+    private final long stallThresholdNanos;
+    private final PrintStream out;
+    private final Thread watchdog;
+    private volatile boolean closed;
+
+    public EventLoopMonitor(EventExecutorGroup group) {
+        this(group, DEFAULT_PROBE_INTERVAL_MILLIS, DEFAULT_STALL_THRESHOLD_MILLIS, TimeUnit.MILLISECONDS,
+                System.err);
+    }
+
+    /**
+     * @param out where stalls are reported
+     */
+    public EventLoopMonitor(EventExecutorGroup group, long probeInterval, long stallThreshold, TimeUnit unit,
+        PrintStream out) {
+        if (group == null) {
+            throw new NullPointerException("group");
+        }
+        if (probeInterval <= 0) {
+            throw new IllegalArgumentException("probeInterval: " + probeInterval + " (expected: > 0)");
+        }
+        if (stallThreshold < probeInterval) {
+            throw new IllegalArgumentException("stallThreshold: " + stallThreshold +
+                    " (expected: >= probeInterval " + probeInterval + ')');
+        }
+        if (out == null) {
+            throw new NullPointerException("out");
+        }
+        for (EventExecutor loop : group) {
+            loops.put(loop, new LoopState(loop));
+        }
+        states = loops.values().toArray(new LoopState[0]);
+        probeIntervalNanos = unit.toNanos(probeInterval);
+        stallThresholdNanos = unit.toNanos(stallThreshold);
+        this.out = out;
+        watchdog = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "event-loop-monitor");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    /**
+     * Runs {@code task} on {@code loop}, like {@code loop.execute(task)}, and
+     * records its queue delay and run time. Loops of other groups run it
+     * unmonitored.
+     */
+    public void execute(EventExecutor loop, Runnable task) {
+        LoopState state = loops.get(loop);
+        if (state == null) {
+            loop.execute(task);
+            return;
+        }
+        state.waitingTasks.incrementAndGet();
+        try {
+            loop.execute(new MonitoredTask(state, task, System.nanoTime(), false));
+        } catch (RejectedExecutionException e) {
+            state.waitingTasks.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Schedules {@code task} on {@code loop}, like {@code loop.schedule()},
+     * and records how late it started and its run time.
+     */
+    public ScheduledFuture<?> schedule(EventExecutor loop, Runnable task, long delay, TimeUnit unit) {
+        LoopState state = loops.get(loop);
+        if (state == null) {
+            return loop.schedule(task, delay, unit);
+        }
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(0, delay));
+        MonitoredTask monitored = new MonitoredTask(state, task, deadline, true);
+        // 先登记再提交，否则零延迟的任务可能在登记前就已运行
+        state.scheduledTasks.add(monitored);
+        ScheduledFuture<?> future;
+        try {
+            future = loop.schedule(monitored, delay, unit);
+        } catch (RejectedExecutionException e) {
+            state.scheduledTasks.remove(monitored);
+            throw e;
+        }
+        monitored.future = future;
+        future.addListener(monitored);
+        return future;
+    }
+
+    /**
+     * Stalls seen so far, over all loops.
+     */
+    public long stalls() {
+        long stalls = 0;
+        for (LoopState state : states) {
+            stalls += state.stalls.get();
+        }
+        return stalls;
+    }
+
+    /**
+     * Prints a table with one line per event loop; times in microseconds,
+     * counted since the monitor was created.
+     */
+    public void print(PrintStream out) {
+        out.printf("%-28s%8s%10s%10s%10s%8s%10s%10s%10s%9s%9s%8s%n", "loop", "probes", "delay p50", "p99", "max",
+                "tasks", "queue p99", "run p99", "run max", "pending", "max", "stalls");
+        for (LoopState state : states) {
+            Histogram probes;
+            Histogram queue;
+            Histogram run;
+            synchronized (state) {
+                probes = state.probeDelay();
+                queue = state.taskQueueDelay();
+                run = state.taskRunTime();
+            }
+            out.printf("%-28s%,8d%,10d%,10d%,10d%,8d%,10d%,10d%,10d%,9d%,9d%,8d%n", state.name(),
+                    probes.getTotalCount(), micros(probes.getValueAtPercentile(50)),
+                    micros(probes.getValueAtPercentile(99)), micros(probes.getMaxValue()), run.getTotalCount(),
+                    micros(queue.getValueAtPercentile(99)), micros(run.getValueAtPercentile(99)),
+                    micros(run.getMaxValue()), state.pendingTasks, state.maxPendingTasks, state.stalls.get());
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private void watch() {
+        while (!closed) {
+            long now = System.nanoTime();
+            for (LoopState state : states) {
+                state.check(now);
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(probeIntervalNanos);
+            } catch (InterruptedException e) {
+                // close()唤醒，循环条件决定是否退出
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread; the loops themselves are not touched.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        watchdog.interrupt();
+        try {
+            watchdog.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class LoopState implements Runnable {
+        final EventExecutor loop;
+        final Recorder probeDelay = new Recorder(2);
+        final Recorder taskQueueDelay = new Recorder(2);
+        final Recorder taskRunTime = new Recorder(2);
+        private final Histogram probeDelayTotal = new Histogram(2);
+        private final Histogram taskQueueDelayTotal = new Histogram(2);
+        private final Histogram taskRunTimeTotal = new Histogram(2);
+        final AtomicLong stalls = new AtomicLong();
+        // 在事件循环线程上写入
+        volatile Thread thread;
+        volatile int pendingTasks;
+        volatile int maxPendingTasks;
+        // 已提交尚未开始的监控任务，事件循环卡住时也能读
+        final AtomicInteger waitingTasks = new AtomicInteger();
+        // schedule()的任务在到期前不算等待，汇报时才检查是否到期
+        final Set<MonitoredTask> scheduledTasks =
+                Collections.newSetFromMap(new ConcurrentHashMap<MonitoredTask, Boolean>());
+        // 监视线程提交探测时置位，探测运行后清除
+        volatile boolean probePending;
+        volatile long probeSubmitted;
+        volatile long lastProbeDelay;
+        // 只由监视线程访问
+        private boolean stallReported;
+
+        LoopState(EventExecutor loop) {
+            this.loop = loop;
+        }
+
+        String name() {
+            Thread thread = this.thread;
+            return thread != null ? thread.getName() : loop.toString();
+        }
+
+        /**
+         * The probe, runs on the loop.
+         */
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            if (loop instanceof SingleThreadEventExecutor) {
+                int pending = ((SingleThreadEventExecutor) loop).pendingTasks();
+                pendingTasks = pending;
+                if (pending > maxPendingTasks) {
+                    maxPendingTasks = pending;
+                }
+            }
+            long delay = System.nanoTime() - probeSubmitted;
+            probeDelay.recordValue(delay);
+            lastProbeDelay = delay;
+            probePending = false;
+        }
+
+        /**
+         * Runs on the monitor thread once per probe interval.
+         */
+        void check(long now) {
+            if (loop.isShuttingDown()) {
+                return;
+            }
+            if (probePending) {
+                long waited = now - probeSubmitted;
+                if (!stallReported && waited >= stallThresholdNanos) {
+                    stallReported = true;
+                    stalls.incrementAndGet();
+                    reportStall(now, waited);
+                }
+                return;
+            }
+            if (stallReported) {
+                stallReported = false;
+                out.println("Event loop " + name() + " is back after " +
+                        TimeUnit.NANOSECONDS.toMillis(lastProbeDelay) + " ms");
+            }
+            probeSubmitted = now;
+            probePending = true;
+            try {
+                loop.execute(this);
+            } catch (RejectedExecutionException e) {
+                // 事件循环正在关闭
+                probePending = false;
+            }
+        }
+
+        /**
+         * Monitored tasks that could run now: executed ones and due
+         * scheduled ones that have neither started nor been cancelled.
+         */
+        int waitingTasks(long now) {
+            int waiting = waitingTasks.get();
+            for (MonitoredTask task : scheduledTasks) {
+                // 取消的通知要在事件循环上执行，卡住时还没送到
+                if (task.due - now <= 0 && !task.isCancelled()) {
+                    waiting++;
+                }
+            }
+            return waiting;
+        }
+
+        private void reportStall(long now, long waited) {
+            Thread thread = this.thread;
+            StringBuilder report = new StringBuilder("Event loop ").append(name()).append(" stalled for ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(waited)).append(" ms, ").append(waitingTasks(now))
+                    .append(" monitored tasks waiting:");
+            if (thread == null) {
+                report.append(" (thread not known yet)");
+            } else {
+                for (StackTraceElement element : thread.getStackTrace()) {
+                    report.append("\n\tat ").append(element);
+                }
+            }
+            out.println(report);
+        }
+
+        // 以下方法在print()中持有this锁调用
+        Histogram probeDelay() {
+            probeDelayTotal.add(probeDelay.getIntervalHistogram());
+            return probeDelayTotal;
+        }
+
+        Histogram taskQueueDelay() {
+            taskQueueDelayTotal.add(taskQueueDelay.getIntervalHistogram());
+            return taskQueueDelayTotal;
+        }
+
+        Histogram taskRunTime() {
+            taskRunTimeTotal.add(taskRunTime.getIntervalHistogram());
+            return taskRunTimeTotal;
+        }
+    }
+
+    private static final class MonitoredTask implements Runnable, GenericFutureListener<Future<Object>> {
+        private final LoopState state;
+        private final Runnable task;
+        // execute()的提交时间或schedule()的到期时间
+        final long due;
+        private final boolean scheduled;
+        volatile ScheduledFuture<?> future;
+
+        MonitoredTask(LoopState state, Runnable task, long due, boolean scheduled) {
+            this.state = state;
+            this.task = task;
+            this.due = due;
+            this.scheduled = scheduled;
+        }
+
+        boolean isCancelled() {
+            ScheduledFuture<?> future = this.future;
+            return future != null && future.isCancelled();
+        }
+
+        /**
+         * A scheduled task completed or was cancelled.
+         */
+        @Override
+        public void operationComplete(Future<Object> future) {
+            state.scheduledTasks.remove(this);
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            if (scheduled) {
+                state.scheduledTasks.remove(this);
+            } else {
+                state.waitingTasks.decrementAndGet();
+            }
+            if (state.thread == null) {
+                // 事件循环的线程在第一个任务提交时才启动，可能先于探测运行
+                state.thread = Thread.currentThread();
+            }
+            state.taskQueueDelay.recordValue(Math.max(0, start - due));
+            try {
+                task.run();
+            } finally {
+                state.taskRunTime.recordValue(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package nia.chapter7;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The worker pool and the metrics shared by the {@link OffloadHandler}s of
+ * all channels: work that would block an event loop, e.g. a database call,
+ * runs on a fixed number of worker threads instead. A channel's messages
+ * are processed one at a time and in order; a channel with
+ * {@code maxQueuedPerChannel} messages waiting stops reading until half of
+ * them are processed.
+ *
+ * The metrics count from creation on:
+ * <ul>
+ *   <li>queue depth: the messages of a channel waiting, including the one
+ *       just read, recorded at every read,</li>
+ *   <li>wait time: from the read until a worker picks the message up,</li>
+ *   <li>process time on the worker,</li>
+ *   <li>messages waiting now over all channels, and how often a channel was
+ *       paused.</li>
+ * </ul>
+ */
+public final class OffloadExecutor implements Closeable {
+    public static final int DEFAULT_MAX_QUEUED_PER_CHANNEL = 64;
+
+    private final ExecutorService workers;
+    private final int maxQueuedPerChannel;
+    final Recorder queueDepth = new Recorder(2);
+    final Recorder waitTime = new Recorder(2);
+    final Recorder processTime = new Recorder(2);
+    final AtomicLong queued = new AtomicLong();
+    final AtomicLong pauses = new AtomicLong();
+    private final Histogram queueDepthTotal = new Histogram(2);
+    private final Histogram waitTimeTotal = new Histogram(2);
+    private final Histogram processTimeTotal = new Histogram(2);
+
+    public OffloadExecutor(int workerThreads) {
+        this(workerThreads, DEFAULT_MAX_QUEUED_PER_CHANNEL);
+    }
+
+    public OffloadExecutor(int workerThreads, int maxQueuedPerChannel) {
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("workerThreads: " + workerThreads + " (expected: > 0)");
+        }
+        if (maxQueuedPerChannel <= 0) {
+            throw new IllegalArgumentException("maxQueuedPerChannel: " + maxQueuedPerChannel + " (expected: > 0)");
+        }
+        // 每个Channel同一时刻最多一个任务在线程池的队列里，队列长度以连接数为上限
+        workers = Executors.newFixedThreadPool(workerThreads, new DefaultThreadFactory("offload", true));
+        this.maxQueuedPerChannel = maxQueuedPerChannel;
+    }
+
+    ExecutorService workers() {
+        return workers;
+    }
+
+    public int maxQueuedPerChannel() {
+        return maxQueuedPerChannel;
+    }
+
+    /**
+     * Messages read but not picked up by a worker yet, over all channels.
+     */
+    public long queuedMessages() {
+        return queued.get();
+    }
+
+    /**
+     * How often a channel stopped reading because its queue was full.
+     */
+    public long pauses() {
+        return pauses.get();
+    }
+
+    public synchronized Histogram queueDepth() {
+        queueDepthTotal.add(queueDepth.getIntervalHistogram());
+        return queueDepthTotal;
+    }
+
+    /**
+     * In nanoseconds.
+     */
+    public synchronized Histogram waitTime() {
+        waitTimeTotal.add(waitTime.getIntervalHistogram());
+        return waitTimeTotal;
+    }
+
+    /**
+     * In nanoseconds.
+     */
+    public synchronized Histogram processTime() {
+        processTimeTotal.add(processTime.getIntervalHistogram());
+        return processTimeTotal;
+    }
+
+    public void print(PrintStream out) {
+        Histogram depth = queueDepth();
+        Histogram wait = waitTime();
+        Histogram process = processTime();
+        out.printf("%,d messages, %,d queued now, %,d pauses%n", process.getTotalCount(), queuedMessages(),
+                pauses());
+        out.printf("queue depth  p50 %,d  p99 %,d  max %,d%n", depth.getValueAtPercentile(50),
+                depth.getValueAtPercentile(99), depth.getMaxValue());
+        out.printf("wait us      p50 %,d  p99 %,d  max %,d%n", micros(wait.getValueAtPercentile(50)),
+                micros(wait.getValueAtPercentile(99)), micros(wait.getMaxValue()));
+        out.printf("process us   p50 %,d  p99 %,d  max %,d%n", micros(process.getValueAtPercentile(50)),
+                micros(process.getValueAtPercentile(99)), micros(process.getMaxValue()));
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Stops the worker threads once the messages already handed to them
+     * are processed.
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,258 @@
+package nia.chapter7;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Moves the processing of the messages read from a channel off the event
+ * loop, onto the workers of an {@link OffloadExecutor}, so a blocking call
+ * stalls one channel instead of all channels of the loop. Add it, one per
+ * channel, after the decoders:
+ * <pre>
+ *   pipeline.addLast(new OffloadHandler&lt;Request&gt;(offload, new OffloadHandler.Worker&lt;Request&gt;() {
+ *       public void process(Channel channel, Request request, List&lt;Object&gt; out) {
+ *           out.add(database.query(request));
+ *       }
+ *   }));
+ * </pre>
+ * <ul>
+ *   <li>Order: at most one worker processes the channel's messages at a
+ *       time, in the order they were read. After a few messages the worker
+ *       moves on, so a busy channel cannot keep a worker to itself.</li>
+ *   <li>Backpressure: once {@code maxQueuedPerChannel} messages wait,
+ *       {@code autoRead} is turned off; it is turned on again when half of
+ *       them are processed. The messages of the read in progress still
+ *       arrive, so the queue can grow a little beyond the limit.</li>
+ *   <li>Writes: what the worker adds to {@code out} is written from this
+ *       handler on the event loop, one task and one flush per batch of
+ *       processed messages. Writes use the void promise, a failed write
+ *       fires {@code exceptionCaught}.</li>
+ * </ul>
+ * Messages are released after processing; a failing worker fires
+ * {@code exceptionCaught} and processing continues with the next message.
+ * Messages still waiting when the channel closes are released unprocessed.
+ */
+public class OffloadHandler<I> extends ChannelInboundHandlerAdapter {
+    // 一次最多处理这么多条，然后把线程让给其他Channel
+    private static final int MAX_MESSAGES_PER_RUN = 16;
+
+    private final OffloadExecutor offload;
+    private final Worker<I> worker;
+    private final int resumeDepth;
+    // inbound、running、paused和resumeScheduled由lock保护
+    private final Object lock = new Object();
+    private final ArrayDeque<Pending> inbound = new ArrayDeque<Pending>();
+    private boolean running;
+    private boolean paused;
+    private boolean resumeScheduled;
+    private ChannelHandlerContext ctx;
+    private volatile boolean closed;
+
+    /**
+     * Processes the messages of one channel on a worker thread.
+     */
+    public interface Worker<I> {
+        /**
+         * Adds the messages to write back, if any, to {@code out}.
+         */
+        void process(Channel channel, I msg, List<Object> out) throws Exception;
+    }
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private final Runnable resume = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (lock) {
+                resumeScheduled = false;
+                if (!paused) {
+                    return;
+                }
+                paused = false;
+            }
+            ctx.channel().config().setAutoRead(true);
+        }
+    };
+
+    public OffloadHandler(OffloadExecutor offload, Worker<I> worker) {
+        if (offload == null) {
+            throw new NullPointerException("offload");
+        }
+        if (worker == null) {
+            throw new NullPointerException("worker");
+        }
+        this.offload = offload;
+        this.worker = worker;
+        resumeDepth = offload.maxQueuedPerChannel() / 2;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        ChannelConfig config = ctx.channel().config();
+        boolean autoRead = config.isAutoRead();
+        int depth;
+        boolean start;
+        boolean pause = false;
+        synchronized (lock) {
+            inbound.add(new Pending(msg, System.nanoTime()));
+            depth = inbound.size();
+            start = !running;
+            running = true;
+            // 在锁内决定暂停，worker随后一定能看到paused并安排恢复
+            if (depth >= offload.maxQueuedPerChannel() && !paused && autoRead) {
+                paused = true;
+                pause = true;
+            }
+        }
+        offload.queued.incrementAndGet();
+        offload.queueDepth.recordValue(depth);
+        if (pause) {
+            offload.pauses.incrementAndGet();
+            // 恢复任务也在事件循环上执行，必然在这之后
+            config.setAutoRead(false);
+        }
+        if (start) {
+            submit();
+        }
+    }
+
+    private void submit() {
+        try {
+            offload.workers().execute(drain);
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭，这个Channel没法再处理了
+            ctx.fireExceptionCaught(e);
+            ctx.close();
+            discard();
+        }
+    }
+
+    /**
+     * Runs on a worker thread.
+     */
+    private void drain() {
+        List<Object> out = new ArrayList<Object>();
+        boolean more = true;
+        for (int i = 0; i < MAX_MESSAGES_PER_RUN; i++) {
+            Pending pending;
+            boolean resume;
+            synchronized (lock) {
+                pending = inbound.poll();
+                resume = paused && !resumeScheduled && inbound.size() <= resumeDepth;
+                if (resume) {
+                    resumeScheduled = true;
+                }
+                if (pending == null) {
+                    running = false;
+                    more = false;
+                }
+            }
+            if (resume) {
+                scheduleResume();
+            }
+            if (pending == null) {
+                break;
+            }
+            long start = System.nanoTime();
+            offload.queued.decrementAndGet();
+            offload.waitTime.recordValue(start - pending.readTime);
+            process(pending.msg, out);
+            offload.processTime.recordValue(System.nanoTime() - start);
+        }
+        if (!out.isEmpty()) {
+            writeBack(out);
+        }
+        if (more) {
+            submit();
+        }
+    }
+
+    private void scheduleResume() {
+        try {
+            ctx.channel().eventLoop().execute(resume);
+        } catch (RejectedExecutionException e) {
+            // 事件循环已关闭，Channel也不会再读了
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void process(Object msg, List<Object> out) {
+        try {
+            if (!closed) {
+                worker.process(ctx.channel(), (I) msg, out);
+            }
+        } catch (Throwable cause) {
+            ctx.fireExceptionCaught(cause);
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    private void writeBack(final List<Object> out) {
+        ctx.channel().eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!ctx.channel().isActive()) {
+                    for (Object msg : out) {
+                        ReferenceCountUtil.release(msg);
+                    }
+                    return;
+                }
+                for (Object msg : out) {
+                    ctx.write(msg, ctx.voidPromise());
+                }
+                ctx.flush();
+            }
+        });
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        closed = true;
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        closed = true;
+    }
+
+    private void discard() {
+        synchronized (lock) {
+            Pending pending;
+            while ((pending = inbound.poll()) != null) {
+                offload.queued.decrementAndGet();
+                ReferenceCountUtil.release(pending.msg);
+            }
+            running = false;
+        }
+    }
+
+    private static final class Pending {
+        final Object msg;
+        final long readTime;
+
+        Pending(Object msg, long readTime) {
+            this.msg = msg;
+            this.readTime = readTime;
+        }
+    }
+}
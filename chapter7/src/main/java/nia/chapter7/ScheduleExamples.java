@@ -1,6 +1,9 @@
 package nia.chapter7;
 
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioSocketChannel;
 
 import java.util.concurrent.Executors;
@@ -98,4 +101,58 @@ public class ScheduleExamples {
         // 通过Channel绑定的EventLoop执行任务
         ch.eventLoop().execute(() -> System.out.println("execute task"));
     }
+
+    /**
+     * A per-connection timeout on a {@link TimeoutService}, created once and
+     * re-armed instead of canceling and scheduling a new task
+     * */
+    public static void timeoutViaTimingWheel(TimeoutService timeouts) {
+        final Channel ch = CHANNEL_FROM_SOMEWHERE; // get reference from somewhere
+        final TimingWheel.Timeout timeout = timeouts.newTimeout(ch, new Runnable() {
+            @Override
+            public void run() {
+                System.out.println("No request for 60 seconds");
+                ch.close();
+            }
+        });
+        timeout.arm(60, TimeUnit.SECONDS);
+        // 每收到一个请求重新计时，O(1)且不分配对象
+        timeout.arm(60, TimeUnit.SECONDS);
+        // 连接关闭时取消
+        timeout.cancel();
+    }
+
+    /**
+     * Tasks submitted through an {@link EventLoopMonitor}, one of which blocks
+     * its event loop
+     * */
+    public static void executeMonitored() throws InterruptedException {
+        EventLoopGroup group = new NioEventLoopGroup(2);
+        EventLoopMonitor monitor = new EventLoopMonitor(group);
+        try {
+            EventLoop loop = group.next();
+            monitor.execute(loop, new Runnable() {
+                @Override
+                public void run() {
+                    System.out.println("execute task");
+                }
+            });
+            // 任务中的阻塞调用：超过阈值后监视器打印事件循环线程的栈
+            monitor.execute(loop, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            Thread.sleep(1500);
+            monitor.print(System.out);
+        } finally {
+            monitor.close();
+            group.shutdownGracefully();
+        }
+    }
 }
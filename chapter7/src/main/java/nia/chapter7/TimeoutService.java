@@ -0,0 +1,102 @@
+package nia.chapter7;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+import java.io.Closeable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-connection deadlines for millions of connections: one
+ * {@link TimingWheel} per event loop of a group, so a channel's timeouts
+ * live on its own loop and need neither locks nor a timer thread. Compared
+ * with {@code ch.eventLoop().schedule()} (Listing 7.3) a timeout is created
+ * once per connection and re-armed for free; the price is a resolution of
+ * one tick.
+ * <pre>
+ *   TimeoutService timeouts = new TimeoutService(group);
+ *   TimingWheel.Timeout idle = timeouts.newTimeout(ch, closeTask);
+ *   idle.arm(30, TimeUnit.SECONDS);  // again on every read
+ * </pre>
+ * See {@link DeadlineHandler} for read, write and request deadlines.
+ */
+public final class TimeoutService implements Closeable {
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    // 100ms一个tick，一圈约51秒，常见的超时一圈之内到期
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    // 构造后只读
+    private final Map<EventExecutor, TimingWheel> wheels = new IdentityHashMap<EventExecutor, TimingWheel>();
+
+    public TimeoutService(EventExecutorGroup group) {
+        this(group, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    /**
+     * @param ticksPerWheel rounded up to a power of two; timeouts longer than
+     *        a turn of the wheel are visited once per turn until they expire
+     */
+    public TimeoutService(EventExecutorGroup group, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        this(group, tickDuration, unit, ticksPerWheel, TimingWheel.Clock.SYSTEM);
+    }
+
+    /**
+     * @param clock decides which ticks are due; the wheels are still
+     *        advanced by a task scheduled every {@code tickDuration} of real
+     *        time
+     */
+    public TimeoutService(EventExecutorGroup group, long tickDuration, TimeUnit unit, int ticksPerWheel,
+        TimingWheel.Clock clock) {
+        if (group == null) {
+            throw new NullPointerException("group");
+        }
+        if (clock == null) {
+            throw new NullPointerException("clock");
+        }
+        for (EventExecutor loop : group) {
+            wheels.put(loop, new TimingWheel(loop, tickDuration, unit, ticksPerWheel, clock));
+        }
+    }
+
+    /**
+     * The wheel of {@code loop}, which must belong to the group.
+     */
+    public TimingWheel wheel(EventExecutor loop) {
+        TimingWheel wheel = wheels.get(loop);
+        if (wheel == null) {
+            throw new IllegalArgumentException(loop + " is not an event loop of this service's group");
+        }
+        return wheel;
+    }
+
+    /**
+     * A new timeout on the wheel of {@code channel}'s event loop.
+     */
+    public TimingWheel.Timeout newTimeout(Channel channel, Runnable task) {
+        return wheel(channel.eventLoop()).newTimeout(task);
+    }
+
+    /**
+     * Stops all wheels; armed timeouts do not fire any more and arming a
+     * timeout does nothing.
+     */
+    @Override
+    public void close() {
+        for (final TimingWheel wheel : wheels.values()) {
+            try {
+                wheel.loop().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        wheel.stop();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 事件循环已经关闭，轮子也不会再转了
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package nia.chapter7;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timing wheel owned by one event loop, see {@link TimeoutService}.
+ * A {@link Timeout} sits in the bucket of its deadline tick, in a doubly
+ * linked list, so arming, re-arming and canceling it are O(1) and allocate
+ * nothing. {@code EventLoop.schedule()} allocates a new future every time
+ * and keeps it in a {@code java.util.PriorityQueue}: O(log n) per insert,
+ * and in Netty 4.1.12 O(n) per cancel, which searches the queue. One task
+ * scheduled on the loop at a fixed rate advances the wheel and runs the
+ * expired timeouts. Timeouts never fire early and at most one tick, plus
+ * however long the loop was busy, late.
+ *
+ * All methods are meant to be called on the loop; calls from other threads
+ * are handed to it.
+ */
+public final class TimingWheel {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(TimingWheel.class);
+
+    private final EventExecutor loop;
+    private final Clock clock;
+    private final long tickNanos;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final long startNanos;
+    // 到这个tick为止的桶都已处理过
+    private long expiredTick;
+    private int size;
+    private ScheduledFuture<?> ticker;
+    private boolean stopped;
+
+    /**
+     * The time the wheels go by; {@link #SYSTEM} except in tests, which step
+     * it by hand.
+     */
+    public interface Clock {
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+        };
+
+        long nanoTime();
+    }
+
+    TimingWheel(EventExecutor loop, long tickDuration, TimeUnit unit, int ticksPerWheel, Clock clock) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration: " + tickDuration + " (expected: > 0)");
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30) {
+            throw new IllegalArgumentException("ticksPerWheel: " + ticksPerWheel + " (expected: 1 - 2^30)");
+        }
+        this.loop = loop;
+        this.clock = clock;
+        startNanos = clock.nanoTime();
+        tickNanos = unit.toNanos(tickDuration);
+        int n = 1;
+        while (n < ticksPerWheel) {
+            n <<= 1;
+        }
+        buckets = new Timeout[n];
+        mask = n - 1;
+    }
+
+    public EventExecutor loop() {
+        return loop;
+    }
+
+    /**
+     * A new timeout that runs {@code task} on the loop when it expires; it
+     * is not armed yet and can be armed again and again.
+     */
+    public Timeout newTimeout(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        return new Timeout(this, task);
+    }
+
+    /**
+     * Armed timeouts; only exact on the loop.
+     */
+    public int size() {
+        return size;
+    }
+
+    private long tickOf(long nanos) {
+        return (nanos - startNanos) / tickNanos;
+    }
+
+    void arm(Timeout timeout, long delayNanos) {
+        if (stopped) {
+            // 服务关闭后Channel可能还在读写，不再计时就是了
+            return;
+        }
+        if (ticker == null) {
+            startTicker();
+        }
+        // 向上取整，保证不会提前到期
+        long deadline = (clock.nanoTime() + Math.max(0, delayNanos) - startNanos + tickNanos - 1) / tickNanos;
+        if (deadline <= expiredTick) {
+            deadline = expiredTick + 1;
+        }
+        if (timeout.armed) {
+            if (timeout.deadlineTick == deadline) {
+                return;
+            }
+            if (!timeout.walking) {
+                unlink(timeout);
+            }
+        } else {
+            size++;
+        }
+        timeout.armed = true;
+        timeout.deadlineTick = deadline;
+        // 正在被tick()遍历的超时由tick()放回桶里
+        if (!timeout.walking) {
+            link(timeout);
+        }
+    }
+
+    void cancel(Timeout timeout) {
+        if (!timeout.armed) {
+            return;
+        }
+        timeout.armed = false;
+        size--;
+        if (!timeout.walking) {
+            unlink(timeout);
+        }
+    }
+
+    private void link(Timeout timeout) {
+        int index = (int) (timeout.deadlineTick & mask);
+        Timeout head = buckets[index];
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        buckets[index] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        Timeout prev = timeout.prev;
+        Timeout next = timeout.next;
+        if (prev == null) {
+            buckets[(int) (timeout.deadlineTick & mask)] = next;
+        } else {
+            prev.next = next;
+        }
+        if (next != null) {
+            next.prev = prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    private void startTicker() {
+        // 轮子可能空闲了很久，从现在开始，第一次tick不必补上之前的tick
+        expiredTick = tickOf(clock.nanoTime());
+        ticker = loop.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void tick() {
+        long now = tickOf(clock.nanoTime());
+        // 事件循环卡住过的话，一次补上错过的所有tick
+        while (expiredTick < now) {
+            expiredTick++;
+            expire((int) (expiredTick & mask));
+        }
+    }
+
+    /**
+     * Runs the due timeouts of a bucket and puts the others back. The whole
+     * list is taken out first: the tasks may arm and cancel any timeout,
+     * including the ones still to be visited.
+     */
+    private void expire(int index) {
+        Timeout timeout = buckets[index];
+        buckets[index] = null;
+        for (Timeout t = timeout; t != null; t = t.next) {
+            t.walking = true;
+        }
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.walking = false;
+            if (timeout.armed) {
+                if (timeout.deadlineTick <= expiredTick) {
+                    timeout.armed = false;
+                    size--;
+                    run(timeout.task);
+                } else {
+                    // 后面几圈才到期，或者刚被重新设置
+                    link(timeout);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable cause) {
+            logger.warn("A timeout task threw an exception: " + task, cause);
+        }
+    }
+
+    void stop() {
+        stopped = true;
+        if (ticker != null) {
+            ticker.cancel(false);
+        }
+    }
+
+    /**
+     * A reusable deadline, e.g. one per connection and kind of timeout.
+     */
+    public static final class Timeout {
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private Timeout prev;
+        private Timeout next;
+        private long deadlineTick;
+        private boolean armed;
+        private boolean walking;
+
+        Timeout(TimingWheel wheel, Runnable task) {
+            this.wheel = wheel;
+            this.task = task;
+        }
+
+        /**
+         * Sets the deadline to {@code delay} from now, whether or not it was
+         * armed before. Does nothing once the service is closed.
+         */
+        public void arm(final long delay, final TimeUnit unit) {
+            if (wheel.loop.inEventLoop()) {
+                wheel.arm(this, unit.toNanos(delay));
+            } else {
+                wheel.loop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        wheel.arm(Timeout.this, unit.toNanos(delay));
+                    }
+                });
+            }
+        }
+
+        public void cancel() {
+            if (wheel.loop.inEventLoop()) {
+                wheel.cancel(this);
+            } else {
+                wheel.loop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        wheel.cancel(Timeout.this);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Whether the timeout is armed and has not expired yet; only exact
+         * on the loop.
+         */
+        public boolean isArmed() {
+            return armed;
+        }
+    }
+}
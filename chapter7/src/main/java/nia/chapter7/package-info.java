@@ -10,5 +10,14 @@
  * Listing 7.4 Scheduling a recurring task with EventLoop {@link nia.chapter7.ScheduleExamples#scheduleFixedViaEventLoop()}
  *
  * Listing 7.5 Canceling a task using ScheduledFuture {@link nia.chapter7.ScheduleExamples#cancelingTaskUsingScheduledFuture()}
+ *
+ * Per-connection timeouts on a timing wheel per event loop {@link nia.chapter7.TimeoutService},
+ * {@link nia.chapter7.DeadlineHandler}, {@link nia.chapter7.ScheduleExamples#timeoutViaTimingWheel}
+ *
+ * Processing messages off the event loop, in order per channel {@link nia.chapter7.OffloadHandler},
+ * {@link nia.chapter7.OffloadExecutor}
+ *
+ * Watching event loops for blocked tasks {@link nia.chapter7.EventLoopMonitor},
+ * {@link nia.chapter7.ScheduleExamples#executeMonitored()}
  */
 package nia.chapter7;
\ No newline at end of file
@@ -0,0 +1,192 @@
+package nia.test.chapter7;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import nia.chapter7.OffloadExecutor;
+import nia.chapter7.OffloadHandler;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs an {@link OffloadHandler} on the local transport. The workers hand
+ * tasks to the event loop from their own threads, which the event loop of
+ * an {@code EmbeddedChannel} does not support, so the tests use a real one.
+ */
+public class OffloadHandlerTest {
+    private static final LocalAddress ADDRESS = new LocalAddress("offload-handler-test");
+
+    private final EventLoopGroup group = new DefaultEventLoopGroup(2);
+    private final List<Channel> serverChannels = new ArrayList<Channel>();
+    private final CountDownLatch inactive = new CountDownLatch(1);
+    private OffloadExecutor offload;
+    private Channel server;
+
+    @After
+    public void close() throws InterruptedException {
+        if (server != null) {
+            server.close().sync();
+        }
+        group.shutdownGracefully().sync();
+        if (offload != null) {
+            offload.close();
+        }
+    }
+
+    /**
+     * Starts a server with {@code worker} behind an {@link OffloadHandler}
+     * and connects a client with {@code clientHandler}.
+     */
+    private Channel connect(final OffloadHandler.Worker<Object> worker, ChannelHandler clientHandler)
+        throws InterruptedException {
+        server = new ServerBootstrap()
+                .group(group)
+                .channel(LocalServerChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        synchronized (serverChannels) {
+                            serverChannels.add(ch);
+                        }
+                        ch.pipeline().addLast(new OffloadHandler<Object>(offload, worker));
+                        // closeFuture完成时channelInactive还没传到OffloadHandler
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelInactive(ChannelHandlerContext ctx) {
+                                inactive.countDown();
+                            }
+                        });
+                    }
+                })
+                .bind(ADDRESS).sync().channel();
+        return new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .handler(clientHandler)
+                .connect(ADDRESS).sync().channel();
+    }
+
+    private static void awaitEquals(long expected, AtomicInteger actual) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (actual.get() != expected && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(expected, actual.get());
+    }
+
+    @Test
+    public void keepsOrderAndWritesBack() throws Exception {
+        offload = new OffloadExecutor(4);
+        final int messages = 10000;
+        final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+        Channel client = connect(new OffloadHandler.Worker<Object>() {
+            @Override
+            public void process(Channel channel, Object msg, List<Object> out) {
+                out.add(msg);
+            }
+        }, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                received.add(msg);
+            }
+        });
+        for (int i = 0; i < messages; i++) {
+            client.write(i);
+        }
+        client.flush();
+        for (int i = 0; i < messages; i++) {
+            assertEquals(i, received.poll(10, TimeUnit.SECONDS));
+        }
+        client.close().sync();
+    }
+
+    @Test
+    public void resumesReadingWithOneQueuedMessage() throws Exception {
+        // 最容易丢失恢复的情况：worker几乎立即处理完唯一的一条消息
+        offload = new OffloadExecutor(2, 1);
+        final int messages = 2000;
+        final AtomicInteger processed = new AtomicInteger();
+        Channel client = connect(new OffloadHandler.Worker<Object>() {
+            @Override
+            public void process(Channel channel, Object msg, List<Object> out) {
+                processed.incrementAndGet();
+            }
+        }, new ChannelInboundHandlerAdapter());
+        for (int i = 0; i < messages; i++) {
+            client.writeAndFlush(i);
+        }
+        awaitEquals(messages, processed);
+        assertTrue(offload.pauses() > 0);
+        Channel child;
+        synchronized (serverChannels) {
+            child = serverChannels.get(0);
+        }
+        // 最后一次恢复在事件循环上执行
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!child.config().isAutoRead() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertTrue(child.config().isAutoRead());
+        assertEquals(0, offload.queuedMessages());
+        client.close().sync();
+    }
+
+    @Test
+    public void releasesQueuedMessagesOnClose() throws Exception {
+        offload = new OffloadExecutor(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final AtomicInteger processed = new AtomicInteger();
+        Channel client = connect(new OffloadHandler.Worker<Object>() {
+            @Override
+            public void process(Channel channel, Object msg, List<Object> out) throws Exception {
+                processed.incrementAndGet();
+                blocked.countDown();
+                unblock.await();
+            }
+        }, new ChannelInboundHandlerAdapter());
+        List<ByteBuf> bufs = new ArrayList<ByteBuf>();
+        for (int i = 0; i < 5; i++) {
+            ByteBuf buf = Unpooled.buffer(4).writeInt(i);
+            bufs.add(buf);
+            client.writeAndFlush(buf.retain());
+        }
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        client.close().sync();
+        assertTrue(inactive.await(10, TimeUnit.SECONDS));
+        unblock.countDown();
+
+        // 只剩测试自己保留的引用
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (ByteBuf buf : bufs) {
+            while (buf.refCnt() > 1 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            assertEquals(1, buf.refCnt());
+            buf.release();
+        }
+        assertEquals(0, offload.queuedMessages());
+        assertEquals(1, processed.get());
+    }
+}
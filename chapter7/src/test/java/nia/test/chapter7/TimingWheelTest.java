@@ -0,0 +1,193 @@
+package nia.test.chapter7;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import nia.chapter7.TimeoutService;
+import nia.chapter7.TimingWheel;
+import nia.chapter7.TimingWheel.Timeout;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives a {@link TimingWheel} on the event loop of an
+ * {@link EmbeddedChannel}: the wheel only ticks when the test runs the
+ * scheduled tasks, so every step in between is a stalled loop. The wheel
+ * reads a clock the test steps by hand, so a slow host does not change
+ * which timeouts are due.
+ */
+public class TimingWheelTest {
+    private final EmbeddedChannel channel = new EmbeddedChannel();
+    private final StepClock clock = new StepClock();
+    private TimeoutService service;
+    private long tickMillis;
+
+    private static final class StepClock implements TimingWheel.Clock {
+        // 不从0开始，顺便确认轮子只用时间差
+        long nanos = TimeUnit.DAYS.toNanos(1);
+
+        @Override
+        public long nanoTime() {
+            return nanos;
+        }
+    }
+
+    @After
+    public void close() {
+        if (service != null) {
+            service.close();
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    private TimingWheel wheel(long tickMillis, int ticksPerWheel) {
+        this.tickMillis = tickMillis;
+        service = new TimeoutService(channel.eventLoop(), tickMillis, TimeUnit.MILLISECONDS, ticksPerWheel,
+                clock);
+        return service.wheel(channel.eventLoop());
+    }
+
+    /**
+     * Moves the clock by {@code millis} and runs the ticker once the real
+     * time it is scheduled at has passed; sleeping longer does no harm.
+     */
+    private void advance(long millis) throws InterruptedException {
+        clock.nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        TimeUnit.MILLISECONDS.sleep(tickMillis + 1);
+        channel.runScheduledPendingTasks();
+    }
+
+    @Test
+    public void reArmInsideTask() throws Exception {
+        TimingWheel wheel = wheel(10, 8);
+        final int[] runs = new int[1];
+        final Timeout[] self = new Timeout[1];
+        self[0] = wheel.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                if (++runs[0] < 3) {
+                    self[0].arm(10, TimeUnit.MILLISECONDS);
+                }
+            }
+        });
+        self[0].arm(10, TimeUnit.MILLISECONDS);
+        for (int i = 1; i <= 3; i++) {
+            advance(30);
+            assertEquals(i, runs[0]);
+        }
+        assertFalse(self[0].isArmed());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancelLaterEntryOfSameBucket() throws Exception {
+        // 只有一个桶，两个超时必然在同一个链表里
+        TimingWheel wheel = wheel(10, 1);
+        final List<String> ran = new ArrayList<String>();
+        final Timeout[] timeouts = new Timeout[2];
+        for (int i = 0; i < 2; i++) {
+            final int self = i;
+            timeouts[i] = wheel.newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    ran.add("t" + self);
+                    timeouts[1 - self].cancel();
+                }
+            });
+        }
+        timeouts[0].arm(0, TimeUnit.MILLISECONDS);
+        timeouts[1].arm(0, TimeUnit.MILLISECONDS);
+        assertEquals(2, wheel.size());
+
+        advance(50);
+        assertEquals(1, ran.size());
+        assertFalse(timeouts[0].isArmed());
+        assertFalse(timeouts[1].isArmed());
+        assertEquals(0, wheel.size());
+        advance(50);
+        assertEquals(1, ran.size());
+    }
+
+    @Test
+    public void reArmLaterEntryOfSameBucket() throws Exception {
+        TimingWheel wheel = wheel(10, 1);
+        final List<String> ran = new ArrayList<String>();
+        final Timeout[] timeouts = new Timeout[2];
+        for (int i = 0; i < 2; i++) {
+            final int self = i;
+            timeouts[i] = wheel.newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    ran.add("t" + self);
+                    if (ran.size() == 1) {
+                        timeouts[1 - self].arm(200, TimeUnit.MILLISECONDS);
+                    }
+                }
+            });
+        }
+        timeouts[0].arm(0, TimeUnit.MILLISECONDS);
+        timeouts[1].arm(0, TimeUnit.MILLISECONDS);
+
+        advance(50);
+        assertEquals(1, ran.size());
+        String other = "t0".equals(ran.get(0)) ? "t1" : "t0";
+        assertTrue(timeouts["t0".equals(other) ? 0 : 1].isArmed());
+        assertEquals(1, wheel.size());
+
+        advance(250);
+        assertEquals(Arrays.asList(ran.get(0), other), ran);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void catchUpAfterStall() throws Exception {
+        TimingWheel wheel = wheel(10, 8);
+        final List<Long> fired = new ArrayList<Long>();
+        List<Timeout> timeouts = new ArrayList<Timeout>();
+        // 150ms超过一圈（80ms），第一次补tick时经过它的桶但还没到期
+        for (final long delay : new long[] { 50, 10, 150, 30 }) {
+            Timeout timeout = wheel.newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    fired.add(delay);
+                }
+            });
+            timeout.arm(delay, TimeUnit.MILLISECONDS);
+            timeouts.add(timeout);
+        }
+
+        advance(90);
+        assertEquals(Arrays.asList(10L, 30L, 50L), fired);
+        assertTrue(timeouts.get(2).isArmed());
+        assertEquals(1, wheel.size());
+
+        advance(100);
+        assertEquals(Arrays.asList(10L, 30L, 50L, 150L), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void armAfterCloseDoesNothing() throws Exception {
+        TimingWheel wheel = wheel(10, 8);
+        final int[] runs = new int[1];
+        Timeout timeout = wheel.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                runs[0]++;
+            }
+        });
+        timeout.arm(10, TimeUnit.MILLISECONDS);
+        service.close();
+        channel.runPendingTasks();
+
+        // 例如DeadlineHandler在服务关闭后的每次读写
+        timeout.arm(20, TimeUnit.MILLISECONDS);
+        advance(50);
+        assertEquals(0, runs[0]);
+    }
+}
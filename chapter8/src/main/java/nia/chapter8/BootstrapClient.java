@@ -3,8 +3,7 @@ package nia.chapter8;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import nia.util.Transport;
 
 import java.net.InetSocketAddress;
 
@@ -24,10 +23,11 @@ public class BootstrapClient {
      * Listing 8.1 Bootstrapping a client
      * */
     public void bootstrap() {
-        EventLoopGroup group = new NioEventLoopGroup();
+        Transport transport = Transport.fromSystemProperty();
+        EventLoopGroup group = transport.newEventLoopGroup();
         Bootstrap bootstrap = new Bootstrap();
         bootstrap.group(group)
-                .channel(NioSocketChannel.class)
+                .channel(transport.socketChannel())
                 // 也可以实现ChannelInitializer来设置ChannelPipeline
                 .handler(new SimpleChannelInboundHandler<ByteBuf>() {
                     @Override
@@ -6,9 +6,8 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.AttributeKey;
+import nia.util.Transport;
 
 import java.net.InetSocketAddress;
 
@@ -24,9 +23,10 @@ public class BootstrapClientWithOptionsAndAttrs {
      * */
     public void bootstrap() {
         final AttributeKey<Integer> id = AttributeKey.newInstance("ID");
+        Transport transport = Transport.fromSystemProperty();
         Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(new NioEventLoopGroup())
-            .channel(NioSocketChannel.class)
+        bootstrap.group(transport.newEventLoopGroup())
+            .channel(transport.socketChannel())
             .handler(
                 new SimpleChannelInboundHandler<ByteBuf>() {
                     @Override
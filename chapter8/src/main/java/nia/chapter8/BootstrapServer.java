@@ -6,8 +6,8 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.EventLoopGroup;
+import nia.util.Transport;
 
 import java.net.InetSocketAddress;
 
@@ -23,10 +23,11 @@ public class BootstrapServer {
      * Listing 8.4 Bootstrapping a server
      * */
     public void bootstrap() {
-        NioEventLoopGroup group = new NioEventLoopGroup();
+        Transport transport = Transport.fromSystemProperty();
+        EventLoopGroup group = transport.newEventLoopGroup();
         ServerBootstrap bootstrap = new ServerBootstrap();
         bootstrap.group(group)
-                .channel(NioServerSocketChannel.class)
+                .channel(transport.serverChannel())
                 // 设置ServerChannelHandler，在bootStrap进行bind或者connect时创建，用于给新连接创建子Channel
                 .handler(null)
                 .childHandler(new SimpleChannelInboundHandler<ByteBuf>() {
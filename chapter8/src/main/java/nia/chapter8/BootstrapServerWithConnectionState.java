@@ -0,0 +1,112 @@
+package nia.chapter8;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.util.concurrent.FastThreadLocal;
+import nia.util.LongLongMap;
+import nia.util.LongObjectMap;
+import nia.util.Transport;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-connection state without a {@code ConcurrentHashMap<Channel, ...>}
+ * and without an attribute per value (Listing 8.7): every connection gets a
+ * compact numeric id when it is initialized, and its state lives in
+ * primitive-keyed maps owned by its event loop. A channel never changes its
+ * event loop, so the maps need no locking, and no key is boxed:
+ * <ul>
+ *   <li>{@link LongLongMap} off the heap for counters</li>
+ *   <li>{@link LongObjectMap} for object state</li>
+ * </ul>
+ */
+public class BootstrapServerWithConnectionState {
+    private static final int EXPECTED_CONNECTIONS_PER_LOOP = 64 * 1024;
+
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * The state of the connections of one event loop; only touched by that
+     * loop's thread.
+     */
+    static final class LoopState {
+        final LongLongMap bytesRead = new LongLongMap(EXPECTED_CONNECTIONS_PER_LOOP,
+                LongLongMap.DEFAULT_LOAD_FACTOR, true, 0);
+        final LongObjectMap<SocketAddress> peers =
+                new LongObjectMap<SocketAddress>(EXPECTED_CONNECTIONS_PER_LOOP);
+    }
+
+    private static final FastThreadLocal<LoopState> STATE = new FastThreadLocal<LoopState>() {
+        @Override
+        protected LoopState initialValue() {
+            return new LoopState();
+        }
+
+        @Override
+        protected void onRemoval(LoopState state) {
+            // 事件循环线程退出时立即释放堆外内存
+            state.bytesRead.close();
+        }
+    };
+
+    /**
+     * Keeps its connection's id in a field; one instance per connection.
+     */
+    static final class ConnectionStateHandler extends SimpleChannelInboundHandler<ByteBuf> {
+        private final long id;
+
+        ConnectionStateHandler(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            STATE.get().peers.put(id, ctx.channel().remoteAddress());
+            ctx.fireChannelActive();
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+            STATE.get().bytesRead.add(id, msg.readableBytes());
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            LoopState state = STATE.get();
+            long bytes = state.bytesRead.remove(id);
+            SocketAddress peer = state.peers.remove(id);
+            System.out.println("Connection " + id + " from " + peer + " read " + bytes + " bytes");
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            cause.printStackTrace();
+            ctx.close();
+        }
+    }
+
+    public void bootstrap() {
+        Transport transport = Transport.fromSystemProperty();
+        EventLoopGroup group = transport.newEventLoopGroup();
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(group)
+                .channel(transport.serverChannel())
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new ConnectionStateHandler(nextId.incrementAndGet()));
+                    }
+                });
+        ChannelFuture future = bootstrap.bind(new InetSocketAddress(8080));
+        future.syncUninterruptibly();
+    }
+}
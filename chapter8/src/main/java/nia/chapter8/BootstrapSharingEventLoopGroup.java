@@ -7,9 +7,7 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import nia.util.Transport;
 
 import java.net.InetSocketAddress;
 
@@ -26,10 +24,11 @@ public class BootstrapSharingEventLoopGroup {
      * Listing 8.5 Bootstrapping a server
      */
     public void bootstrap() {
+        final Transport transport = Transport.fromSystemProperty();
         ServerBootstrap bootstrap = new ServerBootstrap();
         // 设置parentGroup及childGroup
-        bootstrap.group(new NioEventLoopGroup(), new NioEventLoopGroup())
-                .channel(NioServerSocketChannel.class)
+        bootstrap.group(transport.newEventLoopGroup(), transport.newEventLoopGroup())
+                .channel(transport.serverChannel())
                 .childHandler(
                         new SimpleChannelInboundHandler<ByteBuf>() {
                             ChannelFuture connectFuture;
@@ -38,7 +37,8 @@ public class BootstrapSharingEventLoopGroup {
                             public void channelActive(ChannelHandlerContext ctx) throws Exception {
                                 // 子channel中创建一个客户端引导bootstrap
                                 Bootstrap bootstrap = new Bootstrap();
-                                bootstrap.channel(NioSocketChannel.class).handler(
+                                // 共享EventLoop时，Channel类型必须与EventLoop的传输一致
+                                bootstrap.channel(transport.socketChannel()).handler(
                                         new SimpleChannelInboundHandler<ByteBuf>() {
                                             @Override
                                             protected void channelRead0(
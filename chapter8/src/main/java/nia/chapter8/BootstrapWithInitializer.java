@@ -2,10 +2,9 @@ package nia.chapter8;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpObjectAggregator;
+import nia.util.Transport;
 
 import java.net.InetSocketAddress;
 
@@ -20,9 +19,10 @@ public class BootstrapWithInitializer {
      * Listing 8.6 Bootstrapping and using ChannelInitializer
      * */
     public void bootstrap() throws InterruptedException {
+        Transport transport = Transport.fromSystemProperty();
         ServerBootstrap bootstrap = new ServerBootstrap();
-        bootstrap.group(new NioEventLoopGroup(), new NioEventLoopGroup())
-            .channel(NioServerSocketChannel.class)
+        bootstrap.group(transport.newEventLoopGroup(), transport.newEventLoopGroup())
+            .channel(transport.serverChannel())
             .childHandler(new ChannelInitializerImpl());
         ChannelFuture future = bootstrap.bind(new InetSocketAddress(8080));
         future.sync();
@@ -3,9 +3,8 @@ package nia.chapter8;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.concurrent.Future;
+import nia.util.Transport;
 
 import java.net.InetSocketAddress;
 
@@ -25,10 +24,11 @@ public class GracefulShutdown {
      * Listing 8.9 Graceful shutdown
      */
     public void bootstrap() {
-        EventLoopGroup group = new NioEventLoopGroup();
+        Transport transport = Transport.fromSystemProperty();
+        EventLoopGroup group = transport.newEventLoopGroup();
         Bootstrap bootstrap = new Bootstrap();
         bootstrap.group(group)
-             .channel(NioSocketChannel.class)
+             .channel(transport.socketChannel())
         //...
              .handler(
                 new SimpleChannelInboundHandler<ByteBuf>() {
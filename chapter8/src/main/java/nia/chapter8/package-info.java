@@ -16,5 +16,7 @@
  * Listing 8.8 Using Bootstrap with DatagramChannel {@link nia.chapter8.BootstrapDatagramChannel#bootstrap()}
  *
  * Listing 8.9 Graceful shutdown {@link nia.chapter8.GracefulShutdown#bootstrap()}
+ *
+ * Per-connection state in primitive-keyed maps {@link nia.chapter8.BootstrapServerWithConnectionState#bootstrap()}
  */
 package nia.chapter8;
\ No newline at end of file
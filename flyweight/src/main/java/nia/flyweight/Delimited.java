@@ -0,0 +1,17 @@
+package nia.flyweight;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A variable-length text field of a {@link Flyweight} schema that ends at
+ * the first occurrence of {@link #value()}, or at the end of the message if
+ * there is none.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface Delimited {
+    char value();
+}
@@ -0,0 +1,30 @@
+package nia.flyweight;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an interface as the schema of a message layout. Each method is a
+ * field, in wire order:
+ * <ul>
+ *   <li>{@code byte}, {@code boolean}, {@code short}, {@code int},
+ *       {@code long}, {@code float} or {@code double}: a big-endian field
+ *       at a fixed offset; these come first</li>
+ *   <li>{@code CharSequence} annotated with {@link Delimited}: UTF-8 text
+ *       up to the delimiter byte</li>
+ *   <li>{@code CharSequence} without annotation: UTF-8 text up to the end
+ *       of the message; only allowed as the last field</li>
+ * </ul>
+ * {@link FlyweightProcessor} generates a class named {@link #value()} in the
+ * same package with getters and setters for these fields.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Flyweight {
+    /**
+     * Simple name of the generated class.
+     */
+    String value();
+}
@@ -0,0 +1,419 @@
+package nia.flyweight;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates the flyweight classes for {@link Flyweight} schemas.
+ *
+ * A generated flyweight holds a {@code ByteBuf}, an offset and a limit and
+ * nothing else, so one instance per channel can be {@code wrap()}ped around
+ * every received message without allocating. Fixed fields are read and
+ * written at constant offsets; the end of each delimited field is searched
+ * for once per message, with {@code nia.util.ByteSearch}, and cached. For
+ * encoding, {@code wrapForEncode()} reserves the fixed fields at the writer
+ * index and the text setters append in schema order; a setter called out of
+ * order throws instead of leaving a delimiter out.
+ */
+@SupportedAnnotationTypes("nia.flyweight.Flyweight")
+public final class FlyweightProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Flyweight.class)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                error(element, "@Flyweight schemas must be interfaces");
+                continue;
+            }
+            TypeElement schema = (TypeElement) element;
+            List<Field> fields = fields(schema);
+            if (fields != null) {
+                generate(schema, schema.getAnnotation(Flyweight.class).value(), fields);
+            }
+        }
+        return true;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * One field of a schema. {@code type} is the primitive type for fixed
+     * fields, {@code null} for text.
+     */
+    private static final class Field {
+        final String name;
+        final TypeKind type;
+        final int offset;
+        final int delimiter;
+
+        Field(String name, TypeKind type, int offset, int delimiter) {
+            this.name = name;
+            this.type = type;
+            this.offset = offset;
+            this.delimiter = delimiter;
+        }
+
+        boolean isFixed() {
+            return type != null;
+        }
+
+        boolean isDelimited() {
+            return delimiter >= 0;
+        }
+    }
+
+    private List<Field> fields(TypeElement schema) {
+        List<Field> fields = new ArrayList<Field>();
+        int offset = 0;
+        boolean text = false;
+        boolean last = false;
+        boolean valid = true;
+        for (ExecutableElement method : ElementFilter.methodsIn(schema.getEnclosedElements())) {
+            String name = method.getSimpleName().toString();
+            TypeMirror type = method.getReturnType();
+            if (!method.getParameters().isEmpty()) {
+                error(method, "schema fields take no parameters");
+                valid = false;
+            } else if (last) {
+                error(method, "no field can follow an undelimited text field");
+                valid = false;
+            } else if (type.getKind().isPrimitive()) {
+                int size = size(type.getKind());
+                if (size == 0) {
+                    error(method, "unsupported field type " + type);
+                    valid = false;
+                } else if (text) {
+                    error(method, "fixed fields must come before text fields");
+                    valid = false;
+                } else {
+                    fields.add(new Field(name, type.getKind(), offset, -1));
+                    offset += size;
+                }
+            } else if ("java.lang.CharSequence".equals(type.toString())) {
+                Delimited delimited = method.getAnnotation(Delimited.class);
+                if (delimited != null && delimited.value() > 0x7f) {
+                    error(method, "delimiter must be an ASCII character");
+                    valid = false;
+                } else {
+                    text = true;
+                    last = delimited == null;
+                    fields.add(new Field(name, null, offset, last ? -1 : delimited.value()));
+                }
+            } else {
+                error(method, "unsupported field type " + type);
+                valid = false;
+            }
+        }
+        return valid ? fields : null;
+    }
+
+    private static int size(TypeKind kind) {
+        switch (kind) {
+            case BYTE:
+            case BOOLEAN:
+                return 1;
+            case SHORT:
+                return 2;
+            case INT:
+            case FLOAT:
+                return 4;
+            case LONG:
+            case DOUBLE:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * The suffix of the {@code ByteBuf} get/set methods for a fixed field.
+     */
+    private static String accessor(TypeKind kind) {
+        switch (kind) {
+            case BYTE:
+            case BOOLEAN:
+                return "Byte";
+            case SHORT:
+                return "Short";
+            case INT:
+                return "Int";
+            case FLOAT:
+                return "Float";
+            case LONG:
+                return "Long";
+            default:
+                return "Double";
+        }
+    }
+
+    private static String constant(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) {
+                sb.append('_');
+            }
+            sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    private void generate(TypeElement schema, String className, List<Field> fields) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(schema);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String qualifiedName = packageName.isEmpty() ? className : packageName + '.' + className;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, schema);
+            Writer writer = file.openWriter();
+            try {
+                write(new PrintWriter(writer), packageName, schema, className, fields);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(schema, "unable to write " + qualifiedName + ": " + e);
+        }
+    }
+
+    private static void write(PrintWriter out, String packageName, TypeElement schema,
+        String className, List<Field> fields) {
+        int fixedLength = 0;
+        for (Field field : fields) {
+            if (field.isFixed()) {
+                fixedLength = field.offset + size(field.type);
+            }
+        }
+        if (!packageName.isEmpty()) {
+            out.println("package " + packageName + ";");
+            out.println();
+        }
+        out.println("import io.netty.buffer.ByteBuf;");
+        out.println("import io.netty.util.CharsetUtil;");
+        out.println("import nia.util.ByteSearch;");
+        out.println();
+        out.println("/**");
+        out.println(" * Flyweight over the layout of {@link " + schema.getSimpleName() + "}.");
+        out.println(" * Generated by " + FlyweightProcessor.class.getName() + ", do not edit.");
+        out.println(" */");
+        out.println("public final class " + className + " {");
+        out.println("    public static final int FIXED_LENGTH = " + fixedLength + ";");
+        for (Field field : fields) {
+            if (field.isFixed()) {
+                out.println("    public static final int " + constant(field.name) + "_OFFSET = " +
+                        field.offset + ";");
+            }
+        }
+        for (Field field : fields) {
+            if (field.isDelimited()) {
+                out.println("    private static final ByteSearch " + constant(field.name) +
+                        "_DELIMITER = ByteSearch.of((byte) " + field.delimiter + ");");
+            }
+        }
+        out.println();
+        out.println("    private ByteBuf buf;");
+        out.println("    private int offset;");
+        out.println("    private int limit;");
+        out.println("    // the text field a setter may append next, -1 unless wrapped for encoding");
+        out.println("    private int nextText;");
+        for (Field field : fields) {
+            if (field.isDelimited()) {
+                out.println("    private int " + field.name + "End;");
+            }
+        }
+        out.println();
+
+        out.println("    public " + className + " wrap(ByteBuf buf) {");
+        out.println("        return wrap(buf, buf.readerIndex(), buf.readableBytes());");
+        out.println("    }");
+        out.println();
+        out.println("    public " + className + " wrap(ByteBuf buf, int offset, int length) {");
+        out.println("        if (length < FIXED_LENGTH) {");
+        out.println("            throw new IndexOutOfBoundsException(\"length: \" + length + " +
+                "\" (expected: >= \" + FIXED_LENGTH + \")\");");
+        out.println("        }");
+        out.println("        this.buf = buf;");
+        out.println("        this.offset = offset;");
+        out.println("        this.limit = offset + length;");
+        out.println("        nextText = -1;");
+        for (Field field : fields) {
+            if (field.isDelimited()) {
+                out.println("        " + field.name + "End = -1;");
+            }
+        }
+        out.println("        return this;");
+        out.println("    }");
+        out.println();
+        out.println("    /**");
+        out.println("     * Starts a message at the writer index of {@code buf}: reserves the");
+        out.println("     * fixed fields, the text fields are appended by their setters in");
+        out.println("     * schema order.");
+        out.println("     */");
+        out.println("    public " + className + " wrapForEncode(ByteBuf buf) {");
+        out.println("        buf.ensureWritable(FIXED_LENGTH);");
+        out.println("        wrap(buf, buf.writerIndex(), FIXED_LENGTH);");
+        out.println("        buf.writerIndex(limit);");
+        out.println("        nextText = 0;");
+        out.println("        return this;");
+        out.println("    }");
+        out.println();
+        out.println("    public ByteBuf buffer() {");
+        out.println("        return buf;");
+        out.println("    }");
+        out.println();
+        out.println("    public int offset() {");
+        out.println("        return offset;");
+        out.println("    }");
+        out.println();
+        out.println("    public int length() {");
+        out.println("        return limit - offset;");
+        out.println("    }");
+
+        String previous = null;
+        int text = 0;
+        for (Field field : fields) {
+            out.println();
+            if (field.isFixed()) {
+                writeFixed(out, className, field);
+            } else {
+                writeText(out, className, field, previous, text++);
+                previous = field.isDelimited() ? field.name : null;
+            }
+        }
+        if (text > 0) {
+            out.println();
+            out.println("    private void checkAppend(int index, String field) {");
+            out.println("        if (nextText != index || buf.writerIndex() != limit) {");
+            out.println("            throw new IllegalStateException(field + \" must be set after wrapForEncode() \" +");
+            out.println("                    \"and right after the preceding fields, in schema order\");");
+            out.println("        }");
+            out.println("    }");
+        }
+        out.println("}");
+        out.flush();
+    }
+
+    private static void writeFixed(PrintWriter out, String className, Field field) {
+        String type = field.type.toString().toLowerCase();
+        String accessor = accessor(field.type);
+        String index = "offset + " + constant(field.name) + "_OFFSET";
+        out.println("    public " + type + " " + field.name + "() {");
+        if (field.type == TypeKind.BOOLEAN) {
+            out.println("        return buf.getByte(" + index + ") != 0;");
+        } else {
+            out.println("        return buf.get" + accessor + "(" + index + ");");
+        }
+        out.println("    }");
+        out.println();
+        out.println("    public " + className + " " + field.name + "(" + type + " value) {");
+        if (field.type == TypeKind.BOOLEAN) {
+            out.println("        buf.setByte(" + index + ", value ? 1 : 0);");
+        } else {
+            out.println("        buf.set" + accessor + "(" + index + ", value);");
+        }
+        out.println("        return this;");
+        out.println("    }");
+    }
+
+    private static void writeText(PrintWriter out, String className, Field field, String previous,
+        int index) {
+        String name = field.name;
+        out.println("    private int " + name + "Start() {");
+        if (previous == null) {
+            out.println("        return offset + FIXED_LENGTH;");
+        } else {
+            out.println("        return Math.min(" + previous + "End() + 1, limit);");
+        }
+        out.println("    }");
+        out.println();
+        out.println("    private int " + name + "End() {");
+        if (field.isDelimited()) {
+            out.println("        if (" + name + "End < 0) {");
+            out.println("            int index = " + constant(name) + "_DELIMITER.indexOf(buf, " +
+                    name + "Start(), limit);");
+            out.println("            " + name + "End = index < 0 ? limit : index;");
+            out.println("        }");
+            out.println("        return " + name + "End;");
+        } else {
+            out.println("        return limit;");
+        }
+        out.println("    }");
+        out.println();
+        out.println("    /**");
+        out.println("     * Index of the first byte of {@code " + name + "} in {@link #buffer()}.");
+        out.println("     */");
+        out.println("    public int " + name + "Offset() {");
+        out.println("        return " + name + "Start();");
+        out.println("    }");
+        out.println();
+        out.println("    public int " + name + "Length() {");
+        out.println("        return " + name + "End() - " + name + "Start();");
+        out.println("    }");
+        out.println();
+        out.println("    public boolean " + name + "Equals(byte[] value) {");
+        out.println("        int start = " + name + "Start();");
+        out.println("        if (" + name + "End() - start != value.length) {");
+        out.println("            return false;");
+        out.println("        }");
+        out.println("        for (int i = 0; i < value.length; i++) {");
+        out.println("            if (buf.getByte(start + i) != value[i]) {");
+        out.println("                return false;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        return true;");
+        out.println("    }");
+        out.println();
+        out.println("    /**");
+        out.println("     * Decodes {@code " + name + "} into a new String.");
+        out.println("     */");
+        out.println("    public String " + name + "AsString() {");
+        out.println("        return buf.toString(" + name + "Start(), " + name + "Length(), CharsetUtil.UTF_8);");
+        out.println("    }");
+        out.println();
+        out.println("    public " + className + " " + name + "(CharSequence value) {");
+        out.println("        checkAppend(" + index + ", \"" + name + "\");");
+        out.println("        buf.writeCharSequence(value, CharsetUtil.UTF_8);");
+        out.println("        return " + name + "Written();");
+        out.println("    }");
+        out.println();
+        out.println("    public " + className + " " + name + "(ByteBuf value) {");
+        out.println("        checkAppend(" + index + ", \"" + name + "\");");
+        out.println("        buf.writeBytes(value, value.readerIndex(), value.readableBytes());");
+        out.println("        return " + name + "Written();");
+        out.println("    }");
+        out.println();
+        out.println("    private " + className + " " + name + "Written() {");
+        if (field.isDelimited()) {
+            out.println("        " + name + "End = buf.writerIndex();");
+            out.println("        buf.writeByte(" + field.delimiter + ");");
+        }
+        out.println("        limit = buf.writerIndex();");
+        out.println("        nextText = " + (index + 1) + ";");
+        out.println("        return this;");
+        out.println("    }");
+    }
+}
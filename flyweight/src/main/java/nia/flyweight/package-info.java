@@ -0,0 +1,8 @@
+/**
+ * Flyweight accessors over ByteBuf regions, generated at build time.
+ *
+ * Message layout schema {@link nia.flyweight.Flyweight}, {@link nia.flyweight.Delimited}
+ *
+ * Annotation processor generating the accessors {@link nia.flyweight.FlyweightProcessor}
+ */
+package nia.flyweight;
@@ -0,0 +1,333 @@
+package nia.microbench;
+
+import io.netty.util.AttributeKey;
+import io.netty.util.DefaultAttributeMap;
+import io.netty.util.collection.LongObjectHashMap;
+import nia.util.LongLongMap;
+import nia.util.LongObjectMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-connection state for 1M connections, a byte counter each, kept in
+ * <ul>
+ *   <li>{@code CHM}: a {@code ConcurrentHashMap} from the channel to a state
+ *       object</li>
+ *   <li>{@code ATTRIBUTE}: a channel attribute holding the state object</li>
+ *   <li>{@code NETTY_LONG_OBJECT}: Netty's {@link LongObjectHashMap} from the
+ *       connection id to the state object; its low-bit hashing makes a run of
+ *       sequential ids one long probe chain, see {@code churn}</li>
+ *   <li>{@code LONG_OBJECT}: a {@link LongObjectMap} from the connection id
+ *       to the state object</li>
+ *   <li>{@code LONG_LONG}, {@code LONG_LONG_OFF_HEAP}: a {@link LongLongMap}
+ *       from the connection id to the counter</li>
+ * </ul>
+ * {@link DefaultAttributeMap}s stand in for the channels, which are one, so
+ * the attribute lookups and the identity hash codes are the real ones.
+ *
+ * {@code lookup} reads and {@code update} increments the counter of a random
+ * connection; {@code churn} closes one connection and opens a new one. The
+ * setup prints the heap retained by each store, the heap is what the GC has
+ * to trace on every full collection, run with {@code -prof gc} for the
+ * allocation rate and collection times.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class ConnectionStateBenchmark {
+    private static final AttributeKey<ConnectionState> STATE = AttributeKey.valueOf("state");
+    private static final int RANDOM_INDICES = 1 << 16;
+
+    @Param("1000000")
+    int connections;
+
+    @Param
+    Store store;
+
+    DefaultAttributeMap[] channels;
+    long[] ids;
+    long lastId;
+    private States states;
+    private final int[] indices = new int[RANDOM_INDICES];
+    private int next;
+
+    /**
+     * The object variants' per-connection state.
+     */
+    static final class ConnectionState {
+        long bytesRead;
+    }
+
+    public enum Store {
+        CHM, ATTRIBUTE, NETTY_LONG_OBJECT, LONG_OBJECT, LONG_LONG, LONG_LONG_OFF_HEAP
+    }
+
+    /**
+     * One store filled with the state of all connections.
+     */
+    abstract static class States {
+        abstract long read(int i);
+
+        abstract void update(int i);
+
+        /**
+         * Closes connection {@code i} and opens a new one in its place.
+         */
+        abstract void reopen(int i);
+
+        long offHeapBytes() {
+            return 0;
+        }
+
+        void close() {
+        }
+    }
+
+    final class ChmStates extends States {
+        private final ConcurrentHashMap<DefaultAttributeMap, ConnectionState> map =
+                new ConcurrentHashMap<DefaultAttributeMap, ConnectionState>(connections);
+
+        ChmStates() {
+            for (DefaultAttributeMap channel : channels) {
+                map.put(channel, new ConnectionState());
+            }
+        }
+
+        @Override
+        long read(int i) {
+            return map.get(channels[i]).bytesRead;
+        }
+
+        @Override
+        void update(int i) {
+            map.get(channels[i]).bytesRead += 64;
+        }
+
+        @Override
+        void reopen(int i) {
+            map.remove(channels[i]);
+            channels[i] = new DefaultAttributeMap();
+            map.put(channels[i], new ConnectionState());
+        }
+    }
+
+    final class AttributeStates extends States {
+        AttributeStates() {
+            for (DefaultAttributeMap channel : channels) {
+                channel.attr(STATE).set(new ConnectionState());
+            }
+        }
+
+        @Override
+        long read(int i) {
+            return channels[i].attr(STATE).get().bytesRead;
+        }
+
+        @Override
+        void update(int i) {
+            channels[i].attr(STATE).get().bytesRead += 64;
+        }
+
+        @Override
+        void reopen(int i) {
+            channels[i].attr(STATE).set(null);
+            channels[i] = new DefaultAttributeMap();
+            channels[i].attr(STATE).set(new ConnectionState());
+        }
+    }
+
+    final class NettyLongObjectStates extends States {
+        private final LongObjectHashMap<ConnectionState> map = new LongObjectHashMap<ConnectionState>(connections);
+
+        NettyLongObjectStates() {
+            for (long id : ids) {
+                map.put(id, new ConnectionState());
+            }
+        }
+
+        @Override
+        long read(int i) {
+            return map.get(ids[i]).bytesRead;
+        }
+
+        @Override
+        void update(int i) {
+            map.get(ids[i]).bytesRead += 64;
+        }
+
+        @Override
+        void reopen(int i) {
+            map.remove(ids[i]);
+            ids[i] = ++lastId;
+            map.put(ids[i], new ConnectionState());
+        }
+    }
+
+    final class LongObjectStates extends States {
+        private final LongObjectMap<ConnectionState> map = new LongObjectMap<ConnectionState>(connections);
+
+        LongObjectStates() {
+            for (long id : ids) {
+                map.put(id, new ConnectionState());
+            }
+        }
+
+        @Override
+        long read(int i) {
+            return map.get(ids[i]).bytesRead;
+        }
+
+        @Override
+        void update(int i) {
+            map.get(ids[i]).bytesRead += 64;
+        }
+
+        @Override
+        void reopen(int i) {
+            map.remove(ids[i]);
+            ids[i] = ++lastId;
+            map.put(ids[i], new ConnectionState());
+        }
+    }
+
+    final class LongLongStates extends States {
+        private final LongLongMap map;
+
+        LongLongStates(boolean offHeap) {
+            map = new LongLongMap(connections, LongLongMap.DEFAULT_LOAD_FACTOR, offHeap, 0);
+            for (long id : ids) {
+                map.put(id, 0);
+            }
+        }
+
+        @Override
+        long read(int i) {
+            return map.get(ids[i]);
+        }
+
+        @Override
+        void update(int i) {
+            map.add(ids[i], 64);
+        }
+
+        @Override
+        void reopen(int i) {
+            map.remove(ids[i]);
+            ids[i] = ++lastId;
+            map.put(ids[i], 0);
+        }
+
+        @Override
+        long offHeapBytes() {
+            return map.isOffHeap() ? map.footprint() : 0;
+        }
+
+        @Override
+        void close() {
+            map.close();
+        }
+    }
+
+    @Setup
+    public void setup() {
+        channels = new DefaultAttributeMap[connections];
+        ids = new long[connections];
+        for (int i = 0; i < connections; i++) {
+            channels[i] = new DefaultAttributeMap();
+            ids[i] = ++lastId;
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(connections);
+        }
+        long before = usedHeap();
+        states = newStates();
+        long retained = usedHeap() - before;
+        System.out.printf("%n%s: %,d bytes retained on heap (%.1f per connection), %,d off heap%n",
+                store, retained, (double) retained / connections, states.offHeapBytes());
+    }
+
+    private States newStates() {
+        switch (store) {
+        case CHM:
+            return new ChmStates();
+        case ATTRIBUTE:
+            return new AttributeStates();
+        case NETTY_LONG_OBJECT:
+            return new NettyLongObjectStates();
+        case LONG_OBJECT:
+            return new LongObjectStates();
+        case LONG_LONG:
+            return new LongLongStates(false);
+        case LONG_LONG_OFF_HEAP:
+            return new LongLongStates(true);
+        default:
+            throw new IllegalStateException("Unknown store: " + store);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        states.close();
+    }
+
+    /**
+     * Live heap after a full collection; the heap usage itself also counts
+     * the allocation buffers the collection left behind.
+     */
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+
+    private int nextIndex() {
+        int i = indices[next];
+        next = (next + 1) & (RANDOM_INDICES - 1);
+        return i;
+    }
+
+    @Benchmark
+    public long lookup() {
+        return states.read(nextIndex());
+    }
+
+    @Benchmark
+    public void update() {
+        states.update(nextIndex());
+    }
+
+    @Benchmark
+    public void churn() {
+        states.reopen(nextIndex());
+    }
+}
@@ -0,0 +1,120 @@
+package nia.microbench;
+
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.protobuf.ProtobufDecoder;
+import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
+import io.netty.util.CharsetUtil;
+import nia.chapter11.CmdHandlerInitializer.CmdDecoder;
+import nia.chapter11.CmdHandlerInitializer.CmdHandler;
+import nia.chapter11.ProtoBufInitializer.ObjectHandler;
+import nia.util.FusedInboundHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One message through an inbound chain on an {@link EmbeddedChannel}, with
+ * every handler in its own pipeline entry and with the chain fused into one
+ * {@link FusedInboundHandler}:
+ * <ul>
+ *   <li>{@code CMD}: {@code CmdDecoder} and {@code CmdHandler} (Listing 11.9)</li>
+ *   <li>{@code PROTOBUF}: {@code ProtobufVarint32FrameDecoder},
+ *       {@code ProtobufDecoder} and {@code ObjectHandler} (Listing 11.14)</li>
+ *   <li>{@code PASS_THROUGH}: {@code hops} handlers that only pass the
+ *       message on, and one that releases it; the difference is the cost of
+ *       the hops alone</li>
+ * </ul>
+ * Every message is a newly wrapped array, as a read would deliver it;
+ * CmdDecoder's commands keep their frame referenced, so a shared buffer
+ * would see its reference count overflow.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dio.netty.leakDetection.level=disabled")
+public class FusionBenchmark {
+    @Param
+    Chain chain;
+
+    @Param({ "false", "true" })
+    boolean fused;
+
+    @Param("4")
+    int hops;
+
+    private EmbeddedChannel channel;
+    private byte[] message;
+
+    public enum Chain {
+        CMD, PROTOBUF, PASS_THROUGH
+    }
+
+    @Setup
+    public void setup() {
+        ChannelInboundHandler[] stages;
+        switch (chain) {
+        case CMD:
+            stages = new ChannelInboundHandler[] { new CmdDecoder(64 * 1024), new CmdHandler() };
+            message = "SET some-key some-value\n".getBytes(CharsetUtil.US_ASCII);
+            break;
+        case PROTOBUF:
+            stages = new ChannelInboundHandler[] { new ProtobufVarint32FrameDecoder(),
+                    new ProtobufDecoder(FileDescriptorProto.getDefaultInstance()), new ObjectHandler() };
+            byte[] body = FileDescriptorProto.newBuilder().setName("nia.proto").setPackage("nia").build()
+                    .toByteArray();
+            // 长度前缀小于128，一个字节的varint32
+            message = new byte[body.length + 1];
+            message[0] = (byte) body.length;
+            System.arraycopy(body, 0, message, 1, body.length);
+            break;
+        case PASS_THROUGH:
+            stages = new ChannelInboundHandler[hops + 1];
+            for (int i = 0; i < hops; i++) {
+                stages[i] = new ChannelInboundHandlerAdapter();
+            }
+            stages[hops] = new SimpleChannelInboundHandler<Object>() {
+                @Override
+                protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
+                }
+            };
+            message = new byte[16];
+            break;
+        default:
+            throw new IllegalStateException("Unknown chain: " + chain);
+        }
+        channel = fused ? new EmbeddedChannel(new FusedInboundHandler(stages))
+                : new EmbeddedChannel((ChannelHandler[]) stages);
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public void read() {
+        ByteBuf buf = Unpooled.wrappedBuffer(message);
+        channel.pipeline().fireChannelRead(buf);
+    }
+}
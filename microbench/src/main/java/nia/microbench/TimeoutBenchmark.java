@@ -0,0 +1,171 @@
+package nia.microbench;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.ScheduledFuture;
+import nia.chapter7.TimeoutService;
+import nia.chapter7.TimingWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-arming one of 1M per-connection request timeouts, as on every request,
+ * on the event loop that owns them:
+ * <ul>
+ *   <li>{@code SCHEDULE}: cancel the connection's task and schedule a new one
+ *       with {@code eventLoop().schedule()} (Listing 7.3, 7.5), a heap of
+ *       {@code ScheduledFutureTask}s</li>
+ *   <li>{@code WHEEL}: re-arm the connection's {@link TimingWheel.Timeout}
+ *       of a {@link TimeoutService}</li>
+ * </ul>
+ * The deadlines are 30 to 60 seconds, so nothing expires during the run.
+ * The loop re-arms a batch of random connections per invocation, which
+ * spreads the hand-off to the loop over the batch. The setup prints the heap
+ * retained by the armed timeouts; run with {@code -prof gc} for the
+ * allocation per re-arm.
+ *
+ * With Netty 4.1.12 the cancel of {@code SCHEDULE} searches the whole
+ * queue; a re-arm took about 1.8 us at 10K and 140 us at 1M timeouts, the
+ * wheel 70 to 200 ns, and retained 44 instead of 89 bytes per timeout.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class TimeoutBenchmark {
+    private static final int BATCH = 1000;
+    private static final int RANDOM_INDICES = 1 << 16;
+    private static final Runnable EXPIRED = new Runnable() {
+        @Override
+        public void run() {
+            throw new IllegalStateException("no timeout should expire during the benchmark");
+        }
+    };
+
+    @Param("1000000")
+    int timeouts;
+
+    @Param
+    Kind kind;
+
+    private DefaultEventLoopGroup group;
+    private EventLoop loop;
+    private TimeoutService service;
+    private ScheduledFuture<?>[] futures;
+    private TimingWheel.Timeout[] wheelTimeouts;
+    private final int[] indices = new int[RANDOM_INDICES];
+    private final long[] delays = new long[RANDOM_INDICES];
+    private int next;
+    private Runnable rearmBatch;
+
+    public enum Kind {
+        SCHEDULE, WHEEL
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        group = new DefaultEventLoopGroup(1);
+        loop = group.next();
+        Random random = new Random(42);
+        for (int i = 0; i < RANDOM_INDICES; i++) {
+            indices[i] = random.nextInt(timeouts);
+            delays[i] = TimeUnit.SECONDS.toMillis(30) + random.nextInt((int) TimeUnit.SECONDS.toMillis(30));
+        }
+        long before = usedHeap();
+        if (kind == Kind.SCHEDULE) {
+            futures = new ScheduledFuture<?>[timeouts];
+            rearmBatch = new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < BATCH; i++) {
+                        int index = indices[next];
+                        futures[index].cancel(false);
+                        futures[index] = loop.schedule(EXPIRED, delays[next], TimeUnit.MILLISECONDS);
+                        next = (next + 1) & (RANDOM_INDICES - 1);
+                    }
+                }
+            };
+        } else {
+            service = new TimeoutService(group);
+            wheelTimeouts = new TimingWheel.Timeout[timeouts];
+            rearmBatch = new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < BATCH; i++) {
+                        wheelTimeouts[indices[next]].arm(delays[next], TimeUnit.MILLISECONDS);
+                        next = (next + 1) & (RANDOM_INDICES - 1);
+                    }
+                }
+            };
+        }
+        loop.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < timeouts; i++) {
+                    long delay = delays[i & (RANDOM_INDICES - 1)];
+                    if (kind == Kind.SCHEDULE) {
+                        futures[i] = loop.schedule(EXPIRED, delay, TimeUnit.MILLISECONDS);
+                    } else {
+                        wheelTimeouts[i] = service.wheel(loop).newTimeout(EXPIRED);
+                        wheelTimeouts[i].arm(delay, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+        }).sync();
+        long retained = usedHeap() - before;
+        System.out.printf("%n%s: %,d bytes retained on heap (%.1f per timeout)%n",
+                kind, retained, (double) retained / timeouts);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (service != null) {
+            service.close();
+        }
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+    }
+
+    /**
+     * Live heap after a full collection, as in
+     * {@link ConnectionStateBenchmark}.
+     */
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void rearm() throws Exception {
+        loop.submit(rearmBatch).sync();
+    }
+}
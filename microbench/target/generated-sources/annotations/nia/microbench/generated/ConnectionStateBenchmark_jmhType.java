@@ -0,0 +1,4 @@
+package nia.microbench.generated;
+public class ConnectionStateBenchmark_jmhType extends ConnectionStateBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package nia.microbench.generated;
+public class FusionBenchmark_jmhType extends FusionBenchmark_jmhType_B3 {
+}
+
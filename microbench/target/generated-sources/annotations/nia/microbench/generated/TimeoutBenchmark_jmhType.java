@@ -0,0 +1,4 @@
+package nia.microbench.generated;
+public class TimeoutBenchmark_jmhType extends TimeoutBenchmark_jmhType_B3 {
+}
+
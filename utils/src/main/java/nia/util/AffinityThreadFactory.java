@@ -0,0 +1,112 @@
+package nia.util;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread factory for event loop groups that pins every thread to one CPU
+ * of a {@link CpuSet}, in creation order, so each event loop keeps its
+ * caches, and on a multi-socket machine its memory node, instead of being
+ * moved around by the scheduler. Create the group with as many threads as
+ * CPUs, one loop per CPU:
+ * <pre>
+ *   CpuSet cpus = CpuSet.parse("2-7");
+ *   EventLoopGroup group = transport.newEventLoopGroup(cpus.size(), new AffinityThreadFactory("worker", cpus));
+ * </pre>
+ * or {@link Transport#newEventLoopGroup(String, CpuSet)}. Use disjoint sets
+ * to keep the acceptor and the worker group apart.
+ *
+ * The JDK has no affinity API; a thread pins itself when it starts, with
+ * {@code taskset} on its Linux thread id. Where that is not possible the
+ * threads run unpinned and a warning is logged once.
+ */
+public class AffinityThreadFactory extends DefaultThreadFactory {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(AffinityThreadFactory.class);
+    private static final AtomicBoolean WARNED = new AtomicBoolean();
+
+    private final CpuSet cpus;
+    private final AtomicInteger nextCpu = new AtomicInteger();
+    private final AtomicInteger pinned = new AtomicInteger();
+
+    public AffinityThreadFactory(String poolName, CpuSet cpus) {
+        super(poolName);
+        if (cpus == null) {
+            throw new NullPointerException("cpus");
+        }
+        this.cpus = cpus;
+    }
+
+    public CpuSet cpus() {
+        return cpus;
+    }
+
+    /**
+     * Threads that pinned themselves successfully so far.
+     */
+    public int pinnedThreads() {
+        return pinned.get();
+    }
+
+    @Override
+    protected Thread newThread(final Runnable r, String name) {
+        final int cpu = cpus.get(nextCpu.getAndIncrement() % cpus.size());
+        return super.newThread(new Runnable() {
+            @Override
+            public void run() {
+                if (pin(cpu)) {
+                    pinned.incrementAndGet();
+                }
+                r.run();
+            }
+        }, name);
+    }
+
+    /**
+     * Pins the calling thread to {@code cpu}.
+     */
+    public static boolean pin(int cpu) {
+        // /proc/thread-self -> <pid>/task/<tid>，需要Linux 3.17+
+        File threadSelf = new File("/proc/thread-self");
+        if (PlatformDependent.isWindows() || !threadSelf.exists()) {
+            warn("no /proc/thread-self, Linux 3.17 or later is needed", null);
+            return false;
+        }
+        try {
+            String self = Files.readSymbolicLink(threadSelf.toPath()).toString();
+            String tid = self.substring(self.lastIndexOf('/') + 1);
+            Process taskset = new ProcessBuilder("taskset", "-p", "-c", String.valueOf(cpu), tid)
+                    .redirectErrorStream(true).start();
+            // 输出不重要，读完避免子进程阻塞
+            byte[] discard = new byte[256];
+            while (taskset.getInputStream().read(discard) >= 0) {
+                // 丢弃
+            }
+            int exit = taskset.waitFor();
+            if (exit != 0) {
+                warn("taskset exited with " + exit + " for CPU " + cpu, null);
+                return false;
+            }
+            logger.debug("Pinned {} to CPU {}", Thread.currentThread().getName(), cpu);
+            return true;
+        } catch (IOException e) {
+            warn("cannot run taskset", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private static void warn(String reason, Throwable cause) {
+        if (WARNED.compareAndSet(false, true)) {
+            logger.warn("Event loop threads run without CPU affinity: " + reason, cause);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package nia.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Delimiter search that reads 8 bytes at a time. {@code ByteBuf.indexOf()}
+ * and {@code forEachByte(ByteProcessor)} look at one byte per step; this
+ * loads a little-endian long and tests all 8 bytes with a few arithmetic
+ * operations (SWAR, "SIMD within a register"):
+ * <pre>
+ *   x = word ^ (b * 0x0101010101010101)            bytes equal to b become 0
+ *   (x - 0x0101010101010101) & ~x & 0x8080808080808080
+ * </pre>
+ * The lowest set bit of the result marks the first zero byte of
+ * {@code x}, i.e. the first {@code b} in memory order. Bits above it can be
+ * false positives, so only the lowest one is used, or each one is verified.
+ *
+ * Instances are immutable and can be shared. All indices are absolute, as
+ * with {@code ByteBuf.indexOf()}; heap and direct buffers are both
+ * supported, the word loads go through {@link ByteBuf#getLongLE(int)}.
+ */
+public abstract class ByteSearch {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final int MAX_SWAR_SET = 4;
+
+    ByteSearch() {
+    }
+
+    /**
+     * Finds {@code value}.
+     */
+    public static ByteSearch of(byte value) {
+        return new Single(value);
+    }
+
+    /**
+     * Finds the first byte that is any of {@code values}.
+     */
+    public static ByteSearch anyOf(byte... values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("values must not be empty");
+        }
+        if (values.length == 1) {
+            return new Single(values[0]);
+        }
+        if (values.length == 2) {
+            return new Pair(values[0], values[1]);
+        }
+        return values.length <= MAX_SWAR_SET ? new AnyOf(values) : new Table(values);
+    }
+
+    /**
+     * Finds the sequence {@code needle}, e.g. {@code "\r\n\r\n"}.
+     */
+    public static ByteSearch sequence(byte... needle) {
+        if (needle.length == 0) {
+            throw new IllegalArgumentException("needle must not be empty");
+        }
+        return needle.length == 1 ? new Single(needle[0]) : new Sequence(needle.clone());
+    }
+
+    /**
+     * {@link #sequence(byte...)} of the ASCII bytes of {@code needle}.
+     */
+    public static ByteSearch sequence(String needle) {
+        return sequence(needle.getBytes(CharsetUtil.US_ASCII));
+    }
+
+    /**
+     * Number of bytes a match spans.
+     */
+    public int length() {
+        return 1;
+    }
+
+    /**
+     * Index of the first match within the readable bytes of {@code buf}, or
+     * -1.
+     */
+    public final int indexOf(ByteBuf buf) {
+        return indexOf(buf, buf.readerIndex(), buf.writerIndex());
+    }
+
+    /**
+     * Index of the first match that lies entirely within
+     * {@code [fromIndex, toIndex)}, or -1.
+     */
+    public abstract int indexOf(ByteBuf buf, int fromIndex, int toIndex);
+
+    /**
+     * The word with every byte set to {@code value}.
+     */
+    static long broadcast(byte value) {
+        return (value & 0xFFL) * ONES;
+    }
+
+    /**
+     * High bit set in every byte of {@code word} that is 0; exact for the
+     * lowest such byte, see the class comment.
+     */
+    static long zeros(long word) {
+        return (word - ONES) & ~word & HIGHS;
+    }
+
+    /**
+     * Memory offset within a little-endian word of its lowest marked byte.
+     */
+    static int firstByte(long mask) {
+        return Long.numberOfTrailingZeros(mask) >>> 3;
+    }
+
+    private static final class Single extends ByteSearch {
+        private final byte value;
+        private final long pattern;
+
+        Single(byte value) {
+            this.value = value;
+            this.pattern = broadcast(value);
+        }
+
+        @Override
+        public int indexOf(ByteBuf buf, int fromIndex, int toIndex) {
+            int i = fromIndex;
+            for (; i <= toIndex - 8; i += 8) {
+                long mask = zeros(buf.getLongLE(i) ^ pattern);
+                if (mask != 0) {
+                    return i + firstByte(mask);
+                }
+            }
+            for (; i < toIndex; i++) {
+                if (buf.getByte(i) == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Two bytes, e.g. CR or LF.
+     */
+    private static final class Pair extends ByteSearch {
+        private final byte v0;
+        private final byte v1;
+        private final long p0;
+        private final long p1;
+
+        Pair(byte v0, byte v1) {
+            this.v0 = v0;
+            this.v1 = v1;
+            p0 = broadcast(v0);
+            p1 = broadcast(v1);
+        }
+
+        @Override
+        public int indexOf(ByteBuf buf, int fromIndex, int toIndex) {
+            int i = fromIndex;
+            for (; i <= toIndex - 8; i += 8) {
+                long word = buf.getLongLE(i);
+                long mask = zeros(word ^ p0) | zeros(word ^ p1);
+                if (mask != 0) {
+                    return i + firstByte(mask);
+                }
+            }
+            for (; i < toIndex; i++) {
+                byte b = buf.getByte(i);
+                if (b == v0 || b == v1) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Three or four bytes, one mask per byte. A set of three repeats its
+     * first byte so the loop has no inner loop or branch per member.
+     */
+    private static final class AnyOf extends ByteSearch {
+        private final byte[] values;
+        private final long p0;
+        private final long p1;
+        private final long p2;
+        private final long p3;
+
+        AnyOf(byte[] values) {
+            this.values = values.clone();
+            p0 = broadcast(values[0]);
+            p1 = broadcast(values[1]);
+            p2 = broadcast(values[2]);
+            p3 = broadcast(values[values.length > 3 ? 3 : 0]);
+        }
+
+        @Override
+        public int indexOf(ByteBuf buf, int fromIndex, int toIndex) {
+            int i = fromIndex;
+            for (; i <= toIndex - 8; i += 8) {
+                long word = buf.getLongLE(i);
+                // 每个掩码的最低位都是真实匹配，合并后的最低位即为最早出现的任一字节
+                long mask = zeros(word ^ p0) | zeros(word ^ p1) | zeros(word ^ p2) | zeros(word ^ p3);
+                if (mask != 0) {
+                    return i + firstByte(mask);
+                }
+            }
+            for (; i < toIndex; i++) {
+                byte b = buf.getByte(i);
+                for (byte value : values) {
+                    if (b == value) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Sets too large for one XOR per member and word: a 256-bit table,
+     * one byte at a time.
+     */
+    private static final class Table extends ByteSearch {
+        private final long[] bits = new long[4];
+
+        Table(byte[] values) {
+            for (byte value : values) {
+                bits[(value & 0xFF) >>> 6] |= 1L << (value & 0x3F);
+            }
+        }
+
+        @Override
+        public int indexOf(ByteBuf buf, int fromIndex, int toIndex) {
+            for (int i = fromIndex; i < toIndex; i++) {
+                int b = buf.getByte(i) & 0xFF;
+                if ((bits[b >>> 6] & (1L << (b & 0x3F))) != 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Tests the first and the last byte of the needle for 8 start positions
+     * at once: one word at the start positions, one word {@code length - 1}
+     * bytes further. Only positions where both match are compared in full.
+     */
+    private static final class Sequence extends ByteSearch {
+        private final byte[] needle;
+        private final long firstPattern;
+        private final long lastPattern;
+
+        Sequence(byte[] needle) {
+            this.needle = needle;
+            firstPattern = broadcast(needle[0]);
+            lastPattern = broadcast(needle[needle.length - 1]);
+        }
+
+        @Override
+        public int length() {
+            return needle.length;
+        }
+
+        @Override
+        public int indexOf(ByteBuf buf, int fromIndex, int toIndex) {
+            int last = needle.length - 1;
+            int i = fromIndex;
+            for (; i <= toIndex - last - 8; i += 8) {
+                long mask = zeros(buf.getLongLE(i) ^ firstPattern)
+                        & zeros(buf.getLongLE(i + last) ^ lastPattern);
+                while (mask != 0) {
+                    int index = i + firstByte(mask);
+                    if (matchesAt(buf, index)) {
+                        return index;
+                    }
+                    mask &= mask - 1;
+                }
+            }
+            for (; i <= toIndex - needle.length; i++) {
+                if (buf.getByte(i) == needle[0] && buf.getByte(i + last) == needle[last] &&
+                        matchesAt(buf, i)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Whether the needle occurs at {@code index}; also rejects the false
+         * positives of the word masks, so every byte is compared.
+         */
+        private boolean matchesAt(ByteBuf buf, int index) {
+            for (int j = 0; j < needle.length; j++) {
+                if (buf.getByte(index + j) != needle[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package nia.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for blocking servers that hand every accepted socket to a task
+ * of its own.
+ *
+ * {@link #perConnection(int)} gives one virtual thread per task where the
+ * JDK has them (21+), so blocking {@code readLine}/{@code write} code scales
+ * to many thousands of connections. Older JDKs get a bounded pool instead:
+ * at most {@code maxThreads} connections are served at a time and further
+ * ones are rejected, which the servers answer by closing the socket. A
+ * queue would only hide the missing threads behind waiting time. Virtual
+ * threads are looked up reflectively, so the samples keep compiling for
+ * Java 7.
+ */
+public final class ConnectionExecutors {
+    private static final ThreadFactory VIRTUAL_FACTORY = virtualThreadFactory();
+
+    private ConnectionExecutors() {
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * One new virtual thread per task.
+     *
+     * @throws UnsupportedOperationException if the JDK has no virtual threads
+     */
+    public static ExecutorService virtualThreadPerTask() {
+        if (VIRTUAL_FACTORY == null) {
+            throw new UnsupportedOperationException(
+                    "virtual threads need JDK 21+, running on " + System.getProperty("java.version"));
+        }
+        try {
+            // Executors.newThreadPerTaskExecutor(ThreadFactory), JDK 21+
+            return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, VIRTUAL_FACTORY);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create a virtual thread executor", e);
+        }
+    }
+
+    /**
+     * {@code maxThreads} daemon platform threads, started on demand; a task
+     * submitted while all of them are busy is rejected with a
+     * {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    public static ExecutorService bounded(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads: " + maxThreads + " (expected: > 0)");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                daemonThreadFactory("connection-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * {@link #virtualThreadPerTask()} if available, {@link #bounded(int)}
+     * with {@code fallbackThreads} otherwise.
+     */
+    public static ExecutorService perConnection(int fallbackThreads) {
+        return virtualThreadsAvailable() ? virtualThreadPerTask() : bounded(fallbackThreads);
+    }
+
+    private static ThreadFactory daemonThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * {@code Thread.ofVirtual().name("virtual-", 0).factory()}, or
+     * {@code null} if the JDK has no (or only preview) virtual threads.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, "virtual-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // preview feature not enabled on JDK 19/20
+            return null;
+        }
+    }
+}
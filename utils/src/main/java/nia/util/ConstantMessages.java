@@ -0,0 +1,109 @@
+package nia.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pre-encoded constant messages: greetings, heartbeats, status lines. Each
+ * distinct text is encoded once into an unreleasable direct buffer that is
+ * shared by every channel; a write hands out a {@code duplicate()} with its
+ * own indices, so a constant response costs neither an encode nor a buffer
+ * allocation, only the small duplicate wrapper. Direct buffers are written
+ * by the socket transports as they are, without the copy a heap buffer
+ * needs.
+ *
+ * Hold the result of {@link #intern(String)} in a static field and write
+ * {@code MESSAGE.duplicate()}, or use {@link #get(String)} where a lookup
+ * per write is fine. The buffers are shared: never write to them or their
+ * duplicates.
+ *
+ * Meant for literals only, the registry never forgets a message and refuses
+ * more than {@link #MAX_MESSAGES}.
+ */
+public final class ConstantMessages {
+    public static final int MAX_MESSAGES = 1024;
+
+    private static final ConcurrentMap<Key, ByteBuf> MESSAGES = new ConcurrentHashMap<Key, ByteBuf>();
+
+    private ConstantMessages() {
+    }
+
+    /**
+     * The shared UTF-8 encoding of {@code message}; write a
+     * {@code duplicate()} of it.
+     */
+    public static ByteBuf intern(String message) {
+        return intern(message, CharsetUtil.UTF_8);
+    }
+
+    /**
+     * The shared encoding of {@code message} in {@code charset}; write a
+     * {@code duplicate()} of it.
+     */
+    public static ByteBuf intern(String message, Charset charset) {
+        Key key = new Key(message, charset);
+        ByteBuf buf = MESSAGES.get(key);
+        if (buf != null) {
+            return buf;
+        }
+        if (MESSAGES.size() >= MAX_MESSAGES) {
+            throw new IllegalStateException("more than " + MAX_MESSAGES +
+                    " constant messages, is a dynamic string being interned?");
+        }
+        byte[] bytes = message.getBytes(charset);
+        buf = Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length, bytes.length).writeBytes(bytes));
+        ByteBuf existing = MESSAGES.putIfAbsent(key, buf);
+        // 并发注册时另一个线程先放入，丢弃本线程编码的副本即可（不可释放，交给GC）
+        return existing != null ? existing : buf;
+    }
+
+    /**
+     * A duplicate of the UTF-8 encoding of {@code message}, ready to write.
+     */
+    public static ByteBuf get(String message) {
+        return intern(message).duplicate();
+    }
+
+    /**
+     * A duplicate of the encoding of {@code message} in {@code charset},
+     * ready to write.
+     */
+    public static ByteBuf get(String message, Charset charset) {
+        return intern(message, charset).duplicate();
+    }
+
+    private static final class Key {
+        private final String message;
+        private final Charset charset;
+
+        Key(String message, Charset charset) {
+            if (message == null) {
+                throw new NullPointerException("message");
+            }
+            if (charset == null) {
+                throw new NullPointerException("charset");
+            }
+            this.message = message;
+            this.charset = charset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return message.equals(other.message) && charset.equals(other.charset);
+        }
+
+        @Override
+        public int hashCode() {
+            return message.hashCode() * 31 + charset.hashCode();
+        }
+    }
+}
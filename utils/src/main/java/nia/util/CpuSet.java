@@ -0,0 +1,170 @@
+package nia.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * An ordered set of CPU numbers for {@link AffinityThreadFactory}, written
+ * as Linux writes CPU lists, e.g. {@code 0-3,8-11}. The CPUs of a NUMA node
+ * come from {@code /sys/devices/system/node}, so the event loops of a group
+ * can be kept on the socket whose memory they allocate from:
+ * <pre>
+ *   CpuSet node0 = CpuSet.numaNode(0);
+ *   CpuSet acceptor = node0.take(1);
+ *   CpuSet workers = node0.drop(1);
+ * </pre>
+ */
+public final class CpuSet {
+    private static final String NODE_DIR = "/sys/devices/system/node";
+    private static final String ONLINE = "/sys/devices/system/cpu/online";
+
+    private final int[] cpus;
+
+    private CpuSet(int[] cpus) {
+        this.cpus = cpus;
+    }
+
+    /**
+     * Parses a CPU list such as {@code 0-3,8,10-11}.
+     */
+    public static CpuSet parse(String list) {
+        TreeSet<Integer> cpus = new TreeSet<Integer>();
+        for (String part : list.split(",")) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            int dash = part.indexOf('-');
+            try {
+                int first = Integer.parseInt(dash < 0 ? part : part.substring(0, dash));
+                int last = dash < 0 ? first : Integer.parseInt(part.substring(dash + 1));
+                if (first < 0 || last < first) {
+                    throw new IllegalArgumentException("Invalid CPU range: " + part);
+                }
+                for (int cpu = first; cpu <= last; cpu++) {
+                    cpus.add(cpu);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid CPU list: " + list, e);
+            }
+        }
+        if (cpus.isEmpty()) {
+            throw new IllegalArgumentException("Empty CPU list: " + list);
+        }
+        int[] array = new int[cpus.size()];
+        int i = 0;
+        for (int cpu : cpus) {
+            array[i++] = cpu;
+        }
+        return new CpuSet(array);
+    }
+
+    /**
+     * The online CPUs; without {@code /sys} the first
+     * {@code availableProcessors()} ones.
+     */
+    public static CpuSet online() {
+        String list = read(ONLINE);
+        return list != null ? parse(list) : parse("0-" + (Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Number of NUMA nodes, 1 where the system does not tell.
+     */
+    public static int numaNodes() {
+        int nodes = 0;
+        while (new File(NODE_DIR + "/node" + nodes).isDirectory()) {
+            nodes++;
+        }
+        return Math.max(1, nodes);
+    }
+
+    /**
+     * The CPUs of NUMA node {@code node}; all online CPUs for node 0 where
+     * the system does not tell.
+     */
+    public static CpuSet numaNode(int node) {
+        String list = read(NODE_DIR + "/node" + node + "/cpulist");
+        if (list != null && !list.trim().isEmpty()) {
+            return parse(list);
+        }
+        if (node == 0) {
+            return online();
+        }
+        throw new IllegalArgumentException("No such NUMA node: " + node);
+    }
+
+    private static String read(String path) {
+        try {
+            return new String(Files.readAllBytes(new File(path).toPath()), Charset.forName("US-ASCII"));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public int size() {
+        return cpus.length;
+    }
+
+    public int get(int index) {
+        return cpus[index];
+    }
+
+    /**
+     * The first {@code count} CPUs.
+     */
+    public CpuSet take(int count) {
+        checkCount(count);
+        return new CpuSet(Arrays.copyOf(cpus, count));
+    }
+
+    /**
+     * All but the first {@code count} CPUs.
+     */
+    public CpuSet drop(int count) {
+        checkCount(count);
+        return new CpuSet(Arrays.copyOfRange(cpus, count, cpus.length));
+    }
+
+    private void checkCount(int count) {
+        if (count <= 0 || count >= cpus.length) {
+            throw new IllegalArgumentException("count: " + count + " (expected: 1 - " + (cpus.length - 1) + ')');
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CpuSet && Arrays.equals(cpus, ((CpuSet) o).cpus);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(cpus);
+    }
+
+    /**
+     * The CPU list, with ranges, as {@link #parse} reads it.
+     */
+    @Override
+    public String toString() {
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < cpus.length; i++) {
+            int first = cpus[i];
+            while (i + 1 < cpus.length && cpus[i + 1] == cpus[i] + 1) {
+                i++;
+            }
+            if (list.length() > 0) {
+                list.append(',');
+            }
+            list.append(first);
+            if (cpus[i] != first) {
+                list.append('-').append(cpus[i]);
+            }
+        }
+        return list.toString();
+    }
+}
@@ -0,0 +1,212 @@
+package nia.util;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.bootstrap.ServerBootstrapConfig;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.AttributeKey;
+
+import java.io.File;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Extra server endpoints for co-located peers, and the client side choice
+ * between them.
+ *
+ * A server configured with a {@link ServerBootstrap} can additionally be
+ * bound to
+ * <ul>
+ *   <li>an in-JVM {@link LocalAddress}, which passes messages between
+ *       channels without any system call, and</li>
+ *   <li>a Unix domain socket path, which skips the TCP/IP stack for peers on
+ *       the same host (epoll only).</li>
+ * </ul>
+ * The extra bindings reuse the bootstrap's groups, handlers and attributes.
+ * Options that only make sense for TCP/IP sockets are dropped.
+ *
+ * {@link #cheapest(Transport, String, String, SocketAddress)} picks, for
+ * a client, the local address if it is bound in this JVM, then the domain
+ * socket if the client runs on epoll and the socket file exists, and the
+ * TCP address otherwise.
+ * {@link #channel(SocketAddress, Transport)} gives the matching channel class.
+ */
+public final class Endpoints {
+    // AUTO_CLOSE已废弃但4.1的所有传输仍然支持，照样保留
+    @SuppressWarnings("deprecation")
+    private static final Set<ChannelOption<?>> PORTABLE_OPTIONS =
+            Collections.unmodifiableSet(new HashSet<ChannelOption<?>>(Arrays.<ChannelOption<?>>asList(
+                    ChannelOption.ALLOCATOR,
+                    ChannelOption.RCVBUF_ALLOCATOR,
+                    ChannelOption.MESSAGE_SIZE_ESTIMATOR,
+                    ChannelOption.AUTO_READ,
+                    ChannelOption.AUTO_CLOSE,
+                    ChannelOption.WRITE_BUFFER_WATER_MARK,
+                    ChannelOption.WRITE_SPIN_COUNT,
+                    ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                    ChannelOption.SINGLE_EVENTEXECUTOR_PER_GROUP)));
+
+    private static final Set<String> BOUND_LOCAL_NAMES =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private Endpoints() {
+    }
+
+    /**
+     * Binds a copy of the given bootstrap to the in-JVM address {@code name}.
+     */
+    public static ChannelFuture bindLocal(ServerBootstrap b, final String name) {
+        ServerBootstrap local = portableCopy(b).channel(LocalServerChannel.class);
+        ChannelFuture future = local.bind(new LocalAddress(name));
+        future.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture f) {
+                if (f.isSuccess()) {
+                    BOUND_LOCAL_NAMES.add(name);
+                    f.channel().closeFuture().addListener(new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture closed) {
+                            BOUND_LOCAL_NAMES.remove(name);
+                        }
+                    });
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Binds a copy of the given bootstrap to the Unix domain socket
+     * {@code path}, replacing a stale socket file left behind by an earlier
+     * process.
+     *
+     * @throws IllegalStateException if the bootstrap does not run on epoll
+     */
+    public static ChannelFuture bindDomainSocket(ServerBootstrap b, String path) {
+        if (!isEpoll(b.config().group()) || !isEpoll(b.config().childGroup())) {
+            throw new IllegalStateException(
+                    "Unix domain sockets need the epoll transport, bootstrap uses " +
+                    b.config().group().getClass().getSimpleName());
+        }
+        File file = new File(path);
+        if (file.exists() && !file.delete()) {
+            throw new IllegalStateException("Unable to remove stale socket file " + path);
+        }
+        ServerBootstrap domain = portableCopy(b).channel(EpollServerDomainSocketChannel.class);
+        return domain.bind(new DomainSocketAddress(file));
+    }
+
+    /**
+     * Whether a server is bound to the local address {@code name} in this JVM.
+     */
+    public static boolean isLocalBound(String name) {
+        return BOUND_LOCAL_NAMES.contains(name);
+    }
+
+    /**
+     * The cheapest address a client running on {@code transport} can use to
+     * reach a server. {@code localName} and {@code domainPath} may be
+     * {@code null} if the server does not offer them.
+     */
+    public static SocketAddress cheapest(Transport transport, String localName,
+        String domainPath, SocketAddress tcpAddress) {
+        if (localName != null && isLocalBound(localName)) {
+            return new LocalAddress(localName);
+        }
+        if (domainPath != null && transport == Transport.EPOLL && new File(domainPath).exists()) {
+            return new DomainSocketAddress(domainPath);
+        }
+        return tcpAddress;
+    }
+
+    /**
+     * The client channel class able to connect to {@code address}, using
+     * {@code transport} for TCP/IP addresses.
+     */
+    public static Class<? extends Channel> channel(SocketAddress address, Transport transport) {
+        if (address instanceof LocalAddress) {
+            return LocalChannel.class;
+        }
+        if (address instanceof DomainSocketAddress) {
+            return EpollDomainSocketChannel.class;
+        }
+        return transport.socketChannel();
+    }
+
+    /**
+     * Whether {@code address} is a TCP/IP address, for which socket options
+     * such as {@code TCP_NODELAY} apply.
+     */
+    public static boolean isInet(SocketAddress address) {
+        return !(address instanceof LocalAddress) && !(address instanceof DomainSocketAddress);
+    }
+
+    /**
+     * Sets the channel class matching {@code address} and drops TCP/IP only
+     * options if it is not a TCP/IP address.
+     */
+    public static Bootstrap configure(Bootstrap b, SocketAddress address, Transport transport) {
+        b.channel(channel(address, transport));
+        if (!isInet(address)) {
+            for (ChannelOption<?> option : b.config().options().keySet()) {
+                if (!PORTABLE_OPTIONS.contains(option)) {
+                    b.option(option, null);
+                }
+            }
+        }
+        return b.remoteAddress(address);
+    }
+
+    private static boolean isEpoll(EventLoopGroup group) {
+        return group instanceof EpollEventLoopGroup;
+    }
+
+    /**
+     * A new bootstrap with the groups, handlers, attributes and portable
+     * options of {@code b}; {@link ServerBootstrap#clone()} would keep the
+     * channel factory, which cannot be replaced.
+     */
+    @SuppressWarnings("unchecked")
+    private static ServerBootstrap portableCopy(ServerBootstrap b) {
+        ServerBootstrapConfig config = b.config();
+        ServerBootstrap copy = new ServerBootstrap()
+                .group(config.group(), config.childGroup())
+                .childHandler(config.childHandler());
+        if (config.handler() != null) {
+            copy.handler(config.handler());
+        }
+        for (Map.Entry<ChannelOption<?>, Object> e : config.options().entrySet()) {
+            if (PORTABLE_OPTIONS.contains(e.getKey())) {
+                copy.option((ChannelOption<Object>) e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<ChannelOption<?>, Object> e : config.childOptions().entrySet()) {
+            if (PORTABLE_OPTIONS.contains(e.getKey())) {
+                copy.childOption((ChannelOption<Object>) e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<AttributeKey<?>, Object> e : config.attrs().entrySet()) {
+            copy.attr((AttributeKey<Object>) e.getKey(), e.getValue());
+        }
+        for (Map.Entry<AttributeKey<?>, Object> e : config.childAttrs().entrySet()) {
+            copy.childAttr((AttributeKey<Object>) e.getKey(), e.getValue());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,526 @@
+package nia.util;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandler;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelProgressivePromise;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.net.SocketAddress;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Adjacent inbound handlers fused into one pipeline entry, e.g.
+ * <pre>
+ *   pipeline.addLast(new FusedInboundHandler(new CmdDecoder(64 * 1024), new CmdHandler()));
+ * </pre>
+ * instead of one {@code addLast} per handler. In the pipeline every event
+ * goes from context to context, each hop searching the linked list for the
+ * next inbound context and checking the handler's state; within the fused
+ * handler a stage's {@code ctx.fireChannelRead(msg)} calls the next stage
+ * directly. Once the JIT has inlined the pipeline a hop costs only a few
+ * nanoseconds either way, see {@code FusionBenchmark} in the microbench
+ * module, so measure the real chain before relying on fusion.
+ *
+ * The stages see the same events in the same order as in the pipeline.
+ * Messages are passed on as they are, so each stage keeps releasing what
+ * it consumes; an exception thrown by a stage goes to that stage's
+ * {@code exceptionCaught} as in the pipeline, and what the last stage
+ * passes on continues behind the fused handler. Outbound operations of a
+ * stage start at the fused handler's position, which is the same as from
+ * the stage's own, because no stage may be an outbound handler.
+ *
+ * A stage cannot be found in or removed from the pipeline on its own; do
+ * not fuse handlers that change the pipeline relative to themselves, like a
+ * {@link ChannelInitializer}, or that other handlers look up by type.
+ */
+public class FusedInboundHandler extends ChannelInboundHandlerAdapter {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(FusedInboundHandler.class);
+
+    private static final int REGISTERED = 0;
+    private static final int UNREGISTERED = 1;
+    private static final int ACTIVE = 2;
+    private static final int INACTIVE = 3;
+    private static final int READ = 4;
+    private static final int READ_COMPLETE = 5;
+    private static final int USER_EVENT = 6;
+    private static final int WRITABILITY_CHANGED = 7;
+    private static final int EXCEPTION_CAUGHT = 8;
+
+    private final ChannelInboundHandler[] stages;
+    private ChannelHandlerContext ctx;
+    private EventExecutor executor;
+    private StageContext[] contexts;
+
+    public FusedInboundHandler(ChannelInboundHandler... stages) {
+        if (stages.length == 0) {
+            throw new IllegalArgumentException("no stages");
+        }
+        Map<ChannelHandler, Boolean> seen = new IdentityHashMap<ChannelHandler, Boolean>();
+        for (ChannelInboundHandler stage : stages) {
+            if (stage == null) {
+                throw new NullPointerException("stages");
+            }
+            if (stage instanceof ChannelOutboundHandler) {
+                throw new IllegalArgumentException(stage.getClass().getName() +
+                        " is also an outbound handler and cannot be fused");
+            }
+            if (stage instanceof ChannelInitializer) {
+                throw new IllegalArgumentException(stage.getClass().getName() +
+                        " changes the pipeline and cannot be fused");
+            }
+            if (seen.put(stage, Boolean.TRUE) != null) {
+                throw new IllegalArgumentException(stage.getClass().getName() + " is fused twice");
+            }
+        }
+        this.stages = stages.clone();
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        executor = ctx.executor();
+        StageContext[] contexts = new StageContext[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            contexts[i] = new StageContext(i, ctx.name() + '/' + stages[i].getClass().getSimpleName());
+        }
+        this.contexts = contexts;
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].handlerAdded(contexts[i]);
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        // 从前往后移除，解码器在handlerRemoved中传递的剩余数据还能到达后面的阶段
+        for (int i = 0; i < stages.length; i++) {
+            try {
+                stages[i].handlerRemoved(contexts[i]);
+            } finally {
+                contexts[i].removed = true;
+            }
+        }
+    }
+
+    @Override
+    public void channelRegistered(ChannelHandlerContext ctx) {
+        invoke(0, REGISTERED, null);
+    }
+
+    @Override
+    public void channelUnregistered(ChannelHandlerContext ctx) {
+        invoke(0, UNREGISTERED, null);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        invoke(0, ACTIVE, null);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        invoke(0, INACTIVE, null);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        invokeChannelRead(0, msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        invoke(0, READ_COMPLETE, null);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+        invoke(0, USER_EVENT, evt);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        invoke(0, WRITABILITY_CHANGED, null);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        invoke(0, EXCEPTION_CAUGHT, cause);
+    }
+
+    /**
+     * {@link #invoke} for the one event of every message, without the
+     * dispatch on the event type.
+     */
+    private void invokeChannelRead(int index, Object msg) {
+        if (index == stages.length) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        try {
+            stages[index].channelRead(contexts[index], msg);
+        } catch (Throwable t) {
+            invoke(index, EXCEPTION_CAUGHT, t);
+        }
+    }
+
+    /**
+     * Delivers an event to stage {@code index}, or behind the fused handler
+     * after the last stage.
+     */
+    private void invoke(int index, int event, Object arg) {
+        if (index == stages.length) {
+            fireBehind(event, arg);
+            return;
+        }
+        ChannelInboundHandler stage = stages[index];
+        StageContext context = contexts[index];
+        if (event == EXCEPTION_CAUGHT) {
+            try {
+                stage.exceptionCaught(context, (Throwable) arg);
+            } catch (Throwable t) {
+                logger.warn("An exception was thrown by a user handler's exceptionCaught() method " +
+                        "while handling the following exception:", (Throwable) arg);
+                logger.warn("...", t);
+            }
+            return;
+        }
+        try {
+            switch (event) {
+            case REGISTERED:
+                stage.channelRegistered(context);
+                break;
+            case UNREGISTERED:
+                stage.channelUnregistered(context);
+                break;
+            case ACTIVE:
+                stage.channelActive(context);
+                break;
+            case INACTIVE:
+                stage.channelInactive(context);
+                break;
+            case READ:
+                stage.channelRead(context, arg);
+                break;
+            case READ_COMPLETE:
+                stage.channelReadComplete(context);
+                break;
+            case USER_EVENT:
+                stage.userEventTriggered(context, arg);
+                break;
+            case WRITABILITY_CHANGED:
+                stage.channelWritabilityChanged(context);
+                break;
+            default:
+                throw new Error("unknown event: " + event);
+            }
+        } catch (Throwable t) {
+            // 与ChannelPipeline一样，交给抛出异常的处理器的exceptionCaught
+            invoke(index, EXCEPTION_CAUGHT, t);
+        }
+    }
+
+    private void fireBehind(int event, Object arg) {
+        switch (event) {
+        case REGISTERED:
+            ctx.fireChannelRegistered();
+            break;
+        case UNREGISTERED:
+            ctx.fireChannelUnregistered();
+            break;
+        case ACTIVE:
+            ctx.fireChannelActive();
+            break;
+        case INACTIVE:
+            ctx.fireChannelInactive();
+            break;
+        case READ:
+            ctx.fireChannelRead(arg);
+            break;
+        case READ_COMPLETE:
+            ctx.fireChannelReadComplete();
+            break;
+        case USER_EVENT:
+            ctx.fireUserEventTriggered(arg);
+            break;
+        case WRITABILITY_CHANGED:
+            ctx.fireChannelWritabilityChanged();
+            break;
+        case EXCEPTION_CAUGHT:
+            ctx.fireExceptionCaught((Throwable) arg);
+            break;
+        default:
+            throw new Error("unknown event: " + event);
+        }
+    }
+
+    /**
+     * The context of one stage: inbound events go to the next stage,
+     * everything else to the fused handler's context.
+     */
+    private final class StageContext implements ChannelHandlerContext {
+        private final int index;
+        private final String name;
+        volatile boolean removed;
+
+        StageContext(int index, String name) {
+            this.index = index;
+            this.name = name;
+        }
+
+        private ChannelHandlerContext fire(final int event, final Object arg) {
+            if (executor.inEventLoop()) {
+                invoke(index + 1, event, arg);
+            } else {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        invoke(index + 1, event, arg);
+                    }
+                });
+            }
+            return this;
+        }
+
+        @Override
+        public Channel channel() {
+            return ctx.channel();
+        }
+
+        @Override
+        public EventExecutor executor() {
+            return executor;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public ChannelHandler handler() {
+            return stages[index];
+        }
+
+        @Override
+        public boolean isRemoved() {
+            return removed || ctx.isRemoved();
+        }
+
+        @Override
+        public ChannelHandlerContext fireChannelRegistered() {
+            return fire(REGISTERED, null);
+        }
+
+        @Override
+        public ChannelHandlerContext fireChannelUnregistered() {
+            return fire(UNREGISTERED, null);
+        }
+
+        @Override
+        public ChannelHandlerContext fireChannelActive() {
+            return fire(ACTIVE, null);
+        }
+
+        @Override
+        public ChannelHandlerContext fireChannelInactive() {
+            return fire(INACTIVE, null);
+        }
+
+        @Override
+        public ChannelHandlerContext fireExceptionCaught(Throwable cause) {
+            if (cause == null) {
+                throw new NullPointerException("cause");
+            }
+            return fire(EXCEPTION_CAUGHT, cause);
+        }
+
+        @Override
+        public ChannelHandlerContext fireUserEventTriggered(Object evt) {
+            if (evt == null) {
+                throw new NullPointerException("event");
+            }
+            return fire(USER_EVENT, evt);
+        }
+
+        @Override
+        public ChannelHandlerContext fireChannelRead(Object msg) {
+            if (msg == null) {
+                throw new NullPointerException("msg");
+            }
+            if (executor.inEventLoop()) {
+                invokeChannelRead(index + 1, msg);
+                return this;
+            }
+            return fire(READ, msg);
+        }
+
+        @Override
+        public ChannelHandlerContext fireChannelReadComplete() {
+            return fire(READ_COMPLETE, null);
+        }
+
+        @Override
+        public ChannelHandlerContext fireChannelWritabilityChanged() {
+            return fire(WRITABILITY_CHANGED, null);
+        }
+
+        @Override
+        public ChannelHandlerContext read() {
+            ctx.read();
+            return this;
+        }
+
+        @Override
+        public ChannelHandlerContext flush() {
+            ctx.flush();
+            return this;
+        }
+
+        @Override
+        public ChannelPipeline pipeline() {
+            return ctx.pipeline();
+        }
+
+        @Override
+        public ByteBufAllocator alloc() {
+            return ctx.alloc();
+        }
+
+        // 4.1起上下文的属性就是Channel的属性
+        @Override
+        @Deprecated
+        public <T> Attribute<T> attr(AttributeKey<T> key) {
+            return ctx.channel().attr(key);
+        }
+
+        @Override
+        @Deprecated
+        public <T> boolean hasAttr(AttributeKey<T> key) {
+            return ctx.channel().hasAttr(key);
+        }
+
+        @Override
+        public ChannelFuture bind(SocketAddress localAddress) {
+            return ctx.bind(localAddress);
+        }
+
+        @Override
+        public ChannelFuture connect(SocketAddress remoteAddress) {
+            return ctx.connect(remoteAddress);
+        }
+
+        @Override
+        public ChannelFuture connect(SocketAddress remoteAddress, SocketAddress localAddress) {
+            return ctx.connect(remoteAddress, localAddress);
+        }
+
+        @Override
+        public ChannelFuture disconnect() {
+            return ctx.disconnect();
+        }
+
+        @Override
+        public ChannelFuture close() {
+            return ctx.close();
+        }
+
+        @Override
+        public ChannelFuture deregister() {
+            return ctx.deregister();
+        }
+
+        @Override
+        public ChannelFuture bind(SocketAddress localAddress, ChannelPromise promise) {
+            return ctx.bind(localAddress, promise);
+        }
+
+        @Override
+        public ChannelFuture connect(SocketAddress remoteAddress, ChannelPromise promise) {
+            return ctx.connect(remoteAddress, promise);
+        }
+
+        @Override
+        public ChannelFuture connect(SocketAddress remoteAddress, SocketAddress localAddress,
+            ChannelPromise promise) {
+            return ctx.connect(remoteAddress, localAddress, promise);
+        }
+
+        @Override
+        public ChannelFuture disconnect(ChannelPromise promise) {
+            return ctx.disconnect(promise);
+        }
+
+        @Override
+        public ChannelFuture close(ChannelPromise promise) {
+            return ctx.close(promise);
+        }
+
+        @Override
+        public ChannelFuture deregister(ChannelPromise promise) {
+            return ctx.deregister(promise);
+        }
+
+        @Override
+        public ChannelFuture write(Object msg) {
+            return ctx.write(msg);
+        }
+
+        @Override
+        public ChannelFuture write(Object msg, ChannelPromise promise) {
+            return ctx.write(msg, promise);
+        }
+
+        @Override
+        public ChannelFuture writeAndFlush(Object msg, ChannelPromise promise) {
+            return ctx.writeAndFlush(msg, promise);
+        }
+
+        @Override
+        public ChannelFuture writeAndFlush(Object msg) {
+            return ctx.writeAndFlush(msg);
+        }
+
+        @Override
+        public ChannelPromise newPromise() {
+            return ctx.newPromise();
+        }
+
+        @Override
+        public ChannelProgressivePromise newProgressivePromise() {
+            return ctx.newProgressivePromise();
+        }
+
+        @Override
+        public ChannelFuture newSucceededFuture() {
+            return ctx.newSucceededFuture();
+        }
+
+        @Override
+        public ChannelFuture newFailedFuture(Throwable cause) {
+            return ctx.newFailedFuture(cause);
+        }
+
+        @Override
+        public ChannelPromise voidPromise() {
+            return ctx.voidPromise();
+        }
+
+        @Override
+        public String toString() {
+            return "StageContext(" + name + ", " + channel() + ')';
+        }
+    }
+}
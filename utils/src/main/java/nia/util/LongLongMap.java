@@ -0,0 +1,380 @@
+package nia.util;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Hash map from {@code long} to {@code long} without boxing: open
+ * addressing with linear probing over one flat array of key/value pairs, so
+ * an entry costs 16 bytes per slot and no object. With {@code offHeap} the
+ * slots live in a direct buffer instead of a {@code long[]}, which takes
+ * them out of the Java heap entirely, the GC neither copies nor scans them.
+ *
+ * Meant for per-connection counters and similar state keyed by a compact
+ * numeric connection id, e.g. one map per event loop for the channels
+ * registered with it, instead of a {@code ConcurrentHashMap<Channel, ...>}
+ * or a channel attribute per value. For object values use
+ * {@link LongObjectMap}.
+ *
+ * Not thread-safe. Call {@link #close()} to free the memory of an off-heap
+ * map right away instead of when its buffer is collected. An off-heap map
+ * holds at most 2^26 slots (1 GB), an on-heap one 2^27.
+ */
+public final class LongLongMap implements Closeable {
+    public static final float DEFAULT_LOAD_FACTOR = 0.5f;
+    // 堆上是long[]，容量的两倍个元素
+    static final int MAX_CAPACITY = 1 << 27;
+    // 16字节一个槽位，ByteBuffer的容量是int，堆外最多1GB
+    static final int MAX_OFF_HEAP_CAPACITY = 1 << 26;
+    static final long FIBONACCI = 0x9E3779B97F4A7C15L;
+
+    private final float loadFactor;
+    private final boolean offHeap;
+    private final long missingValue;
+    private Slots slots;
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeAt;
+    // 0作为空槽标记，键0单独存放
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    /**
+     * An on-heap map that returns 0 for missing keys.
+     */
+    public LongLongMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR, false, 0);
+    }
+
+    /**
+     * @param missingValue what {@link #get(long)}, {@link #put(long, long)}
+     *                     and {@link #remove(long)} return for absent keys
+     */
+    public LongLongMap(int expectedSize, float loadFactor, boolean offHeap, long missingValue) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize: " + expectedSize + " (expected: >= 0)");
+        }
+        if (!(loadFactor > 0 && loadFactor < 1)) {
+            throw new IllegalArgumentException("loadFactor: " + loadFactor + " (expected: 0 < loadFactor < 1)");
+        }
+        this.loadFactor = loadFactor;
+        this.offHeap = offHeap;
+        this.missingValue = missingValue;
+        allocate(capacityFor(expectedSize, loadFactor, maxCapacity()));
+    }
+
+    private int maxCapacity() {
+        return offHeap ? MAX_OFF_HEAP_CAPACITY : MAX_CAPACITY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Bytes used by the slots, on or off the heap.
+     */
+    public long footprint() {
+        return (long) (mask + 1) * 16;
+    }
+
+    public long missingValue() {
+        return missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : slots.key(find(key)) != 0;
+    }
+
+    public long get(long key) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+        int slot = find(key);
+        return slots.key(slot) != 0 ? slots.value(slot) : missingValue;
+    }
+
+    /**
+     * Returns the previous value, or the missing value.
+     */
+    public long put(long key, long value) {
+        if (key == 0) {
+            long previous = hasZeroKey ? zeroValue : missingValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int slot = find(key);
+        if (slots.key(slot) != 0) {
+            long previous = slots.value(slot);
+            slots.setValue(slot, value);
+            return previous;
+        }
+        // 扩容会替换slots，先算出槽位
+        slot = slotForNewEntry(slot, key);
+        slots.set(slot, key, value);
+        size++;
+        return missingValue;
+    }
+
+    /**
+     * Adds {@code delta} to the value of {@code key}, starting from the
+     * missing value, and returns the sum.
+     */
+    public long add(long key, long delta) {
+        if (key == 0) {
+            long sum = get(0) + delta;
+            put(0, sum);
+            return sum;
+        }
+        int slot = find(key);
+        if (slots.key(slot) != 0) {
+            long sum = slots.value(slot) + delta;
+            slots.setValue(slot, sum);
+            return sum;
+        }
+        long sum = missingValue + delta;
+        slot = slotForNewEntry(slot, key);
+        slots.set(slot, key, sum);
+        size++;
+        return sum;
+    }
+
+    /**
+     * Returns the removed value, or the missing value.
+     */
+    public long remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return missingValue;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        int slot = find(key);
+        if (slots.key(slot) == 0) {
+            return missingValue;
+        }
+        long previous = slots.value(slot);
+        size--;
+        // 后移删除：把探测链上后续的条目前移填补空位，不需要墓碑标记
+        int hole = slot;
+        for (int i = (hole + 1) & mask; ; i = (i + 1) & mask) {
+            long k = slots.key(i);
+            if (k == 0) {
+                break;
+            }
+            int home = index(k);
+            // 条目的初始槽位不在(hole, i]之间时，才能移动到hole
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                slots.set(hole, k, slots.value(i));
+                hole = i;
+            }
+        }
+        slots.set(hole, 0, 0);
+        return previous;
+    }
+
+    public void clear() {
+        slots.clear();
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    /**
+     * Frees an off-heap map's memory; the map must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        Slots slots = this.slots;
+        this.slots = null;
+        if (slots != null) {
+            slots.free();
+        }
+    }
+
+    /**
+     * The slot holding {@code key}, or the empty slot where it belongs.
+     */
+    private int find(long key) {
+        Slots slots = this.slots;
+        int i = index(key);
+        for (;;) {
+            long k = slots.key(i);
+            if (k == key || k == 0) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * {@code slot}, the empty slot {@link #find(long)} returned for
+     * {@code key}, or its slot in the grown table if one more entry exceeds
+     * the load factor. Grows before the entry is added, so a full map
+     * throws with its contents unchanged.
+     */
+    private int slotForNewEntry(int slot, long key) {
+        if (size < resizeAt) {
+            return slot;
+        }
+        resize();
+        return find(key);
+    }
+
+    private int index(long key) {
+        // Fibonacci hashing，取乘积的高位，连续的id也能均匀分布
+        return (int) ((key * FIBONACCI) >>> shift);
+    }
+
+    static int capacityFor(int expectedSize, float loadFactor) {
+        return capacityFor(expectedSize, loadFactor, MAX_CAPACITY);
+    }
+
+    private static int capacityFor(int expectedSize, float loadFactor, int maxCapacity) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 2) / loadFactor) + 1;
+        if (needed > maxCapacity) {
+            throw new IllegalArgumentException("expectedSize: " + expectedSize + " (too large)");
+        }
+        int capacity = 2;
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        slots = offHeap ? new DirectSlots(capacity) : new HeapSlots(capacity);
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        resizeAt = Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    private void resize() {
+        Slots old = slots;
+        int oldCapacity = mask + 1;
+        if (oldCapacity >= maxCapacity()) {
+            throw new IllegalStateException("too many entries: " + size);
+        }
+        allocate(oldCapacity << 1);
+        for (int i = 0; i < oldCapacity; i++) {
+            long k = old.key(i);
+            if (k != 0) {
+                slots.set(find(k), k, old.value(i));
+            }
+        }
+        old.free();
+    }
+
+    private abstract static class Slots {
+        abstract long key(int slot);
+
+        abstract long value(int slot);
+
+        abstract void set(int slot, long key, long value);
+
+        abstract void setValue(int slot, long value);
+
+        abstract void clear();
+
+        abstract void free();
+    }
+
+    private static final class HeapSlots extends Slots {
+        // 键值交替存放，一次探测只触及一条缓存行
+        private final long[] entries;
+
+        HeapSlots(int capacity) {
+            entries = new long[capacity << 1];
+        }
+
+        @Override
+        long key(int slot) {
+            return entries[slot << 1];
+        }
+
+        @Override
+        long value(int slot) {
+            return entries[(slot << 1) + 1];
+        }
+
+        @Override
+        void set(int slot, long key, long value) {
+            entries[slot << 1] = key;
+            entries[(slot << 1) + 1] = value;
+        }
+
+        @Override
+        void setValue(int slot, long value) {
+            entries[(slot << 1) + 1] = value;
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(entries, 0);
+        }
+
+        @Override
+        void free() {
+        }
+    }
+
+    private static final class DirectSlots extends Slots {
+        private final ByteBuffer entries;
+
+        DirectSlots(int capacity) {
+            // allocateDirect清零内存，所有槽位初始为空
+            entries = ByteBuffer.allocateDirect(capacity << 4).order(ByteOrder.nativeOrder());
+        }
+
+        @Override
+        long key(int slot) {
+            return entries.getLong(slot << 4);
+        }
+
+        @Override
+        long value(int slot) {
+            return entries.getLong((slot << 4) + 8);
+        }
+
+        @Override
+        void set(int slot, long key, long value) {
+            entries.putLong(slot << 4, key);
+            entries.putLong((slot << 4) + 8, value);
+        }
+
+        @Override
+        void setValue(int slot, long value) {
+            entries.putLong((slot << 4) + 8, value);
+        }
+
+        @Override
+        void clear() {
+            for (int i = 0; i < entries.capacity(); i += 8) {
+                entries.putLong(i, 0);
+            }
+        }
+
+        @Override
+        void free() {
+            PlatformDependent.freeDirectBuffer(entries);
+        }
+    }
+}
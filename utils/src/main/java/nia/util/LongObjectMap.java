@@ -0,0 +1,174 @@
+package nia.util;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from {@code long} to objects, the object counterpart of
+ * {@link LongLongMap}: the same open addressing over a {@code long[]} of
+ * keys and an array of values, no boxing and no entry objects.
+ *
+ * Netty's {@link io.netty.util.collection.LongObjectHashMap} is laid out the
+ * same way but places a key by its low bits, so sequential connection ids
+ * fill one contiguous run of slots and a remove has to shift the whole run;
+ * this map spreads them with Fibonacci hashing like {@link LongLongMap}.
+ *
+ * Not thread-safe; {@code null} values are not allowed, {@link #get(long)}
+ * returns {@code null} for missing keys.
+ */
+public final class LongObjectMap<V> {
+    private final float loadFactor;
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeAt;
+    // 0作为空槽标记，键0单独存放
+    private Object zeroValue;
+
+    public LongObjectMap(int expectedSize) {
+        this(expectedSize, LongLongMap.DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongObjectMap(int expectedSize, float loadFactor) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize: " + expectedSize + " (expected: >= 0)");
+        }
+        if (!(loadFactor > 0 && loadFactor < 1)) {
+            throw new IllegalArgumentException("loadFactor: " + loadFactor + " (expected: 0 < loadFactor < 1)");
+        }
+        this.loadFactor = loadFactor;
+        allocate(LongLongMap.capacityFor(expectedSize, loadFactor));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) {
+            return (V) zeroValue;
+        }
+        return (V) values[find(key)];
+    }
+
+    /**
+     * Returns the previous value, or {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        if (key == 0) {
+            Object previous = zeroValue;
+            zeroValue = value;
+            if (previous == null) {
+                size++;
+            }
+            return (V) previous;
+        }
+        int slot = find(key);
+        Object previous = values[slot];
+        if (previous == null) {
+            // 先扩容再插入，满了的时候抛异常而不留下这个条目
+            if (size >= resizeAt) {
+                resize();
+                slot = find(key);
+            }
+            size++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        return (V) previous;
+    }
+
+    /**
+     * Returns the removed value, or {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            Object previous = zeroValue;
+            if (previous != null) {
+                zeroValue = null;
+                size--;
+            }
+            return (V) previous;
+        }
+        int slot = find(key);
+        Object previous = values[slot];
+        if (previous == null) {
+            return null;
+        }
+        size--;
+        // 后移删除，同LongLongMap
+        int hole = slot;
+        for (int i = (hole + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            if (((i - index(keys[i])) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = 0;
+        values[hole] = null;
+        return (V) previous;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        zeroValue = null;
+        size = 0;
+    }
+
+    private int find(long key) {
+        long[] keys = this.keys;
+        int i = index(key);
+        for (;;) {
+            long k = keys[i];
+            if (k == key || k == 0) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private int index(long key) {
+        return (int) ((key * LongLongMap.FIBONACCI) >>> shift);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        resizeAt = Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        if (oldKeys.length >= LongLongMap.MAX_CAPACITY) {
+            throw new IllegalStateException("too many entries: " + size);
+        }
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
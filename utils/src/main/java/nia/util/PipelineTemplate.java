@@ -0,0 +1,153 @@
+package nia.util;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A declarative replacement for a {@code ChannelInitializer}: the handlers
+ * of a pipeline, listed once at startup and added to every new channel.
+ * Use it as the {@code childHandler} (or {@code handler}) of a bootstrap.
+ * <pre>
+ *   PipelineTemplate template = new PipelineTemplate()
+ *           .addLast("frames", new PipelineTemplate.HandlerFactory() {...})
+ *           .addLast("decoder", new StringDecoder());
+ * </pre>
+ * The template is checked while it is built, not on every connection:
+ * names must be unique and handler instances must be {@link Sharable}, they
+ * are added to every pipeline as they are; handlers with per-channel state
+ * come from a {@link HandlerFactory}. Per channel this saves
+ * <ul>
+ *   <li>the instances of the sharable handlers,</li>
+ *   <li>the generated names, {@code addLast(handler)} derives one from the
+ *       class and probes the pipeline until it finds a free one,</li>
+ *   <li>and the entry a {@code ChannelInitializer} keeps in a map shared by
+ *       all event loops while it initializes a channel, which matters in
+ *       accept storms, e.g. when all clients reconnect after a failover.</li>
+ * </ul>
+ * The template can no longer be changed once it has initialized a channel.
+ */
+@Sharable
+public final class PipelineTemplate extends ChannelHandlerAdapter {
+    private final List<String> names = new ArrayList<String>();
+    // ChannelHandler或HandlerFactory
+    private final List<Object> entries = new ArrayList<Object>();
+    private final Set<String> usedNames = new HashSet<String>();
+    private volatile String[] compiledNames;
+    private volatile Object[] compiledEntries;
+
+    /**
+     * Creates the handler of one name for each new channel.
+     */
+    public interface HandlerFactory {
+        ChannelHandler newHandler(Channel channel);
+    }
+
+    /**
+     * Adds the same {@link Sharable} {@code handler} to the end of every
+     * pipeline.
+     */
+    public PipelineTemplate addLast(String name, ChannelHandler handler) {
+        return add(false, name, checkSharable(name, handler));
+    }
+
+    /**
+     * Adds a handler created by {@code factory} to the end of every pipeline.
+     */
+    public PipelineTemplate addLast(String name, HandlerFactory factory) {
+        return add(false, name, checkNotNull(factory));
+    }
+
+    /**
+     * Adds the same {@link Sharable} {@code handler} to the front of every
+     * pipeline.
+     */
+    public PipelineTemplate addFirst(String name, ChannelHandler handler) {
+        return add(true, name, checkSharable(name, handler));
+    }
+
+    /**
+     * Adds a handler created by {@code factory} to the front of every
+     * pipeline.
+     */
+    public PipelineTemplate addFirst(String name, HandlerFactory factory) {
+        return add(true, name, checkNotNull(factory));
+    }
+
+    private static ChannelHandler checkSharable(String name, ChannelHandler handler) {
+        if (handler == null) {
+            throw new NullPointerException("handler");
+        }
+        if (!handler.getClass().isAnnotationPresent(Sharable.class)) {
+            throw new IllegalArgumentException(handler.getClass().getName() +
+                    " is not a @Sharable handler, add a HandlerFactory for " + name + " instead");
+        }
+        return handler;
+    }
+
+    private static HandlerFactory checkNotNull(HandlerFactory factory) {
+        if (factory == null) {
+            throw new NullPointerException("factory");
+        }
+        return factory;
+    }
+
+    private synchronized PipelineTemplate add(boolean first, String name, Object entry) {
+        if (compiledEntries != null) {
+            throw new IllegalStateException("template already in use");
+        }
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        if (!usedNames.add(name)) {
+            throw new IllegalArgumentException("Duplicate handler name: " + name);
+        }
+        int index = first ? 0 : names.size();
+        names.add(index, name);
+        entries.add(index, entry);
+        return this;
+    }
+
+    public synchronized List<String> names() {
+        return new ArrayList<String>(names);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        ChannelPipeline pipeline = ctx.pipeline();
+        try {
+            Object[] entries = compiledEntries;
+            if (entries == null) {
+                entries = compile();
+            }
+            String[] names = compiledNames;
+            for (int i = 0; i < entries.length; i++) {
+                Object entry = entries[i];
+                ChannelHandler handler = entry instanceof HandlerFactory
+                        ? ((HandlerFactory) entry).newHandler(ctx.channel()) : (ChannelHandler) entry;
+                pipeline.addLast(names[i], handler);
+            }
+            pipeline.remove(this);
+        } catch (Throwable cause) {
+            // 与ChannelInitializer一样，初始化失败的Channel直接关闭
+            cause.printStackTrace();
+            ctx.close();
+        }
+    }
+
+    private synchronized Object[] compile() {
+        if (compiledEntries == null) {
+            compiledNames = names.toArray(new String[0]);
+            compiledEntries = entries.toArray();
+        }
+        return compiledEntries;
+    }
+}
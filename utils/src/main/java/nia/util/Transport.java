@@ -0,0 +1,337 @@
+package nia.util;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.bootstrap.ServerBootstrapConfig;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.oio.OioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.socket.oio.OioDatagramChannel;
+import io.netty.channel.socket.oio.OioServerSocketChannel;
+import io.netty.channel.socket.oio.OioSocketChannel;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.internal.SystemPropertyUtil;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The socket transports the samples can run on, so that a bootstrap does not
+ * have to hard-code {@code NioEventLoopGroup} and {@code Nio*Channel}.
+ *
+ * {@link #fromSystemProperty()} reads {@code -Dnia.transport=auto|epoll|nio|oio}.
+ * {@code auto} (the default) picks {@link #EPOLL} when the native library
+ * can be loaded and {@link #NIO} otherwise. The epoll classes are only
+ * loaded when {@link #EPOLL} is actually used, so the other transports work
+ * on any platform.
+ */
+public enum Transport {
+    EPOLL {
+        @Override
+        public EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+            return new EpollEventLoopGroup(nThreads, threadFactory);
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverChannel() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannel() {
+            return EpollSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends DatagramChannel> datagramChannel() {
+            return EpollDatagramChannel.class;
+        }
+
+        @Override
+        public boolean supportsReusePort() {
+            return true;
+        }
+
+        @Override
+        public ServerBootstrap reusePort(ServerBootstrap b) {
+            return b.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+
+        @Override
+        public ServerBootstrap fastOpen(ServerBootstrap b, int queueLength) {
+            return b.option(EpollChannelOption.TCP_FASTOPEN, queueLength);
+        }
+    },
+    NIO {
+        @Override
+        public EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+            return new NioEventLoopGroup(nThreads, threadFactory);
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverChannel() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannel() {
+            return NioSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends DatagramChannel> datagramChannel() {
+            return NioDatagramChannel.class;
+        }
+    },
+    OIO {
+        @Override
+        public EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+            // OIO用一个线程服务一个Channel，第一个参数是Channel的上限而不是线程数，0表示不限
+            if (threadFactory == null) {
+                threadFactory = new DefaultThreadFactory(OioEventLoopGroup.class);
+            }
+            return new OioEventLoopGroup(0, threadFactory);
+        }
+
+        /**
+         * @throws IllegalArgumentException always, an OIO group has one
+         *         thread per channel and cannot be pinned to a set of CPUs
+         */
+        @Override
+        public EventLoopGroup newEventLoopGroup(String poolName, CpuSet cpus) {
+            throw new IllegalArgumentException("OIO event loops cannot be pinned to CPUs");
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverChannel() {
+            return OioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannel() {
+            return OioSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends DatagramChannel> datagramChannel() {
+            return OioDatagramChannel.class;
+        }
+    };
+
+    public static final String PROPERTY = "nia.transport";
+
+    /**
+     * {@link #EPOLL} if the native transport is available, {@link #NIO} otherwise.
+     */
+    public static Transport auto() {
+        return Epoll.isAvailable() ? EPOLL : NIO;
+    }
+
+    /**
+     * Resolves {@code auto}, {@code epoll}, {@code nio} or {@code oio}
+     * (case-insensitive).
+     *
+     * @throws IllegalStateException if {@code epoll} is requested but the
+     *         native library could not be loaded
+     */
+    public static Transport of(String name) {
+        if (name == null || "auto".equalsIgnoreCase(name)) {
+            return auto();
+        }
+        Transport transport = valueOf(name.toUpperCase(Locale.ROOT));
+        if (transport == EPOLL && !Epoll.isAvailable()) {
+            throw new IllegalStateException("epoll transport is not available",
+                    Epoll.unavailabilityCause());
+        }
+        return transport;
+    }
+
+    /**
+     * The transport selected with {@code -Dnia.transport}, {@code auto} if unset.
+     */
+    public static Transport fromSystemProperty() {
+        return of(SystemPropertyUtil.get(PROPERTY, "auto"));
+    }
+
+    /**
+     * Looks for a {@code --transport=NAME} argument and falls back to
+     * {@link #fromSystemProperty()}.
+     */
+    public static Transport fromArgs(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--transport=")) {
+                return of(arg.substring("--transport=".length()));
+            }
+        }
+        return fromSystemProperty();
+    }
+
+    /**
+     * Creates an event loop group for this transport; {@code nThreads} of
+     * {@code 0} uses Netty's default and a {@code null} factory the default
+     * thread factory. {@link #OIO} ignores {@code nThreads}, it starts one
+     * thread per channel.
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory);
+
+    public abstract Class<? extends ServerSocketChannel> serverChannel();
+
+    public abstract Class<? extends SocketChannel> socketChannel();
+
+    public abstract Class<? extends DatagramChannel> datagramChannel();
+
+    public EventLoopGroup newEventLoopGroup() {
+        return newEventLoopGroup(0, null);
+    }
+
+    public EventLoopGroup newEventLoopGroup(int nThreads) {
+        return newEventLoopGroup(nThreads, null);
+    }
+
+    /**
+     * One event loop per CPU of {@code cpus}, each pinned to its CPU by an
+     * {@link AffinityThreadFactory}.
+     *
+     * @throws IllegalArgumentException for {@link #OIO}
+     */
+    public EventLoopGroup newEventLoopGroup(String poolName, CpuSet cpus) {
+        return newEventLoopGroup(cpus.size(), new AffinityThreadFactory(poolName, cpus));
+    }
+
+    /**
+     * A {@link ServerBootstrap} with the given groups and this transport's
+     * server channel.
+     */
+    public ServerBootstrap serverBootstrap(EventLoopGroup parentGroup, EventLoopGroup childGroup) {
+        return new ServerBootstrap()
+                .group(parentGroup, childGroup)
+                .channel(serverChannel());
+    }
+
+    public ServerBootstrap serverBootstrap(EventLoopGroup group) {
+        return serverBootstrap(group, group);
+    }
+
+    /**
+     * A {@link Bootstrap} with the given group and this transport's socket channel.
+     */
+    public Bootstrap bootstrap(EventLoopGroup group) {
+        return new Bootstrap()
+                .group(group)
+                .channel(socketChannel());
+    }
+
+    /**
+     * Whether several server channels can bind the same port, see
+     * {@link #reusePort(ServerBootstrap)}.
+     */
+    public boolean supportsReusePort() {
+        return false;
+    }
+
+    /**
+     * Sets {@code SO_REUSEPORT} where the transport supports it, so that the
+     * kernel balances new connections over several listening sockets.
+     * A no-op otherwise.
+     */
+    public ServerBootstrap reusePort(ServerBootstrap b) {
+        return b;
+    }
+
+    /**
+     * Binds one server channel per event loop of {@code b}'s group, all on
+     * {@code b}'s local address with {@code SO_REUSEPORT}: the kernel spreads
+     * new connections over the listeners, and each connection stays on the
+     * loop whose listener accepted it, the child group is not used. With
+     * pinned loops every connection is served by one CPU from accept to
+     * close. Where the transport does not support {@code SO_REUSEPORT} it
+     * is a plain {@code b.bind()}.
+     *
+     * @return the bound server channels, closing them is up to the caller
+     */
+    public List<Channel> bindPerLoop(ServerBootstrap b) throws InterruptedException {
+        List<Channel> channels = new ArrayList<Channel>();
+        if (!supportsReusePort()) {
+            channels.add(b.bind().sync().channel());
+            return channels;
+        }
+        SocketAddress address = b.config().localAddress();
+        boolean bound = false;
+        try {
+            for (EventExecutor loop : b.config().group()) {
+                Channel channel = reusePort(perLoopCopy(b, (EventLoop) loop)).bind(address).sync().channel();
+                channels.add(channel);
+                // 端口0时其余监听绑定到第一个分到的端口上
+                if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getPort() == 0) {
+                    address = channel.localAddress();
+                }
+            }
+            bound = true;
+        } finally {
+            if (!bound) {
+                for (Channel channel : channels) {
+                    channel.close();
+                }
+            }
+        }
+        return channels;
+    }
+
+    /**
+     * A copy of {@code b} with {@code loop} as acceptor and child group;
+     * {@link ServerBootstrap#clone()} would keep the groups, which cannot be
+     * replaced.
+     */
+    @SuppressWarnings("unchecked")
+    private ServerBootstrap perLoopCopy(ServerBootstrap b, EventLoop loop) {
+        ServerBootstrapConfig config = b.config();
+        ServerBootstrap copy = serverBootstrap(loop)
+                .childHandler(config.childHandler());
+        if (config.handler() != null) {
+            copy.handler(config.handler());
+        }
+        for (Map.Entry<ChannelOption<?>, Object> e : config.options().entrySet()) {
+            copy.option((ChannelOption<Object>) e.getKey(), e.getValue());
+        }
+        for (Map.Entry<ChannelOption<?>, Object> e : config.childOptions().entrySet()) {
+            copy.childOption((ChannelOption<Object>) e.getKey(), e.getValue());
+        }
+        for (Map.Entry<AttributeKey<?>, Object> e : config.attrs().entrySet()) {
+            copy.attr((AttributeKey<Object>) e.getKey(), e.getValue());
+        }
+        for (Map.Entry<AttributeKey<?>, Object> e : config.childAttrs().entrySet()) {
+            copy.childAttr((AttributeKey<Object>) e.getKey(), e.getValue());
+        }
+        return copy;
+    }
+
+    /**
+     * Enables server side {@code TCP_FASTOPEN} with the given pending SYN
+     * queue length where the transport supports it. A no-op otherwise.
+     */
+    public ServerBootstrap fastOpen(ServerBootstrap b, int queueLength) {
+        return b;
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Helpers shared by the chapter samples.
+ *
+ * Transport selection (epoll, NIO or OIO) for every bootstrap {@link nia.util.Transport}
+ *
+ * Event loops pinned to CPUs, one SO_REUSEPORT listener per loop {@link nia.util.AffinityThreadFactory},
+ * {@link nia.util.CpuSet}, {@link nia.util.Transport#bindPerLoop}
+ *
+ * Delimiter search 8 bytes at a time {@link nia.util.ByteSearch}
+ *
+ * Pre-encoded constant messages shared by all channels {@link nia.util.ConstantMessages}
+ *
+ * Primitive-keyed maps for per-connection state {@link nia.util.LongLongMap}, {@link nia.util.LongObjectMap}
+ *
+ * Pipelines set up from a template checked once at startup {@link nia.util.PipelineTemplate}
+ *
+ * Adjacent inbound handlers fused into one pipeline entry {@link nia.util.FusedInboundHandler}
+ */
+package nia.util;
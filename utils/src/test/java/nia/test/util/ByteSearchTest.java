@@ -0,0 +1,115 @@
+package nia.test.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import nia.util.ByteSearch;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link ByteSearch} against a byte-by-byte search, on heap and direct
+ * buffers, at every alignment of the search range.
+ */
+public class ByteSearchTest {
+    private final Random random = new Random(42);
+
+    private static int naiveIndexOf(ByteBuf buf, int from, int to, byte[] needle, boolean anyOf) {
+        int end = anyOf ? to - 1 : to - needle.length;
+        for (int i = from; i <= end; i++) {
+            if (anyOf) {
+                for (byte b : needle) {
+                    if (buf.getByte(i) == b) {
+                        return i;
+                    }
+                }
+            } else {
+                int j = 0;
+                while (j < needle.length && buf.getByte(i + j) == needle[j]) {
+                    j++;
+                }
+                if (j == needle.length) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private ByteBuf randomBuffer(boolean direct, int length, byte[] alphabet) {
+        ByteBuf buf = direct ? Unpooled.directBuffer(length) : Unpooled.buffer(length);
+        for (int i = 0; i < length; i++) {
+            buf.writeByte(alphabet[random.nextInt(alphabet.length)]);
+        }
+        return buf;
+    }
+
+    private void check(ByteSearch search, byte[] needle, boolean anyOf, byte[] alphabet) {
+        for (boolean direct : new boolean[] { false, true }) {
+            for (int round = 0; round < 200; round++) {
+                ByteBuf buf = randomBuffer(direct, random.nextInt(100), alphabet);
+                int from = buf.capacity() == 0 ? 0 : random.nextInt(buf.capacity());
+                int to = from + random.nextInt(buf.capacity() - from + 1);
+                assertEquals(buf.toString(CharsetUtil.ISO_8859_1) + " [" + from + ", " + to + ")",
+                        naiveIndexOf(buf, from, to, needle, anyOf), search.indexOf(buf, from, to));
+                buf.release();
+            }
+        }
+    }
+
+    @Test
+    public void testSingleByte() {
+        byte[] alphabet = { 'a', 'b', ' ', (byte) 0x80, (byte) 0xFF, 0, 1 };
+        for (byte b : alphabet) {
+            check(ByteSearch.of(b), new byte[] { b }, true, alphabet);
+        }
+    }
+
+    @Test
+    public void testAnyOf() {
+        byte[] alphabet = { 'a', 'b', '\r', '\n', ':', (byte) 0xFE, 0, 1 };
+        byte[] pair = { '\r', '\n' };
+        check(ByteSearch.anyOf(pair), pair, true, alphabet);
+        byte[] set = { '\r', '\n', (byte) 0xFE };
+        check(ByteSearch.anyOf(set), set, true, alphabet);
+        byte[] four = { ':', 0, 1, (byte) 0xFE };
+        check(ByteSearch.anyOf(four), four, true, alphabet);
+        byte[] large = { 'a', 'b', '\r', '\n', ':', (byte) 0xFE, 0, 1, 2 };
+        check(ByteSearch.anyOf(large), large, true, alphabet);
+    }
+
+    @Test
+    public void testSequence() {
+        byte[] alphabet = { '\r', '\n', 'x' };
+        byte[] crlfcrlf = "\r\n\r\n".getBytes(CharsetUtil.US_ASCII);
+        check(ByteSearch.sequence(crlfcrlf), crlfcrlf, false, alphabet);
+        byte[] aab = { 'a', 'a', 'b' };
+        check(ByteSearch.sequence(aab), aab, false, new byte[] { 'a', 'b' });
+        byte[] highs = { (byte) 0x80, 1, (byte) 0xFF, 0, (byte) 0x80 };
+        check(ByteSearch.sequence(highs), highs, false, new byte[] { (byte) 0x80, 1, (byte) 0xFF, 0 });
+    }
+
+    @Test
+    public void testMatchMustEndBeforeToIndex() {
+        ByteBuf buf = Unpooled.copiedBuffer("0123456789abcdef\r\n\r\n", CharsetUtil.US_ASCII);
+        ByteSearch search = ByteSearch.sequence("\r\n\r\n");
+        assertEquals(16, search.indexOf(buf));
+        assertEquals(-1, search.indexOf(buf, 0, 19));
+        assertEquals(-1, search.indexOf(buf, 17, 20));
+        assertEquals(4, search.length());
+        buf.release();
+    }
+
+    @Test
+    public void testReadableBytesOnly() {
+        ByteBuf buf = Unpooled.copiedBuffer("a b c", CharsetUtil.US_ASCII);
+        buf.skipBytes(2);
+        assertEquals(3, ByteSearch.of((byte) ' ').indexOf(buf));
+        buf.writerIndex(3);
+        assertEquals(-1, ByteSearch.of((byte) ' ').indexOf(buf));
+        buf.release();
+    }
+}
@@ -0,0 +1,38 @@
+package nia.test.util;
+
+import nia.util.CpuSet;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parses and prints CPU lists the way Linux writes them.
+ */
+public class CpuSetTest {
+    @Test
+    public void parsesAndPrintsRanges() {
+        CpuSet cpus = CpuSet.parse("8-9,0-3, 5,2\n");
+        assertEquals(7, cpus.size());
+        assertEquals(0, cpus.get(0));
+        assertEquals(9, cpus.get(6));
+        assertEquals("0-3,5,8-9", cpus.toString());
+        assertEquals(cpus, CpuSet.parse(cpus.toString()));
+    }
+
+    @Test
+    public void splitsForAcceptorAndWorkers() {
+        CpuSet cpus = CpuSet.parse("0-7");
+        assertEquals("0", cpus.take(1).toString());
+        assertEquals("1-7", cpus.drop(1).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsReversedRange() {
+        CpuSet.parse("3-1");
+    }
+
+    @Test
+    public void onlineCpusIncludeNodeZero() {
+        assertTrue(CpuSet.online().size() >= CpuSet.numaNode(0).size());
+    }
+}
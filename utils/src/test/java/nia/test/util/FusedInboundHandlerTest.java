@@ -0,0 +1,174 @@
+package nia.test.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.util.CharsetUtil;
+import nia.util.FusedInboundHandler;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the same handlers once added one by one and once fused, and checks
+ * that messages, reference counts and exceptions come out the same.
+ */
+public class FusedInboundHandlerTest {
+    private static ChannelInboundHandler[] stages(List<String> events) {
+        return new ChannelInboundHandler[] {
+                new LineBasedFrameDecoder(64), new StringDecoder(CharsetUtil.US_ASCII), new Recorder(events) };
+    }
+
+    private static List<Object> run(EmbeddedChannel channel, ByteBuf... input) {
+        for (ByteBuf buf : input) {
+            channel.writeInbound(buf);
+        }
+        channel.finish();
+        List<Object> out = new ArrayList<Object>();
+        Object msg;
+        while ((msg = channel.readInbound()) != null) {
+            out.add(msg);
+        }
+        return out;
+    }
+
+    private static ByteBuf[] input() {
+        return new ByteBuf[] {
+                Unpooled.copiedBuffer("first\nsec", CharsetUtil.US_ASCII),
+                Unpooled.copiedBuffer("ond\nboom\nthird\n", CharsetUtil.US_ASCII) };
+    }
+
+    @Test
+    public void sameMessagesEventsAndExceptions() {
+        List<String> plainEvents = new ArrayList<String>();
+        EmbeddedChannel plain = new EmbeddedChannel(stages(plainEvents));
+        ByteBuf[] plainInput = input();
+        List<Object> plainOut = run(plain, plainInput);
+
+        List<String> fusedEvents = new ArrayList<String>();
+        EmbeddedChannel fused = new EmbeddedChannel(new FusedInboundHandler(stages(fusedEvents)));
+        ByteBuf[] fusedInput = input();
+        List<Object> fusedOut = run(fused, fusedInput);
+
+        assertEquals(plainOut, fusedOut);
+        assertEquals(plainEvents, fusedEvents);
+        assertTrue(fusedEvents.contains("caught boom"));
+        for (int i = 0; i < plainInput.length; i++) {
+            assertEquals(0, plainInput[i].refCnt());
+            assertEquals(0, fusedInput[i].refCnt());
+        }
+    }
+
+    @Test
+    public void consumingStageReleases() {
+        final List<ByteBuf> seen = new ArrayList<ByteBuf>();
+        EmbeddedChannel channel = new EmbeddedChannel(new FusedInboundHandler(
+                new LineBasedFrameDecoder(64),
+                new SimpleChannelInboundHandler<ByteBuf>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+                        seen.add(msg);
+                    }
+                }));
+        ByteBuf input = Unpooled.copiedBuffer("a\nb\n", CharsetUtil.US_ASCII);
+        assertFalse(channel.writeInbound(input));
+        assertEquals(2, seen.size());
+        for (ByteBuf frame : seen) {
+            assertEquals(0, frame.refCnt());
+        }
+        assertEquals(0, input.refCnt());
+        assertFalse(channel.finish());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOutboundStages() {
+        new FusedInboundHandler(new LineBasedFrameDecoder(64), new DuplexStage());
+    }
+
+    private static final class DuplexStage extends ChannelOutboundHandlerAdapter implements ChannelInboundHandler {
+        @Override
+        public void channelRegistered(ChannelHandlerContext ctx) {
+        }
+
+        @Override
+        public void channelUnregistered(ChannelHandlerContext ctx) {
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        }
+    }
+
+    /**
+     * Records what it sees, throws on "boom" and passes everything else on.
+     */
+    private static final class Recorder extends ChannelInboundHandlerAdapter {
+        private final List<String> events;
+
+        Recorder(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            events.add("active");
+            ctx.fireChannelActive();
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            events.add("read " + msg);
+            if ("boom".equals(msg)) {
+                throw new IllegalStateException("boom");
+            }
+            ctx.fireChannelRead(msg);
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            events.add("complete");
+            ctx.fireChannelReadComplete();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            events.add("inactive");
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            events.add("caught " + cause.getMessage());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package nia.test.util;
+
+import nia.util.LongLongMap;
+import nia.util.LongObjectMap;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link LongLongMap}, on and off the heap, and {@link LongObjectMap}
+ * against a {@link HashMap} under random puts, adds and removes.
+ */
+public class LongLongMapTest {
+    private static final long MISSING = -1;
+
+    private static void randomOperations(boolean offHeap) {
+        Random random = new Random(42);
+        // 初始容量很小，覆盖多次扩容；键范围小，覆盖删除后的探测链移动
+        LongLongMap map = new LongLongMap(4, 0.75f, offHeap, MISSING);
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        try {
+            for (int i = 0; i < 200000; i++) {
+                long key = random.nextInt(2000) - 100;
+                long value = random.nextLong();
+                switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    Long previous = expected.put(key, value);
+                    assertEquals(previous != null ? previous : MISSING, map.put(key, value));
+                    break;
+                case 2:
+                    Long removed = expected.remove(key);
+                    assertEquals(removed != null ? removed : MISSING, map.remove(key));
+                    break;
+                default:
+                    Long current = expected.get(key);
+                    long sum = (current != null ? current : MISSING) + 3;
+                    expected.put(key, sum);
+                    assertEquals(sum, map.add(key, 3));
+                }
+                assertEquals(expected.size(), map.size());
+            }
+            for (long key = -100; key < 1900; key++) {
+                Long value = expected.get(key);
+                assertEquals(value != null, map.containsKey(key));
+                assertEquals(value != null ? value : MISSING, map.get(key));
+            }
+        } finally {
+            map.close();
+        }
+    }
+
+    @Test
+    public void heap() {
+        randomOperations(false);
+    }
+
+    @Test
+    public void offHeap() {
+        randomOperations(true);
+    }
+
+    @Test
+    public void clear() {
+        LongLongMap map = new LongLongMap(16);
+        for (long key = 0; key < 100; key++) {
+            map.put(key, key);
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(0));
+        assertFalse(map.containsKey(42));
+        assertEquals(0, map.get(42));
+    }
+
+    @Test
+    public void offHeapLimit() {
+        // 堆外上限是1 << 26个槽位，超出时要明确拒绝，而不是分配时溢出
+        try {
+            new LongLongMap(70000000, 0.9f, true, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("(too large)"));
+        }
+    }
+
+    @Test
+    public void objects() {
+        Random random = new Random(42);
+        LongObjectMap<Long> map = new LongObjectMap<Long>(4, 0.75f);
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(2000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                long value = random.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = -100; key < 1900; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package nia.test.util;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import nia.util.CpuSet;
+import nia.util.Transport;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Builds the event loop groups of every {@link Transport} and runs a few
+ * connections over them.
+ */
+public class TransportTest {
+    private static final int CLIENTS = 3;
+
+    @Test
+    public void defaultGroups() throws Exception {
+        for (Transport transport : available()) {
+            EventLoopGroup group = transport.newEventLoopGroup();
+            try {
+                connect(transport, group, group);
+            } finally {
+                group.shutdownGracefully().sync();
+            }
+        }
+    }
+
+    @Test
+    public void singleThreadGroups() throws Exception {
+        // OIO的第一个参数是Channel上限，这里不能变成只允许一个Channel
+        for (Transport transport : available()) {
+            EventLoopGroup boss = transport.newEventLoopGroup(1);
+            EventLoopGroup workers = transport.newEventLoopGroup(1);
+            EventLoopGroup clients = transport.newEventLoopGroup(1);
+            try {
+                connect(transport, boss, workers, clients);
+            } finally {
+                boss.shutdownGracefully().sync();
+                workers.shutdownGracefully().sync();
+                clients.shutdownGracefully().sync();
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oioCannotBePinned() {
+        Transport.OIO.newEventLoopGroup("pinned", CpuSet.parse("0"));
+    }
+
+    private static List<Transport> available() {
+        List<Transport> transports = new ArrayList<Transport>();
+        for (Transport transport : Transport.values()) {
+            if (transport != Transport.EPOLL || Epoll.isAvailable()) {
+                transports.add(transport);
+            }
+        }
+        return transports;
+    }
+
+    private static void connect(Transport transport, EventLoopGroup group, EventLoopGroup clients)
+        throws InterruptedException {
+        connect(transport, group, group, clients);
+    }
+
+    private static void connect(Transport transport, EventLoopGroup boss, EventLoopGroup workers,
+        EventLoopGroup clients) throws InterruptedException {
+        Channel server = transport.serverBootstrap(boss, workers)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                    }
+                })
+                .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+        List<Channel> channels = new ArrayList<Channel>();
+        try {
+            for (int i = 0; i < CLIENTS; i++) {
+                Channel channel = transport.bootstrap(clients)
+                        .handler(new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                                ctx.close();
+                            }
+                        })
+                        .connect(server.localAddress()).sync().channel();
+                channels.add(channel);
+                assertTrue(transport + " client " + i, channel.isActive());
+            }
+        } finally {
+            for (Channel channel : channels) {
+                channel.close().sync();
+            }
+            server.close().sync();
+        }
+    }
+}